@@ -4,12 +4,18 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.plugin.shoptools.command.ShopToolsCommand;
 import org.plugin.shoptools.config.ConfigManager;
 import org.plugin.shoptools.integration.QuickShopIntegration;
+import org.plugin.shoptools.listener.PlayerJoinListener;
+import org.plugin.shoptools.listener.QuickShopEventListener;
+import org.plugin.shoptools.listener.WorldLoadListener;
 import org.plugin.shoptools.manager.LocationManager;
+import org.plugin.shoptools.manager.OwnerNameService;
 import org.plugin.shoptools.manager.ShopBackupManager;
 import org.plugin.shoptools.scan.StockScanQueue;
 import org.plugin.shoptools.storage.ShopDataManager;
 import org.plugin.shoptools.sync.DataSyncManager;
 
+import java.io.File;
+
 /**
  * ShopTools主类
  * 一个帮助玩家更好使用QuickShop-Reremake插件的工具
@@ -24,8 +30,11 @@ public final class ShopTools extends JavaPlugin {
     private ShopDataManager dataManager;
     private DataSyncManager syncManager;
     private ShopBackupManager backupManager;
+    private OwnerNameService ownerNameService;
     private ShopToolsCommand commandHandler;
     private StockScanQueue stockScanQueue;
+    private WorldLoadListener worldLoadListener;
+    private QuickShopEventListener quickShopEventListener;
 
     @Override
     public void onEnable() {
@@ -100,6 +109,16 @@ public final class ShopTools extends JavaPlugin {
                 stockScanQueue.stop();
             }
 
+            // 写入尚未保存的商店数据并停止后台写入线程
+            if (dataManager != null) {
+                dataManager.shutdown();
+            }
+
+            // 写入尚未保存的店主名称
+            if (ownerNameService != null) {
+                ownerNameService.save();
+            }
+
             // 清理位置管理器资源
             if (locationManager != null) {
                 locationManager.shutdown();
@@ -126,8 +145,25 @@ public final class ShopTools extends JavaPlugin {
         getLogger().info("位置管理器初始化完成。");
 
         getLogger().info("初始化商店备份管理器...");
-        backupManager = new ShopBackupManager(getDataFolder(), getLogger());
+        backupManager = new ShopBackupManager(getDataFolder(), configManager, getLogger());
         getLogger().info("商店备份管理器初始化完成。");
+
+        // 店主名称表在后台加载，玩家进服时更新
+        getLogger().info("初始化店主名称服务...");
+        ownerNameService = new OwnerNameService(getDataFolder(), findUserCacheFile(), getLogger());
+        ownerNameService.loadAsync(this);
+        getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
+        getLogger().info("店主名称服务初始化完成，异步加载已启动。");
+    }
+
+    /**
+     * 查找服务端的 usercache.json：一般位于服务端根目录，部分服务端放在世界容器目录
+     *
+     * @return usercache.json 文件（可能不存在）
+     */
+    private File findUserCacheFile() {
+        File inWorldContainer = new File(getServer().getWorldContainer(), "usercache.json");
+        return inWorldContainer.exists() ? inWorldContainer : new File("usercache.json");
     }
 
     /**
@@ -136,6 +172,7 @@ public final class ShopTools extends JavaPlugin {
     private void initializeQuickShop() {
         getLogger().info("初始化QuickShop集成...");
         quickShopIntegration = new QuickShopIntegration(getLogger());
+        quickShopIntegration.setOwnerNameService(ownerNameService);
 
         if (!quickShopIntegration.isQuickShopAvailable()) {
             getLogger().warning("QuickShop不可用！插件功能将受限。");
@@ -153,6 +190,12 @@ public final class ShopTools extends JavaPlugin {
         dataManager = new ShopDataManager(getDataFolder(), configManager, getLogger());
         stockScanQueue = new StockScanQueue(this, quickShopIntegration, dataManager, configManager, getLogger());
 
+        // 全部商店分片在启动时加载；延迟加载的世界在加载后绑定并加入空间索引，卸载时释放（初始化重试时不重复注册）
+        if (worldLoadListener == null) {
+            worldLoadListener = new WorldLoadListener(this);
+            getServer().getPluginManager().registerEvents(worldLoadListener, this);
+        }
+
         // 异步加载本地缓存数据，加载完成后触发库存扫描
         dataManager.loadDataAsync(this, () -> {
             getLogger().info("缓存数据已就绪，开始库存扫描...");
@@ -168,6 +211,12 @@ public final class ShopTools extends JavaPlugin {
         getLogger().info("初始化同步管理器...");
         syncManager = new DataSyncManager(this, configManager, quickShopIntegration, dataManager);
         syncManager.startSync();
+
+        // 监听 QuickShop 商店事件逐个同步（初始化重试时不重复注册；是否启用在事件处理时按配置判断）
+        if (quickShopEventListener == null && quickShopIntegration.isQuickShopAvailable()) {
+            quickShopEventListener = new QuickShopEventListener(this);
+            getServer().getPluginManager().registerEvents(quickShopEventListener, this);
+        }
         getLogger().info("同步管理器初始化完成。");
     }
 
@@ -269,6 +318,15 @@ public final class ShopTools extends JavaPlugin {
         return quickShopIntegration;
     }
 
+    /**
+     * 获取店主名称服务
+     *
+     * @return 店主名称服务实例
+     */
+    public OwnerNameService getOwnerNameService() {
+        return ownerNameService;
+    }
+
     /**
      * 获取商店备份管理器
      *
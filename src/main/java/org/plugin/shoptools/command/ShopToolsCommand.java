@@ -11,14 +11,20 @@ import org.plugin.shoptools.ShopTools;
 import org.plugin.shoptools.config.ConfigManager;
 import org.plugin.shoptools.data.LocationPoint;
 import org.plugin.shoptools.manager.LocationManager;
+import org.plugin.shoptools.manager.OwnerNameService;
 import org.plugin.shoptools.manager.ShopBackupManager;
 import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.storage.PriceHistory;
 import org.plugin.shoptools.storage.ShopDataManager;
 import org.plugin.shoptools.util.DirectionUtil;
 import org.plugin.shoptools.util.MessageUtil;
 
 import org.maxgamer.quickshop.api.shop.Shop;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -30,6 +36,9 @@ import java.util.stream.Collectors;
  */
 public class ShopToolsCommand implements CommandExecutor, TabCompleter {
 
+    /** 价格历史查询的最大天数 */
+    private static final int MAX_HISTORY_DAYS = 365;
+
     private final ShopTools plugin;
     private final ConfigManager configManager;
     private final Map<UUID, Long> playerCooldowns = new HashMap<>();
@@ -89,7 +98,8 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         String subCommand = args[0].toLowerCase();
 
         // 检查玩家命令的冷却时间
-        if (sender instanceof Player && (subCommand.equals("search") || subCommand.equals("near"))) {
+        if (sender instanceof Player && (subCommand.equals("search") || subCommand.equals("near")
+                || subCommand.equals("history"))) {
             if (!checkCooldown((Player) sender)) {
                 return true; // 冷却时间未到，直接返回
             }
@@ -111,6 +121,9 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
             case "who":
                 handleWhoCommand(sender, args);
                 break;
+            case "history":
+                handleHistoryCommand(sender, args);
+                break;
             case "clocate":
                 handleCreateLocationCommand(sender, args);
                 break;
@@ -186,7 +199,7 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         }
 
         // 按距离排序（从近到远，其他世界的商店排在最后）
-        allShops.sort(createDistanceComparator(player.getLocation()));
+        sortByDistance(allShops, player.getLocation());
 
         // 检查是否需要分页
         int pageSize = 10;
@@ -251,7 +264,7 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         }
 
         // 按距离排序（从近到远）
-        nearbyShops.sort(Comparator.comparing(shop -> getDistance(player.getLocation(), shop.getLocation())));
+        sortByDistance(nearbyShops, player.getLocation());
 
         // 检查是否需要分页
         int pageSize = 10;
@@ -379,6 +392,96 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         displayShopListPaged(sender, allShops, "所有商店", page);
     }
 
+    /**
+     * 处理history命令（物品价格历史）
+     * <p>
+     * 只读取时间范围覆盖的价格历史段文件，读取在异步线程进行，结果回到主线程发送。
+     *
+     * @param sender 命令发送者
+     * @param args 命令参数
+     */
+    private void handleHistoryCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            MessageUtil.sendMessage(sender, "&c用法: /shoptools history <物品ID> [天数]");
+            return;
+        }
+        if (!configManager.isPriceHistoryEnabled()) {
+            MessageUtil.sendMessage(sender, "&e价格历史记录未启用。");
+            return;
+        }
+
+        String itemId = args[1];
+        int days = 7; // 默认最近7天
+        if (args.length >= 3) {
+            try {
+                days = Integer.parseInt(args[2]);
+                if (days < 1) {
+                    MessageUtil.sendMessage(sender, "&c天数必须大于0！");
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                MessageUtil.sendMessage(sender, "&c天数必须是数字！");
+                return;
+            }
+        }
+        // 保留期之外没有数据；无论保留期如何都限制最大天数，避免逐日检查过多的段文件
+        days = Math.min(days, MAX_HISTORY_DAYS);
+        int retention = configManager.getPriceHistoryRetentionDays();
+        if (retention > 0) {
+            days = Math.min(days, retention);
+        }
+
+        final int queryDays = days;
+        long to = System.currentTimeMillis();
+        long from = to - queryDays * 24L * 60 * 60 * 1000;
+        PriceHistory history = dataManager.getPriceHistory();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<PriceHistory.PriceChange> changes = history.query(itemId, from, to);
+            Bukkit.getScheduler().runTask(plugin, () -> displayPriceHistory(sender, itemId, queryDays, changes));
+        });
+    }
+
+    /**
+     * 显示价格历史：每天的调价次数与新价格统计，以及最近的10次调价
+     *
+     * @param sender 命令发送者
+     * @param itemId 物品ID
+     * @param days 查询天数
+     * @param changes 按时间排序的价格变化
+     */
+    private void displayPriceHistory(CommandSender sender, String itemId, int days,
+                                     List<PriceHistory.PriceChange> changes) {
+        if (changes.isEmpty()) {
+            MessageUtil.sendMessage(sender, "&e最近 " + days + " 天没有 &6" + itemId + "&e 的价格变化记录。");
+            return;
+        }
+
+        ZoneId zone = ZoneId.systemDefault();
+        MessageUtil.sendMessage(sender, "&6=== " + itemId + " 最近 " + days + " 天的价格变化 ===");
+
+        // 按本地日期汇总
+        Map<LocalDate, DoubleSummaryStatistics> daily = new TreeMap<>();
+        for (PriceHistory.PriceChange change : changes) {
+            LocalDate date = Instant.ofEpochMilli(change.timestamp()).atZone(zone).toLocalDate();
+            daily.computeIfAbsent(date, k -> new DoubleSummaryStatistics()).accept(change.newPrice());
+        }
+        for (Map.Entry<LocalDate, DoubleSummaryStatistics> entry : daily.entrySet()) {
+            DoubleSummaryStatistics stats = entry.getValue();
+            MessageUtil.sendMessage(sender, String.format("&e%s &7调价 &f%d &7次，新价格均价 &a%.2f &7(最低 %.2f / 最高 %.2f)",
+                    entry.getKey(), stats.getCount(), stats.getAverage(), stats.getMin(), stats.getMax()));
+        }
+
+        MessageUtil.sendMessage(sender, "&7最近的调价:");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM-dd HH:mm").withZone(zone);
+        for (int i = Math.max(0, changes.size() - 10); i < changes.size(); i++) {
+            PriceHistory.PriceChange change = changes.get(i);
+            MessageUtil.sendMessage(sender, String.format("&7%s &f%s &c%.2f &7→ &a%.2f",
+                    formatter.format(Instant.ofEpochMilli(change.timestamp())), change.locationKey(),
+                    change.oldPrice(), change.newPrice()));
+        }
+        MessageUtil.sendMessage(sender, "&6=== 共 " + changes.size() + " 次调价 ===");
+    }
+
     /**
      * 处理who命令（增强版，支持分页）
      *
@@ -595,15 +698,11 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
             return onlinePlayer.getName();
         }
 
-        // 尝试从离线玩家获取名称
-        try {
-            org.bukkit.OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerId);
-            String name = offlinePlayer.getName();
-            if (name != null && !name.trim().isEmpty()) {
-                return name;
-            }
-        } catch (Exception e) {
-            // 忽略错误
+        // 从店主名称表获取（只读内存；Bukkit.getOfflinePlayer 可能在主线程读取玩家数据文件）
+        OwnerNameService ownerNames = plugin.getOwnerNameService();
+        String name = ownerNames != null ? ownerNames.getName(playerId) : null;
+        if (name != null) {
+            return name;
         }
 
         // 如果都失败了，返回UUID的简短形式
@@ -864,61 +963,52 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
     }
 
     /**
-     * 创建距离比较器（支持跨世界排序）
+     * 按距离排序商店（支持跨世界排序）：同世界的商店按距离从近到远，其他世界的商店排在最后并按世界名排序。
+     * <p>
+     * 排序前为每个商店计算一次距离，比较时不再构造 Location。
      *
+     * @param shops          商店列表（原地排序）
      * @param playerLocation 玩家位置
-     * @return 距离比较器
      */
-    private Comparator<ShopData> createDistanceComparator(org.bukkit.Location playerLocation) {
-        return (shop1, shop2) -> {
-            org.bukkit.Location loc1 = shop1.getLocation();
-            org.bukkit.Location loc2 = shop2.getLocation();
-
-            // 检查是否在同一世界
-            boolean shop1SameWorld = loc1 != null && loc1.getWorld() != null &&
-                                   loc1.getWorld().equals(playerLocation.getWorld());
-            boolean shop2SameWorld = loc2 != null && loc2.getWorld() != null &&
-                                   loc2.getWorld().equals(playerLocation.getWorld());
-
-            // 同世界的商店优先
-            if (shop1SameWorld && !shop2SameWorld) {
-                return -1;
-            }
-            if (!shop1SameWorld && shop2SameWorld) {
-                return 1;
-            }
-
-            // 如果都在同一世界，按距离排序
-            if (shop1SameWorld && shop2SameWorld) {
-                double dist1 = playerLocation.distance(loc1);
-                double dist2 = playerLocation.distance(loc2);
-                return Double.compare(dist1, dist2);
+    private void sortByDistance(List<ShopData> shops, org.bukkit.Location playerLocation) {
+        String playerWorld = playerLocation.getWorld() != null ? playerLocation.getWorld().getName() : null;
+        List<DistanceEntry> entries = new ArrayList<>(shops.size());
+        for (ShopData shop : shops) {
+            String worldName = shop.getWorldName() != null ? shop.getWorldName() : "";
+            boolean sameWorld = shop.isWorldLoaded() && worldName.equals(playerWorld);
+            double distanceSquared = 0;
+            if (sameWorld) {
+                double dx = shop.getX() - playerLocation.getX();
+                double dy = shop.getY() - playerLocation.getY();
+                double dz = shop.getZ() - playerLocation.getZ();
+                distanceSquared = dx * dx + dy * dy + dz * dz;
             }
-
-            // 如果都在其他世界，按世界名排序
-            if (!shop1SameWorld && !shop2SameWorld) {
-                String world1 = loc1 != null && loc1.getWorld() != null ? loc1.getWorld().getName() : "";
-                String world2 = loc2 != null && loc2.getWorld() != null ? loc2.getWorld().getName() : "";
-                return world1.compareTo(world2);
+            entries.add(new DistanceEntry(shop, sameWorld, distanceSquared, worldName));
+        }
+        entries.sort((entry1, entry2) -> {
+            // 同世界的商店优先
+            if (entry1.sameWorld() != entry2.sameWorld()) {
+                return entry1.sameWorld() ? -1 : 1;
             }
-
-            return 0;
-        };
+            // 如果都在同一世界，按距离排序；都在其他世界，按世界名排序
+            return entry1.sameWorld()
+                    ? Double.compare(entry1.distanceSquared(), entry2.distanceSquared())
+                    : entry1.worldName().compareTo(entry2.worldName());
+        });
+        for (int i = 0; i < entries.size(); i++) {
+            shops.set(i, entries.get(i).shop());
+        }
     }
 
     /**
-     * 计算两个位置之间的距离
+     * 排序用的商店距离
      *
-     * @param loc1 位置1
-     * @param loc2 位置2
-     * @return 距离
+     * @param shop            商店
+     * @param sameWorld       是否与玩家在同一世界
+     * @param distanceSquared 与玩家距离的平方（同一世界时有效）
+     * @param worldName       商店所在世界名称
      */
-    private double getDistance(org.bukkit.Location loc1, org.bukkit.Location loc2) {
-        if (loc1 == null || loc2 == null || !loc1.getWorld().equals(loc2.getWorld())) {
-            return Double.MAX_VALUE;
-        }
-
-        return loc1.distance(loc2);
+    private record DistanceEntry(ShopData shop, boolean sameWorld, double distanceSquared, String worldName) {
     }
 
     /**
@@ -1050,6 +1140,7 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         // 玩家可用命令
         MessageUtil.sendMessage(sender, configManager.getMessage("help-search"));
         MessageUtil.sendMessage(sender, configManager.getMessage("help-near"));
+        MessageUtil.sendMessage(sender, configManager.getMessage("help-history"));
         MessageUtil.sendMessage(sender, "&7/shoptools locate <关键字> [页码] - 查找位置点");
 
         // 管理员命令
@@ -1076,6 +1167,7 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
             // 玩家可用命令
             completions.add("search");
             completions.add("near");
+            completions.add("history");
             completions.add("locate");
             completions.add("help");
 
@@ -1094,7 +1186,7 @@ public class ShopToolsCommand implements CommandExecutor, TabCompleter {
         } else if (args.length == 2) {
             String subCommand = args[0].toLowerCase();
 
-            if ("search".equals(subCommand)) {
+            if ("search".equals(subCommand) || "history".equals(subCommand)) {
                 // 物品ID补全（玩家命令）
                 Set<String> itemIds = dataManager.getAllShops().stream()
                         .map(ShopData::getItemId)
@@ -26,10 +26,33 @@ public class ConfigManager {
     private static final long DEFAULT_CACHE_EXPIRE_TIME = 300000L; // 5分钟
     private static final boolean DEFAULT_AUTO_SYNC = true;
     private static final long DEFAULT_SYNC_INTERVAL = 600000L; // 10分钟
+    private static final boolean DEFAULT_EVENT_SYNC = true;       // 监听 QuickShop 商店事件增量同步
+    private static final long DEFAULT_RECONCILE_INTERVAL = 3600000L; // 事件同步时的全量校对间隔（1小时）
+    private static final String DEFAULT_SYNC_SOURCE = "api";      // 全量同步的数据来源
+    private static final boolean DEFAULT_SLICED_SYNC = true;      // 全量同步的主线程读取分摊到多个 tick
+    private static final long DEFAULT_SYNC_TICK_BUDGET = 5L;      // 分片同步每 tick 的时间预算（毫秒）
+    private static final boolean DEFAULT_ADAPTIVE_SYNC = true;    // 按变化数自适应调整同步间隔
+    private static final long DEFAULT_ADAPTIVE_MIN_INTERVAL = 120000L;  // 自适应同步最小间隔（2分钟）
+    private static final long DEFAULT_ADAPTIVE_MAX_INTERVAL = 3600000L; // 自适应同步最大间隔（1小时）
+    private static final double DEFAULT_SYNC_MSPT_THRESHOLD = 45.0; // MSPT 超过该值时同步退避（毫秒）
     private static final int DEFAULT_LOAD_THREADS = 0; // 0 = 自动检测（可用线程数 - 2）
+    private static final boolean DEFAULT_SEGMENTED_LOAD = true; // 二进制快照分段并行解析
+    private static final boolean DEFAULT_LAZY_LOAD = true;      // 二进制快照内存映射惰性加载
     private static final boolean DEFAULT_STOCK_SCAN_ENABLED = true;
     private static final int DEFAULT_STOCK_SCAN_CHUNKS_PER_TICK = 3; // 每 tick 处理的区块数
     private static final int DEFAULT_STOCK_SCAN_TICK_DELAY = 5;      // 每批次间隔 tick 数
+    private static final int DEFAULT_STOCK_FRESHNESS_TTL = 360;      // 库存新鲜期（分钟）
+    private static final String DEFAULT_STORAGE_BACKEND = "file";   // 商店数据存储后端
+    private static final String DEFAULT_STORAGE_FORMAT = "binary";  // 商店快照格式
+    private static final long DEFAULT_SAVE_DELAY = 5000L;           // 快照写入合并窗口（毫秒）
+    private static final int DEFAULT_JOURNAL_COMPACT_THRESHOLD = 20000; // 库存日志压实阈值（条）
+    private static final int DEFAULT_SNAPSHOT_GENERATIONS = 2;      // 保留的历史快照代数
+    private static final String DEFAULT_COMPRESSION = "none";       // 快照与备份的压缩方式
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;         // GZIP 压缩级别
+    private static final boolean DEFAULT_PRICE_HISTORY_ENABLED = true; // 是否记录价格历史
+    private static final int DEFAULT_PRICE_HISTORY_RETENTION = 90;  // 价格历史保留天数
+    private static final boolean DEFAULT_FEED_ENABLED = true;       // 是否向下游插件推送商店变化
+    private static final int DEFAULT_FEED_BUFFER_SIZE = 10000;      // 变化推送缓冲上限（条）
     
     /**
      * 构造函数
@@ -67,10 +90,33 @@ public class ConfigManager {
         config.addDefault("cache.expire-time", DEFAULT_CACHE_EXPIRE_TIME);
         config.addDefault("sync.auto", DEFAULT_AUTO_SYNC);
         config.addDefault("sync.interval", DEFAULT_SYNC_INTERVAL);
+        config.addDefault("sync.event-driven", DEFAULT_EVENT_SYNC);
+        config.addDefault("sync.reconcile-interval", DEFAULT_RECONCILE_INTERVAL);
+        config.addDefault("sync.source", DEFAULT_SYNC_SOURCE);
+        config.addDefault("sync.sliced", DEFAULT_SLICED_SYNC);
+        config.addDefault("sync.tick-budget", DEFAULT_SYNC_TICK_BUDGET);
+        config.addDefault("sync.adaptive.enabled", DEFAULT_ADAPTIVE_SYNC);
+        config.addDefault("sync.adaptive.min-interval", DEFAULT_ADAPTIVE_MIN_INTERVAL);
+        config.addDefault("sync.adaptive.max-interval", DEFAULT_ADAPTIVE_MAX_INTERVAL);
+        config.addDefault("sync.adaptive.mspt-threshold", DEFAULT_SYNC_MSPT_THRESHOLD);
         config.addDefault("performance.load-threads", DEFAULT_LOAD_THREADS);
+        config.addDefault("performance.segmented-load", DEFAULT_SEGMENTED_LOAD);
+        config.addDefault("performance.lazy-load", DEFAULT_LAZY_LOAD);
         config.addDefault("performance.stock-scan.enabled", DEFAULT_STOCK_SCAN_ENABLED);
         config.addDefault("performance.stock-scan.chunks-per-tick", DEFAULT_STOCK_SCAN_CHUNKS_PER_TICK);
         config.addDefault("performance.stock-scan.tick-delay", DEFAULT_STOCK_SCAN_TICK_DELAY);
+        config.addDefault("performance.stock-scan.freshness-ttl", DEFAULT_STOCK_FRESHNESS_TTL);
+        config.addDefault("storage.backend", DEFAULT_STORAGE_BACKEND);
+        config.addDefault("storage.format", DEFAULT_STORAGE_FORMAT);
+        config.addDefault("storage.save-delay", DEFAULT_SAVE_DELAY);
+        config.addDefault("storage.journal-compact-threshold", DEFAULT_JOURNAL_COMPACT_THRESHOLD);
+        config.addDefault("storage.generations", DEFAULT_SNAPSHOT_GENERATIONS);
+        config.addDefault("storage.compression", DEFAULT_COMPRESSION);
+        config.addDefault("storage.compression-level", DEFAULT_COMPRESSION_LEVEL);
+        config.addDefault("price-history.enabled", DEFAULT_PRICE_HISTORY_ENABLED);
+        config.addDefault("price-history.retention-days", DEFAULT_PRICE_HISTORY_RETENTION);
+        config.addDefault("feed.enabled", DEFAULT_FEED_ENABLED);
+        config.addDefault("feed.buffer-size", DEFAULT_FEED_BUFFER_SIZE);
         
         // 消息配置
         config.addDefault("messages.prefix", "&6[ShopTools] &r");
@@ -91,6 +137,7 @@ public class ConfigManager {
         config.addDefault("messages.help-list", "&e/shoptools list &7- 显示所有商店");
         config.addDefault("messages.help-list-item", "&e/shoptools list <物品ID> &7- 显示指定物品的商店");
         config.addDefault("messages.help-who", "&e/shoptools who <玩家名> &7- 显示指定玩家的商店");
+        config.addDefault("messages.help-history", "&e/shoptools history <物品ID> [天数] &7- 查看物品最近的价格变化");
         config.addDefault("messages.help-reload", "&e/shoptools reload &7- 重新加载配置和数据");
         
         config.options().copyDefaults(true);
@@ -136,6 +183,90 @@ public class ConfigManager {
         return config.getLong("sync.interval", DEFAULT_SYNC_INTERVAL);
     }
 
+    /**
+     * 是否监听 QuickShop 的商店创建、删除、改价和换物品事件，逐个商店增量同步
+     *
+     * @return 启用返回 true
+     */
+    public boolean isEventSyncEnabled() {
+        return config.getBoolean("sync.event-driven", DEFAULT_EVENT_SYNC);
+    }
+
+    /**
+     * 获取事件同步启用时的全量校对间隔（毫秒）
+     * 事件已覆盖日常变化，全量同步只用于补齐遗漏的事件，间隔不小于 sync.interval
+     *
+     * @return 全量校对间隔（毫秒）
+     */
+    public long getReconcileInterval() {
+        return Math.max(getSyncInterval(), config.getLong("sync.reconcile-interval", DEFAULT_RECONCILE_INTERVAL));
+    }
+
+    /**
+     * 获取全量同步的数据来源
+     *
+     * @return api（通过 QuickShop API 在主线程读取）或 database（通过 JDBC 直接读取 QuickShop 商店表）
+     */
+    public String getSyncSource() {
+        String source = config.getString("sync.source", DEFAULT_SYNC_SOURCE);
+        return source != null && source.trim().equalsIgnoreCase("database") ? "database" : "api";
+    }
+
+    /**
+     * 是否将全量同步的主线程读取分摊到多个 tick
+     *
+     * @return 启用返回 true
+     */
+    public boolean isSlicedSyncEnabled() {
+        return config.getBoolean("sync.sliced", DEFAULT_SLICED_SYNC);
+    }
+
+    /**
+     * 获取分片同步每 tick 的读取时间预算（毫秒，1-50）
+     *
+     * @return 时间预算（毫秒）
+     */
+    public long getSyncTickBudget() {
+        return Math.max(1L, Math.min(50L, config.getLong("sync.tick-budget", DEFAULT_SYNC_TICK_BUDGET)));
+    }
+
+    /**
+     * 是否根据每次同步发现的变化数自适应调整定期同步间隔
+     *
+     * @return 启用返回 true
+     */
+    public boolean isAdaptiveSyncEnabled() {
+        return config.getBoolean("sync.adaptive.enabled", DEFAULT_ADAPTIVE_SYNC);
+    }
+
+    /**
+     * 获取自适应同步的最小间隔（毫秒，不小于 1 分钟）
+     *
+     * @return 最小间隔（毫秒）
+     */
+    public long getAdaptiveMinInterval() {
+        return Math.max(60000L, config.getLong("sync.adaptive.min-interval", DEFAULT_ADAPTIVE_MIN_INTERVAL));
+    }
+
+    /**
+     * 获取自适应同步的最大间隔（毫秒，不小于最小间隔）
+     *
+     * @return 最大间隔（毫秒）
+     */
+    public long getAdaptiveMaxInterval() {
+        return Math.max(getAdaptiveMinInterval(),
+                config.getLong("sync.adaptive.max-interval", DEFAULT_ADAPTIVE_MAX_INTERVAL));
+    }
+
+    /**
+     * 获取同步退避的 MSPT 阈值，服务器平均 tick 耗时达到该值时推迟定期同步
+     *
+     * @return MSPT 阈值（毫秒），0 表示不退避
+     */
+    public double getSyncMsptThreshold() {
+        return config.getDouble("sync.adaptive.mspt-threshold", DEFAULT_SYNC_MSPT_THRESHOLD);
+    }
+
     /**
      * 获取ban命令调试模式设置
      *
@@ -155,6 +286,26 @@ public class ConfigManager {
         return config.getInt("performance.load-threads", DEFAULT_LOAD_THREADS);
     }
 
+    /**
+     * 是否启用二进制快照的分段并行加载
+     * 启用后记录区按记录边界切分，由加载线程各自解析；关闭则使用单线程解析 + 并行转换的流水线
+     *
+     * @return {@code true} 表示启用
+     */
+    public boolean isSegmentedLoadEnabled() {
+        return config.getBoolean("performance.segmented-load", DEFAULT_SEGMENTED_LOAD);
+    }
+
+    /**
+     * 是否启用二进制快照的内存映射惰性加载
+     * 启用后启动时先映射文件、只建立索引，查询命令立即可用，完整缓存在后台构建；优先于分段加载
+     *
+     * @return {@code true} 表示启用
+     */
+    public boolean isLazyLoadEnabled() {
+        return config.getBoolean("performance.lazy-load", DEFAULT_LAZY_LOAD);
+    }
+
     /**
      * 是否启用启动时异步库存扫描。
      *
@@ -183,6 +334,119 @@ public class ConfigManager {
     public int getStockScanTickDelay() {
         return Math.max(1, config.getInt("performance.stock-scan.tick-delay", DEFAULT_STOCK_SCAN_TICK_DELAY));
     }
+
+    /**
+     * 库存新鲜期。
+     * 启动扫描只处理库存未知或最近一次扫描早于新鲜期的商店，0 表示每次启动都全部重新扫描。
+     *
+     * @return 新鲜期（毫秒）
+     */
+    public long getStockFreshnessTtl() {
+        return Math.max(0, config.getInt("performance.stock-scan.freshness-ttl", DEFAULT_STOCK_FRESHNESS_TTL)) * 60000L;
+    }
+    
+    /**
+     * 商店数据存储后端。
+     * file = 按世界分片的快照文件；sqlite = 插件目录下的嵌入式 SQLite 数据库（shops.db），
+     * 带物品、店主与区域索引，缓存构建完成前的查询直接走数据库。
+     *
+     * @return 后端名称（file / sqlite），已转为小写
+     */
+    public String getStorageBackend() {
+        return config.getString("storage.backend", DEFAULT_STORAGE_BACKEND).toLowerCase();
+    }
+
+    /**
+     * 商店快照文件格式。
+     * binary = 字典编码的二进制分片（shards/世界名.dat）；json = 旧版 JSON 格式。
+     * 加载时会自动识别现有文件的格式并迁移到此处配置的格式。
+     *
+     * @return 格式名称（binary / json）
+     */
+    public String getStorageFormat() {
+        return config.getString("storage.format", DEFAULT_STORAGE_FORMAT);
+    }
+
+    /**
+     * 获取快照写入的合并窗口
+     * 窗口内的多次保存请求合并为一次后台写入
+     *
+     * @return 合并窗口（毫秒）
+     */
+    public long getSaveDelay() {
+        return config.getLong("storage.save-delay", DEFAULT_SAVE_DELAY);
+    }
+
+    /**
+     * 获取库存日志压实阈值
+     * 日志记录数达到该值时，在后台写出新快照并清空日志
+     *
+     * @return 记录条数
+     */
+    public int getJournalCompactThreshold() {
+        return config.getInt("storage.journal-compact-threshold", DEFAULT_JOURNAL_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * 获取保留的历史快照代数
+     * 当前快照损坏时，加载会依次回退到这些备份
+     *
+     * @return 代数，0 表示不保留
+     */
+    public int getSnapshotGenerations() {
+        return config.getInt("storage.generations", DEFAULT_SNAPSHOT_GENERATIONS);
+    }
+
+    /**
+     * 获取快照分片与商店备份的压缩级别
+     * storage.compression 为 none 时不压缩；为 gzip 时使用 storage.compression-level（1 最快、9 最小）。
+     * 压缩的文件按文件头自动识别，切换设置后旧文件仍可正常读取。
+     *
+     * @return 压缩级别 1-9，0 表示不压缩
+     */
+    public int getCompressionLevel() {
+        if (!"gzip".equalsIgnoreCase(config.getString("storage.compression", DEFAULT_COMPRESSION))) {
+            return 0;
+        }
+        return Math.max(1, Math.min(9, config.getInt("storage.compression-level", DEFAULT_COMPRESSION_LEVEL)));
+    }
+
+    /**
+     * 是否记录价格历史
+     * 启用时每次全量同步发现的调价会写入 price_history/ 目录，供 /st history 查询
+     *
+     * @return 是否记录
+     */
+    public boolean isPriceHistoryEnabled() {
+        return config.getBoolean("price-history.enabled", DEFAULT_PRICE_HISTORY_ENABLED);
+    }
+
+    /**
+     * 获取价格历史保留天数，超过的按日分段文件会被删除
+     *
+     * @return 天数，0 表示永久保留
+     */
+    public int getPriceHistoryRetentionDays() {
+        return Math.max(0, config.getInt("price-history.retention-days", DEFAULT_PRICE_HISTORY_RETENTION));
+    }
+
+    /**
+     * 检查是否向下游插件推送商店变化（ShopChangeEvent 与 ShopChangeFeed 监听器）
+     *
+     * @return 是否启用
+     */
+    public boolean isFeedEnabled() {
+        return config.getBoolean("feed.enabled", DEFAULT_FEED_ENABLED);
+    }
+
+    /**
+     * 获取变化推送的缓冲上限，一批内合并后的变化超过该条数时只推送溢出标记
+     *
+     * @return 条数
+     */
+    public int getFeedBufferSize() {
+        return Math.max(1, config.getInt("feed.buffer-size", DEFAULT_FEED_BUFFER_SIZE));
+    }
     
     public String getMessage(String key) {
         return config.getString("messages." + key, "&c消息配置错误: " + key);
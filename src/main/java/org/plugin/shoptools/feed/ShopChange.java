@@ -0,0 +1,40 @@
+package org.plugin.shoptools.feed;
+
+import org.plugin.shoptools.model.ShopData;
+
+/**
+ * 单个商店的一次变化
+ *
+ * @param type     变化类型
+ * @param shop     变化后的商店数据；{@link Type#REMOVED} 时为被移除的商店
+ * @param oldPrice 变化前的价格，仅 {@link Type#PRICE_CHANGED} 和 {@link Type#UPDATED} 有意义，其余为 {@link Double#NaN}
+ * @param oldStock 变化前的库存，仅 {@link Type#STOCK_CHANGED} 有意义，库存此前未知时为 -1
+ * @author NSrank & Augment
+ */
+public record ShopChange(Type type, ShopData shop, double oldPrice, int oldStock) {
+
+    /**
+     * 变化类型
+     */
+    public enum Type {
+        /** 新增商店 */
+        ADDED,
+        /** 商店被移除 */
+        REMOVED,
+        /** 只有价格变化 */
+        PRICE_CHANGED,
+        /** 物品、店主、类型等其他内容变化（可能同时改价） */
+        UPDATED,
+        /** 库存扫描发现库存变化 */
+        STOCK_CHANGED
+    }
+
+    /**
+     * 获取商店的位置键
+     *
+     * @return 格式为 "world:blockX:blockY:blockZ" 的键
+     */
+    public String locationKey() {
+        return shop.getLocationKey();
+    }
+}
@@ -0,0 +1,15 @@
+package org.plugin.shoptools.feed;
+
+import java.util.List;
+
+/**
+ * 一批已合并的商店变化
+ * 同一商店在一批内最多出现一次商品变化和一次库存变化。
+ *
+ * @param changes    变化列表（不可修改）
+ * @param overflowed 缓冲区溢出、部分变化已被丢弃时为 {@code true}，此时消费方应重新读取完整数据
+ * @param timestamp  发布时间
+ * @author NSrank & Augment
+ */
+public record ShopChangeBatch(List<ShopChange> changes, boolean overflowed, long timestamp) {
+}
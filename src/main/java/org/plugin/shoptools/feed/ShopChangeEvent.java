@@ -0,0 +1,64 @@
+package org.plugin.shoptools.feed;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.List;
+
+/**
+ * 商店变化事件
+ * 每次全量同步、商店事件同步或库存扫描产生变化后，在主线程触发一次，携带合并后的一批变化。
+ *
+ * @author NSrank & Augment
+ */
+public class ShopChangeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final ShopChangeBatch batch;
+
+    /**
+     * 构造函数
+     *
+     * @param batch 一批变化
+     */
+    public ShopChangeEvent(ShopChangeBatch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * 获取这一批变化
+     *
+     * @return 变化批次
+     */
+    public ShopChangeBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * 获取变化列表
+     *
+     * @return 变化列表（不可修改）
+     */
+    public List<ShopChange> getChanges() {
+        return batch.changes();
+    }
+
+    /**
+     * 缓冲区是否溢出；溢出时变化不完整，应重新读取完整数据
+     *
+     * @return 溢出返回 true
+     */
+    public boolean isOverflowed() {
+        return batch.overflowed();
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,240 @@
+package org.plugin.shoptools.feed;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 商店变化推送
+ * <p>
+ * 同步和库存扫描产生的变化先进入有上限的缓冲区，按商店位置合并（如新增后又移除则互相抵消，
+ * 连续改价只保留最初的旧价格），在每次同步或扫描批次结束时调用 {@link #flush()}，
+ * 把合并后的一批变化推送给已注册的监听器和 {@link ShopChangeEvent}。
+ * 缓冲区满时丢弃已缓冲的变化，并在下一批中标记溢出，消费方据此重新读取完整数据。
+ * <p>
+ * 所有方法都应在主线程调用。
+ *
+ * @author NSrank & Augment
+ */
+public class ShopChangeFeed {
+
+    private final Logger logger;
+    private final int capacity;
+    private final Consumer<ShopChangeBatch> eventPublisher;
+    private final List<ShopChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** 商品变化（新增、移除、改价、其他变化），按位置合并 */
+    private final Map<String, ShopChange> listingChanges = new LinkedHashMap<>();
+    /** 库存变化，按位置合并 */
+    private final Map<String, ShopChange> stockChanges = new LinkedHashMap<>();
+    private boolean overflowed = false;
+    private boolean enabled = true;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity       缓冲区上限（合并后的变化条数）
+     * @param eventPublisher 发布批次时调用，用于触发 Bukkit 事件
+     * @param logger         日志记录器
+     */
+    public ShopChangeFeed(int capacity, Consumer<ShopChangeBatch> eventPublisher, Logger logger) {
+        this.capacity = Math.max(1, capacity);
+        this.eventPublisher = eventPublisher;
+        this.logger = logger;
+    }
+
+    /**
+     * 注册监听器
+     *
+     * @param listener 监听器
+     */
+    public void register(ShopChangeListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    /**
+     * 注销监听器
+     *
+     * @param listener 监听器
+     */
+    public void unregister(ShopChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 启用或停用推送；停用时丢弃已缓冲的变化
+     *
+     * @param enabled 是否启用
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            listingChanges.clear();
+            stockChanges.clear();
+            overflowed = false;
+        }
+    }
+
+    /**
+     * 记录新增商店
+     *
+     * @param shop 商店数据
+     */
+    public void added(ShopData shop) {
+        offer(listingChanges, new ShopChange(ShopChange.Type.ADDED, shop, Double.NaN, -1));
+    }
+
+    /**
+     * 记录移除商店
+     *
+     * @param shop 被移除的商店数据
+     */
+    public void removed(ShopData shop) {
+        offer(listingChanges, new ShopChange(ShopChange.Type.REMOVED, shop, Double.NaN, -1));
+    }
+
+    /**
+     * 记录商店内容变化
+     *
+     * @param previous  变化前的数据
+     * @param shop      变化后的数据
+     * @param priceOnly 除价格外其他内容均未变化时为 {@code true}
+     */
+    public void changed(ShopData previous, ShopData shop, boolean priceOnly) {
+        ShopChange.Type type = priceOnly ? ShopChange.Type.PRICE_CHANGED : ShopChange.Type.UPDATED;
+        offer(listingChanges, new ShopChange(type, shop, previous.getPrice(), -1));
+    }
+
+    /**
+     * 记录库存变化
+     *
+     * @param shop     商店数据（已更新库存）
+     * @param oldStock 变化前的库存，此前未知时为 -1
+     */
+    public void stockChanged(ShopData shop, int oldStock) {
+        offer(stockChanges, new ShopChange(ShopChange.Type.STOCK_CHANGED, shop, Double.NaN, oldStock));
+    }
+
+    /**
+     * 获取当前缓冲的变化条数
+     *
+     * @return 条数
+     */
+    public synchronized int pendingCount() {
+        return listingChanges.size() + stockChanges.size();
+    }
+
+    /**
+     * 推送缓冲的变化；没有变化时不推送
+     *
+     * @return 推送的批次，没有变化时返回 {@code null}
+     */
+    public ShopChangeBatch flush() {
+        ShopChangeBatch batch;
+        synchronized (this) {
+            if (listingChanges.isEmpty() && stockChanges.isEmpty() && !overflowed) {
+                return null;
+            }
+            List<ShopChange> changes = new ArrayList<>(listingChanges.size() + stockChanges.size());
+            changes.addAll(listingChanges.values());
+            changes.addAll(stockChanges.values());
+            batch = new ShopChangeBatch(Collections.unmodifiableList(changes), overflowed, System.currentTimeMillis());
+            listingChanges.clear();
+            stockChanges.clear();
+            overflowed = false;
+        }
+
+        for (ShopChangeListener listener : listeners) {
+            try {
+                listener.onShopChanges(batch);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "商店变化监听器处理失败: " + listener.getClass().getName(), e);
+            }
+        }
+        try {
+            eventPublisher.accept(batch);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "触发商店变化事件失败", e);
+        }
+        return batch;
+    }
+
+    private synchronized void offer(Map<String, ShopChange> buffer, ShopChange change) {
+        if (!enabled || overflowed) {
+            return; // 溢出后的变化已不完整，消费方会重新读取完整数据
+        }
+        String key = change.locationKey();
+        if (key == null) {
+            return;
+        }
+        ShopChange previous = buffer.get(key);
+        if (previous == null) {
+            if (listingChanges.size() + stockChanges.size() >= capacity) {
+                logger.warning("商店变化缓冲区已满（" + capacity + " 条），本批变化将标记为溢出。");
+                listingChanges.clear();
+                stockChanges.clear();
+                overflowed = true;
+                return;
+            }
+            buffer.put(key, change);
+            return;
+        }
+        ShopChange merged = change.type() == ShopChange.Type.STOCK_CHANGED
+                ? mergeStock(previous, change) : mergeListing(previous, change);
+        if (merged == null) {
+            buffer.remove(key);
+        } else {
+            buffer.put(key, merged);
+        }
+    }
+
+    /**
+     * 合并同一位置的两次商品变化
+     *
+     * @return 合并结果，互相抵消时返回 {@code null}
+     */
+    static ShopChange mergeListing(ShopChange previous, ShopChange next) {
+        switch (previous.type()) {
+            case ADDED:
+                // 新增后又移除：互相抵消；新增后又修改：仍是新增
+                if (next.type() == ShopChange.Type.REMOVED) {
+                    return null;
+                }
+                return new ShopChange(ShopChange.Type.ADDED, next.shop(), Double.NaN, -1);
+            case REMOVED:
+                // 移除后同一位置又出现商店：视为其他内容变化
+                if (next.type() == ShopChange.Type.REMOVED) {
+                    return next;
+                }
+                return new ShopChange(ShopChange.Type.UPDATED, next.shop(), previous.shop().getPrice(), -1);
+            default:
+                if (next.type() == ShopChange.Type.REMOVED || next.type() == ShopChange.Type.ADDED) {
+                    return next;
+                }
+                if (previous.type() == ShopChange.Type.PRICE_CHANGED && next.type() == ShopChange.Type.PRICE_CHANGED) {
+                    // 连续改价：保留最初的旧价格，改回原价时抵消
+                    if (Double.compare(previous.oldPrice(), next.shop().getPrice()) == 0) {
+                        return null;
+                    }
+                    return new ShopChange(ShopChange.Type.PRICE_CHANGED, next.shop(), previous.oldPrice(), -1);
+                }
+                return new ShopChange(ShopChange.Type.UPDATED, next.shop(), previous.oldPrice(), -1);
+        }
+    }
+
+    /**
+     * 合并同一位置的两次库存变化，保留最初的旧库存，回到原值时抵消
+     *
+     * @return 合并结果，互相抵消时返回 {@code null}
+     */
+    static ShopChange mergeStock(ShopChange previous, ShopChange next) {
+        if (previous.oldStock() >= 0 && previous.oldStock() == next.shop().getStock()) {
+            return null;
+        }
+        return new ShopChange(ShopChange.Type.STOCK_CHANGED, next.shop(), Double.NaN, previous.oldStock());
+    }
+}
@@ -0,0 +1,19 @@
+package org.plugin.shoptools.feed;
+
+/**
+ * 商店变化监听器
+ * 通过 {@link ShopChangeFeed#register(ShopChangeListener)} 注册，在主线程收到每批变化；
+ * 耗时的处理（如网络请求）应自行转到其他线程。
+ *
+ * @author NSrank & Augment
+ */
+@FunctionalInterface
+public interface ShopChangeListener {
+
+    /**
+     * 收到一批商店变化
+     *
+     * @param batch 已合并的变化
+     */
+    void onShopChanges(ShopChangeBatch batch);
+}
@@ -0,0 +1,93 @@
+package org.plugin.shoptools.integration;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * 按实现类缓存的可选方法
+ * <p>
+ * QuickShop 各版本的实现类提供的方法不同，只能按名称反射查找。每个实现类只查找一次，
+ * 结果（方法句柄或"不支持"）缓存在 {@link ClassValue} 中，之后直接调用句柄，
+ * 不再为每个商店重复 {@code getMethod} 和反射调用。
+ *
+ * @author NSrank & Augment
+ */
+final class CachedMethod {
+
+    private final String[] names;
+    private final Class<?>[] parameterTypes;
+    private final MethodType invokeType;
+
+    private final ClassValue<Optional<Resolved>> cache = new ClassValue<>() {
+        @Override
+        protected Optional<Resolved> computeValue(Class<?> type) {
+            return Optional.ofNullable(resolve(type));
+        }
+    };
+
+    /**
+     * 构造函数
+     *
+     * @param returnType     调用时使用的返回类型（{@code void.class} 表示忽略返回值）
+     * @param parameterTypes 方法参数类型
+     * @param names          候选方法名，按顺序取第一个存在的
+     */
+    CachedMethod(Class<?> returnType, Class<?>[] parameterTypes, String... names) {
+        this.names = names;
+        this.parameterTypes = parameterTypes;
+        // 调用形式统一为 (Object 接收者, Object... 参数)，调用方以 invokeExact 调用
+        Class<?>[] erased = new Class<?>[parameterTypes.length + 1];
+        Arrays.fill(erased, Object.class);
+        this.invokeType = MethodType.methodType(returnType, erased);
+    }
+
+    /**
+     * 获取实现类上解析出的方法句柄
+     *
+     * @param type 实现类
+     * @return 方法句柄，调用形式为 {@code (Object, Object...)returnType}；不支持时返回 {@code null}
+     */
+    MethodHandle handle(Class<?> type) {
+        return cache.get(type).map(Resolved::handle).orElse(null);
+    }
+
+    /**
+     * 获取实现类上解析出的方法名
+     *
+     * @param type 实现类
+     * @return 方法名，不支持时返回 {@code null}
+     */
+    String name(Class<?> type) {
+        return cache.get(type).map(Resolved::name).orElse(null);
+    }
+
+    private Resolved resolve(Class<?> type) {
+        for (String name : names) {
+            try {
+                Method method = type.getMethod(name, parameterTypes);
+                // 实现类本身可能不是 public，先尝试取消访问检查
+                method.trySetAccessible();
+                MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(invokeType);
+                return new Resolved(name, handle);
+            } catch (NoSuchMethodException | IllegalAccessException | WrongMethodTypeException
+                     | SecurityException ignored) {
+                // 继续检查下一个方法名
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析结果
+     *
+     * @param name   方法名
+     * @param handle 方法句柄
+     */
+    private record Resolved(String name, MethodHandle handle) {
+    }
+}
@@ -0,0 +1,185 @@
+package org.plugin.shoptools.integration;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.maxgamer.quickshop.api.shop.ShopType;
+
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * QuickShop 商店表读取器
+ * 通过 JDBC 直接读取 QuickShop 的商店表，一次流式查询取出坐标、店主、价格、类型、无限标志和序列化的商品，
+ * 逐行转换为 {@link RawShop}，全程不访问 QuickShop 的对象，可在后台线程执行。
+ * <p>
+ * 表结构与 QuickShop-Reremake 一致：{@code owner, price, itemConfig, x, y, z, world, unlimited, type}，
+ * 表名带前缀（默认 {@code qs_shops}）。
+ *
+ * @author NSrank & Augment
+ */
+public class QuickShopDatabaseReader {
+
+    /** 常见的商店表名，找不到时取任意以 shops 结尾的表 */
+    static final String[] TABLE_NAMES = {"qs_shops", "quickshop_shops", "shops"};
+
+    /** 查询需要的列 */
+    static final String[] COLUMNS = {"owner", "price", "itemConfig", "x", "y", "z", "world", "unlimited", "type"};
+
+    /** 每次从数据库取回的行数 */
+    private static final int FETCH_SIZE = 1000;
+
+    private final Function<String, ItemStack> itemDecoder;
+    private final Logger logger;
+
+    /**
+     * 构造函数
+     *
+     * @param itemDecoder 商品反序列化方法（itemConfig 列 → ItemStack），无法解析时返回 {@code null}
+     * @param logger      日志记录器
+     */
+    public QuickShopDatabaseReader(Function<String, ItemStack> itemDecoder, Logger logger) {
+        this.itemDecoder = itemDecoder;
+        this.logger = logger;
+    }
+
+    /**
+     * 查找商店表
+     *
+     * @param conn 数据库连接
+     * @return 表名，找不到时返回 {@code null}
+     * @throws SQLException 读取元数据失败时抛出
+     */
+    public String findShopTable(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        Map<String, String> tables = new HashMap<>();
+        try (ResultSet rs = metaData.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                String name = rs.getString("TABLE_NAME");
+                tables.put(name.toLowerCase(Locale.ROOT), name);
+            }
+        }
+        for (String candidate : TABLE_NAMES) {
+            String name = tables.get(candidate);
+            if (name != null) {
+                return name;
+            }
+        }
+        return tables.entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith("shops"))
+                .map(Map.Entry::getValue)
+                .sorted()
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * 流式读取商店表
+     *
+     * @param conn     数据库连接（由调用方负责关闭）
+     * @param worlds   世界名称 → 世界（在主线程取得的快照），未加载世界的商店会被跳过
+     * @param consumer 每读到一个商店调用一次
+     * @return 读取的商店数量
+     * @throws SQLException 找不到商店表、缺少列或查询失败时抛出
+     */
+    public int read(Connection conn, Map<String, World> worlds, Consumer<RawShop> consumer) throws SQLException {
+        String table = findShopTable(conn);
+        if (table == null) {
+            throw new SQLException("未找到 QuickShop 商店表");
+        }
+        String quote = conn.getMetaData().getIdentifierQuoteString().trim();
+        String sql = "SELECT " + String.join(", ", COLUMNS) + " FROM " + quote + table + quote;
+
+        int count = 0, skippedWorld = 0, skippedItem = 0;
+        try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    World world = worlds.get(rs.getString("world"));
+                    if (world == null) {
+                        skippedWorld++;
+                        continue;
+                    }
+                    UUID owner = parseOwner(rs.getString("owner"));
+                    ItemStack item = decodeItem(rs.getString("itemConfig"));
+                    if (owner == null || item == null || item.getType() == null) {
+                        skippedItem++;
+                        continue;
+                    }
+                    Location location = new Location(world, rs.getInt("x"), rs.getInt("y"), rs.getInt("z"));
+                    consumer.accept(new RawShop(
+                        location,
+                        item,
+                        rs.getDouble("price"),
+                        owner,
+                        rs.getInt("type") == 1 ? ShopType.BUYING : ShopType.SELLING,
+                        rs.getBoolean("unlimited")
+                    ));
+                    count++;
+                }
+            }
+        }
+
+        if (skippedWorld > 0 || skippedItem > 0) {
+            logger.info("读取商店表 " + table + "：跳过未加载世界的商店 " + skippedWorld + " 个，无法解析的商店 "
+                    + skippedItem + " 个。");
+        }
+        return count;
+    }
+
+    /**
+     * 解析店主：新版为 UUID 字符串，旧版为 {@code {"owner":"uuid","staffs":[...]}}
+     *
+     * @param value owner 列
+     * @return 店主UUID，无法解析时返回 {@code null}
+     */
+    static UUID parseOwner(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            String text = value.trim();
+            if (text.startsWith("{")) {
+                JsonElement owner = JsonParser.parseString(text).getAsJsonObject().get("owner");
+                text = owner == null ? null : owner.getAsString();
+            }
+            return text == null ? null : UUID.fromString(text);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按 QuickShop 的格式反序列化商品：itemConfig 列是一段 YAML，商品位于 {@code item} 键下
+     *
+     * @param itemConfig itemConfig 列
+     * @return 商品，无法解析时返回 {@code null}
+     */
+    public static ItemStack decodeYamlItem(String itemConfig) {
+        if (itemConfig == null || itemConfig.isEmpty()) {
+            return null;
+        }
+        YamlConfiguration yaml = new YamlConfiguration();
+        try {
+            yaml.loadFromString(itemConfig);
+        } catch (InvalidConfigurationException e) {
+            return null;
+        }
+        return yaml.getItemStack("item");
+    }
+
+    private ItemStack decodeItem(String itemConfig) {
+        try {
+            return itemDecoder.apply(itemConfig);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package org.plugin.shoptools.integration;
 
 import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 import org.maxgamer.quickshop.api.QuickShopAPI;
 import org.maxgamer.quickshop.api.shop.Shop;
 import org.maxgamer.quickshop.api.shop.ShopType;
+import org.plugin.shoptools.manager.OwnerNameService;
 import org.plugin.shoptools.model.ShopData;
 
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -22,9 +27,20 @@ import java.util.stream.Collectors;
  */
 public class QuickShopIntegration {
     
+    /** 商店实现类的无限状态方法（各版本名称不同） */
+    private static final CachedMethod UNLIMITED_METHOD =
+            new CachedMethod(Object.class, new Class<?>[0], "isUnlimited", "isUnlimitedShop");
+    /** ShopManager 实现类的商店删除方法 */
+    private static final CachedMethod DELETE_METHOD =
+            new CachedMethod(void.class, new Class<?>[]{Shop.class}, "deleteShop", "removeShop", "delete", "remove");
+    private static final CachedMethod REMOVE_METHOD =
+            new CachedMethod(void.class, new Class<?>[]{Shop.class}, "removeShop");
+
     private final Logger logger;
     private QuickShopAPI quickShopAPI;
     private boolean isQuickShopAvailable = false;
+    /** 店主名称服务，转换商店数据时填入玩家名称；未设置时以UUID字符串代替 */
+    private volatile OwnerNameService ownerNames;
     
     /**
      * 构造函数
@@ -36,6 +52,15 @@ public class QuickShopIntegration {
         initializeQuickShop();
     }
     
+    /**
+     * 设置店主名称服务
+     *
+     * @param ownerNames 店主名称服务
+     */
+    public void setOwnerNameService(OwnerNameService ownerNames) {
+        this.ownerNames = ownerNames;
+    }
+
     /**
      * 初始化QuickShop API
      */
@@ -124,31 +149,138 @@ public class QuickShopIntegration {
         return shopDataList;
     }
     
+    /**
+     * 获取 QuickShop 当前全部商店对象的快照（不做转换），供分片同步逐 tick 转换
+     * 必须在主线程调用
+     *
+     * @return 商店对象列表，QuickShop 不可用或出错时返回空列表
+     */
+    public List<Shop> getAllShopObjects() {
+        if (!isQuickShopAvailable()) {
+            logger.warning("QuickShop不可用，无法获取商店数据！");
+            return new ArrayList<>();
+        }
+        try {
+            Collection<Shop> shops = quickShopAPI.getShopManager().getAllShops();
+            return shops == null ? new ArrayList<>() : new ArrayList<>(shops);
+        } catch (Exception e) {
+            logger.severe("获取商店数据时发生错误: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 通过 JDBC 直接读取 QuickShop 的商店表并转换为商店数据
+     * 不访问 QuickShop 的商店对象，可在后台线程调用
+     *
+     * @param worlds 世界名称 → 世界（在主线程取得的快照）
+     * @return 商店数据列表；无法取得数据库连接或读取失败时返回 {@code null}，由调用方改用 API 读取
+     */
+    public List<ShopData> readShopsFromDatabase(Map<String, World> worlds) {
+        java.sql.Connection conn = getDatabaseConnection();
+        if (conn == null) {
+            logger.warning("无法获取QuickShop数据库连接，改用API读取商店数据。");
+            return null;
+        }
+        List<ShopData> shopDataList = new ArrayList<>();
+        try {
+            QuickShopDatabaseReader reader = new QuickShopDatabaseReader(QuickShopDatabaseReader::decodeYamlItem, logger);
+            reader.read(conn, worlds, raw -> {
+                ShopData shopData = convert(raw);
+                if (shopData != null) {
+                    shopDataList.add(shopData);
+                }
+            });
+            return shopDataList;
+        } catch (java.sql.SQLException e) {
+            logger.warning("读取QuickShop商店表失败，改用API读取商店数据: " + e.getMessage());
+            return null;
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+
+    /**
+     * 归还从连接池借出的连接；QuickShop 自己持有的单个连接（如 SQLite）不能关闭
+     *
+     * @param conn 数据库连接
+     */
+    private void releaseConnection(java.sql.Connection conn) {
+        String type = conn.getClass().getName().toLowerCase();
+        if (type.contains("hikari") || type.contains("proxy") || type.contains("pool")) {
+            try {
+                conn.close();
+            } catch (java.sql.SQLException ignored) {}
+        }
+    }
+    
     /**
      * 将QuickShop的Shop对象转换为ShopData对象
+     * 全量同步与商店事件共用同一转换，保证两条路径得到的数据一致
      * 
      * @param shop QuickShop的商店对象
-     * @return 转换后的ShopData对象
+     * @return 转换后的ShopData对象，转换失败时返回 {@code null}
      */
-    private ShopData convertShopToShopData(Shop shop) {
+    public ShopData convertShopToShopData(Shop shop) {
+        return convert(capture(shop));
+    }
+
+    /**
+     * 读取商店的原始字段（必须在主线程调用）
+     * 只做必须访问 QuickShop 对象的读取和复制，其余转换由 {@link #convert(RawShop)} 完成
+     *
+     * @param shop QuickShop的商店对象
+     * @return 原始字段，读取失败时返回 {@code null}
+     */
+    public RawShop capture(Shop shop) {
         if (shop == null) {
             return null;
         }
+        try {
+            return new RawShop(
+                shop.getLocation().clone(),
+                shop.getItem().clone(),
+                shop.getPrice(),
+                shop.getOwner(),
+                shop.getShopType(),
+                readUnlimitedFlag(shop)
+            );
+        } catch (Exception e) {
+            logger.warning("读取商店数据时发生错误: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 将原始字段转换为ShopData对象
+     * 不访问 QuickShop 的对象，可在任意线程调用
+     *
+     * @param raw 主线程读取的原始字段
+     * @return 转换后的ShopData对象，转换失败时返回 {@code null}
+     */
+    public ShopData convert(RawShop raw) {
+        if (raw == null) {
+            return null;
+        }
         
         try {
             // 获取商店基本信息
-            UUID shopId = UUID.randomUUID(); // 使用随机UUID作为商店ID
-            String itemId = shop.getItem().getType().name();
-            String itemDisplayName = getItemDisplayName(shop);
-            double price = shop.getPrice();
-            UUID ownerId = shop.getOwner();
-            String ownerName = shop.getOwner().toString(); // 转换为字符串
+            // 由位置派生稳定ID，同一商店在每次同步、重载和重启后保持不变
+            UUID shopId = ShopData.idFor(raw.location());
+            String itemId = raw.item().getType().name();
+            String itemDisplayName = getItemDisplayName(raw.item());
+            UUID ownerId = raw.owner();
+            // 从名称表查询玩家名称（只读内存），未知玩家仍以UUID字符串代替，由命令显示时再尝试解析
+            OwnerNameService names = ownerNames;
+            String knownName = names != null ? names.getName(ownerId) : null;
+            String ownerName = knownName != null ? knownName : ownerId.toString();
 
             // 转换商店类型
-            ShopData.ShopType shopType = convertShopType(shop.getShopType());
+            ShopData.ShopType shopType = convertShopType(raw.shopType());
 
             // 检测商店是否为无限状态
-            boolean isUnlimited = checkIfUnlimited(shop);
+            boolean isUnlimited = checkIfUnlimited(raw);
 
             // 库存检查已停用：QuickShop 库存依赖区块加载（实时读取箱子方块实体），
             // 在启动期间强制加载区块会阻塞主线程。统一使用 -1 表示"未追踪"。
@@ -162,14 +294,14 @@ public class QuickShopIntegration {
                 shopId,
                 itemId,
                 itemDisplayName,
-                shop.getLocation(),
-                price,
+                raw.location(),
+                raw.price(),
                 ownerId,
                 displayOwnerName,
                 shopType,
                 stock,
                 isUnlimited,
-                shop.getItem()
+                raw.item()
             );
             
         } catch (Exception e) {
@@ -179,76 +311,67 @@ public class QuickShopIntegration {
     }
 
     /**
-     * 检测商店是否为无限状态
+     * 读取商店自身报告的无限状态（需访问商店对象，在主线程调用）
      *
      * @param shop 商店对象
-     * @return 是否为无限商店
+     * @return 无限状态，商店不提供相关方法时返回 {@code null}
      */
-    private boolean checkIfUnlimited(Shop shop) {
+    private Boolean readUnlimitedFlag(Shop shop) {
+        // 按实现类缓存的 isUnlimited() / isUnlimitedShop()
+        MethodHandle handle = UNLIMITED_METHOD.handle(shop.getClass());
+        if (handle == null) {
+            return null;
+        }
         try {
-            // 方法1: 尝试调用isUnlimited()方法
-            try {
-                java.lang.reflect.Method isUnlimitedMethod = shop.getClass().getMethod("isUnlimited");
-                Object result = isUnlimitedMethod.invoke(shop);
-                if (result instanceof Boolean) {
-                    return (Boolean) result;
-                }
-            } catch (Exception ignored) {}
-
-            // 方法2: 尝试调用getShopType()并检查是否包含UNLIMITED
-            try {
-                Object shopType = shop.getShopType();
-                if (shopType != null) {
-                    String shopTypeStr = shopType.toString().toUpperCase();
-                    if (shopTypeStr.contains("UNLIMITED") || shopTypeStr.contains("INFINITE")) {
-                        return true;
-                    }
-                }
-            } catch (Exception ignored) {}
-
-            // 方法3（已移除）: 原通过库存=-1检测无限状态，但 getRemainingStock() 需区块加载，已废弃。
+            Object result = (Object) handle.invokeExact((Object) shop);
+            return result instanceof Boolean ? (Boolean) result : null;
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
 
-            // 方法4: 尝试调用isUnlimitedShop()方法
-            try {
-                java.lang.reflect.Method isUnlimitedShopMethod = shop.getClass().getMethod("isUnlimitedShop");
-                Object result = isUnlimitedShopMethod.invoke(shop);
-                if (result instanceof Boolean) {
-                    return (Boolean) result;
-                }
-            } catch (Exception ignored) {}
+    /**
+     * 检测商店是否为无限状态
+     *
+     * @param raw 商店原始字段
+     * @return 是否为无限商店
+     */
+    private boolean checkIfUnlimited(RawShop raw) {
+        // 方法1: 商店自身报告的无限状态
+        if (raw.unlimitedFlag() != null) {
+            return raw.unlimitedFlag();
+        }
 
-            // 方法5: 检查店主是否为特殊UUID（系统商店通常使用特殊UUID）
-            try {
-                UUID ownerId = shop.getOwner();
-                // 检查是否为全零UUID或特殊系统UUID
-                if (ownerId != null && (ownerId.equals(new UUID(0, 0)) ||
-                    ownerId.toString().equals("00000000-0000-0000-0000-000000000000"))) {
-                    return true;
-                }
-            } catch (Exception ignored) {}
+        // 方法2: 检查商店类型是否包含UNLIMITED
+        ShopType shopType = raw.shopType();
+        if (shopType != null) {
+            String shopTypeStr = shopType.toString().toUpperCase();
+            if (shopTypeStr.contains("UNLIMITED") || shopTypeStr.contains("INFINITE")) {
+                return true;
+            }
+        }
 
-            return false;
+        // 方法3（已移除）: 原通过库存=-1检测无限状态，但 getRemainingStock() 需区块加载，已废弃。
 
-        } catch (Exception e) {
-            logger.warning("检测商店无限状态时发生错误: " + e.getMessage());
-            return false;
-        }
+        // 方法4: 检查店主是否为特殊UUID（系统商店通常使用全零UUID）
+        UUID ownerId = raw.owner();
+        return ownerId != null && ownerId.getMostSignificantBits() == 0 && ownerId.getLeastSignificantBits() == 0;
     }
 
     /**
      * 获取物品显示名称
      *
-     * @param shop 商店对象
+     * @param item 商品
      * @return 物品显示名称
      */
-    private String getItemDisplayName(Shop shop) {
+    private String getItemDisplayName(ItemStack item) {
         try {
-            if (shop.getItem().hasItemMeta() && shop.getItem().getItemMeta().hasDisplayName()) {
-                return shop.getItem().getItemMeta().getDisplayName();
+            if (item.hasItemMeta() && item.getItemMeta().hasDisplayName()) {
+                return item.getItemMeta().getDisplayName();
             }
-            return shop.getItem().getType().name();
+            return item.getType().name();
         } catch (Exception e) {
-            return shop.getItem().getType().name();
+            return item.getType().name();
         }
     }
     
@@ -341,19 +464,11 @@ public class QuickShopIntegration {
             // 使用反射检查是否存在删除方法
             Class<?> shopManagerClass = shopManager.getClass();
 
-            // 检查常见的删除方法名
-            String[] deleteMethodNames = {
-                "deleteShop", "removeShop", "delete", "remove"
-            };
-
-            for (String methodName : deleteMethodNames) {
-                try {
-                    shopManagerClass.getMethod(methodName, Shop.class);
-                    logger.info("找到商店删除方法: " + methodName);
-                    return true;
-                } catch (NoSuchMethodException ignored) {
-                    // 继续检查下一个方法
-                }
+            // 检查常见的删除方法名（按实现类缓存查找结果）
+            String methodName = DELETE_METHOD.name(shopManagerClass);
+            if (methodName != null) {
+                logger.info("找到商店删除方法: " + methodName);
+                return true;
             }
 
             logger.info("QuickShop API不支持商店删除功能");
@@ -384,17 +499,16 @@ public class QuickShopIntegration {
                 return false;
             }
 
-            // 使用反射调用removeShop方法
-            Class<?> shopManagerClass = shopManager.getClass();
-            try {
-                shopManagerClass.getMethod("removeShop", Shop.class).invoke(shopManager, shop);
-                return true;
-            } catch (NoSuchMethodException e) {
-                logger.warning("找不到removeShop方法: " + e.getMessage());
+            // 调用按实现类缓存的removeShop方法句柄
+            MethodHandle handle = REMOVE_METHOD.handle(shopManager.getClass());
+            if (handle == null) {
+                logger.warning("找不到removeShop方法: " + shopManager.getClass().getName());
                 return false;
             }
+            handle.invokeExact(shopManager, (Object) shop);
+            return true;
 
-        } catch (Exception e) {
+        } catch (Throwable e) {
             logger.warning("删除商店时发生错误: " + e.getMessage());
             return false;
         }
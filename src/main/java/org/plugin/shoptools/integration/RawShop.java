@@ -0,0 +1,24 @@
+package org.plugin.shoptools.integration;
+
+import org.bukkit.Location;
+import org.bukkit.inventory.ItemStack;
+import org.maxgamer.quickshop.api.shop.ShopType;
+
+import java.util.UUID;
+
+/**
+ * 在主线程从 QuickShop 商店对象读取的原始字段
+ * 位置和物品均为副本，之后不再访问 QuickShop 的对象，可交给后台线程转换为
+ * {@link org.plugin.shoptools.model.ShopData}
+ *
+ * @param location      商店位置（副本）
+ * @param item          商品（副本）
+ * @param price         价格
+ * @param owner         店主UUID
+ * @param shopType      QuickShop 商店类型
+ * @param unlimitedFlag 商店自身报告的无限状态，无法读取时为 {@code null}
+ * @author NSrank & Augment
+ */
+public record RawShop(Location location, ItemStack item, double price, UUID owner,
+                      ShopType shopType, Boolean unlimitedFlag) {
+}
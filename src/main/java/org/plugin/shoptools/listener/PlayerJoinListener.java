@@ -0,0 +1,43 @@
+package org.plugin.shoptools.listener;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.plugin.shoptools.ShopTools;
+import org.plugin.shoptools.manager.OwnerNameService;
+
+/**
+ * 玩家进服监听器
+ * 记录玩家的当前名称，改名后的店主在下一次同步时显示新名称
+ *
+ * @author NSrank & Augment
+ */
+public class PlayerJoinListener implements Listener {
+
+    private final ShopTools plugin;
+
+    /**
+     * 构造函数
+     *
+     * @param plugin 插件实例
+     */
+    public PlayerJoinListener(ShopTools plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 玩家进服时更新名称表
+     *
+     * @param event 玩家进服事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        OwnerNameService ownerNames = plugin.getOwnerNameService();
+        Player player = event.getPlayer();
+        if (ownerNames != null && ownerNames.update(player.getUniqueId(), player.getName())) {
+            ownerNames.requestSave(plugin);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.plugin.shoptools.listener;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.maxgamer.quickshop.api.event.ShopCreateEvent;
+import org.maxgamer.quickshop.api.event.ShopDeleteEvent;
+import org.maxgamer.quickshop.api.event.ShopItemChangeEvent;
+import org.maxgamer.quickshop.api.event.ShopPriceChangeEvent;
+import org.maxgamer.quickshop.api.shop.Shop;
+import org.plugin.shoptools.ShopTools;
+import org.plugin.shoptools.integration.QuickShopIntegration;
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.storage.ShopDataManager;
+import org.plugin.shoptools.sync.DataSyncManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * QuickShop 商店事件监听器
+ * 商店创建、删除、改价和换物品时只更新对应的一个商店，无需等待定期全量同步
+ * <p>
+ * QuickShop 在修改生效前触发这些事件，因此不直接读取事件中的商店，而是在下一 tick
+ * 按位置重新读取 QuickShop 中的最新状态：商店仍存在则更新，不存在则移除。
+ * 同一 tick 内同一位置的多个事件只处理一次。
+ *
+ * @author NSrank & Augment
+ */
+public class QuickShopEventListener implements Listener {
+
+    private final ShopTools plugin;
+
+    /** 等待下一 tick 处理的商店位置（位置键 → 位置） */
+    private final Map<String, Location> pending = new LinkedHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param plugin 插件实例
+     */
+    public QuickShopEventListener(ShopTools plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 商店创建
+     *
+     * @param event 商店创建事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onShopCreate(ShopCreateEvent event) {
+        schedule(event.getShop());
+    }
+
+    /**
+     * 商店删除
+     *
+     * @param event 商店删除事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onShopDelete(ShopDeleteEvent event) {
+        schedule(event.getShop());
+    }
+
+    /**
+     * 商店改价
+     *
+     * @param event 商店价格变化事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onShopPriceChange(ShopPriceChangeEvent event) {
+        schedule(event.getShop());
+    }
+
+    /**
+     * 商店更换物品
+     *
+     * @param event 商店物品变化事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onShopItemChange(ShopItemChangeEvent event) {
+        schedule(event.getShop());
+    }
+
+    /**
+     * 记录商店位置，并在本 tick 第一次记录时安排下一 tick 处理
+     *
+     * @param shop 事件中的商店
+     */
+    private void schedule(Shop shop) {
+        if (shop == null || !plugin.getConfigManager().isEventSyncEnabled()) {
+            return;
+        }
+        Location location = shop.getLocation();
+        String key = ShopData.locationKey(location);
+        if (key == null) {
+            return;
+        }
+        boolean first = pending.isEmpty();
+        pending.put(key, location.clone());
+        if (first) {
+            Bukkit.getScheduler().runTask(plugin, this::processPending);
+        }
+    }
+
+    /**
+     * 按位置重新读取 QuickShop 中的商店，逐个应用到数据管理器
+     */
+    private void processPending() {
+        ShopDataManager dataManager = plugin.getDataManager();
+        QuickShopIntegration integration = plugin.getQuickShopIntegration();
+        if (dataManager == null || integration == null || !integration.isQuickShopAvailable()) {
+            pending.clear();
+            return;
+        }
+
+        DataSyncManager syncManager = plugin.getSyncManager();
+        int updated = 0, removed = 0;
+        for (Location location : pending.values()) {
+            if (syncManager != null) {
+                syncManager.recordShopEvent(location);
+            }
+            Shop shop = integration.getShopAtLocation(location);
+            if (shop == null) {
+                if (dataManager.removeShopAt(location)) {
+                    removed++;
+                }
+            } else if (dataManager.applyShopUpdate(integration.convertShopToShopData(shop))) {
+                updated++;
+            }
+        }
+        pending.clear();
+        // 一批事件的索引修改整体发布为一份新快照
+        dataManager.publishIndex();
+        dataManager.getChangeFeed().flush();
+
+        if (plugin.getConfigManager().isDebugEnabled() && (updated > 0 || removed > 0)) {
+            plugin.getLogger().info("商店事件同步：更新 " + updated + " 个，移除 " + removed + " 个。");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.plugin.shoptools.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.plugin.shoptools.ShopTools;
+import org.plugin.shoptools.storage.ShopDataManager;
+
+/**
+ * 世界加载监听器
+ * 在 Multiverse 等插件延迟加载世界后绑定该世界的商店，世界卸载时释放对它的引用
+ *
+ * @author NSrank & Augment
+ */
+public class WorldLoadListener implements Listener {
+
+    private final ShopTools plugin;
+
+    /**
+     * 构造函数
+     *
+     * @param plugin 插件实例
+     */
+    public WorldLoadListener(ShopTools plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 世界加载后绑定世界并恢复其空间索引
+     *
+     * @param event 世界加载事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        ShopDataManager dataManager = plugin.getDataManager();
+        if (dataManager != null) {
+            dataManager.onWorldLoaded(event.getWorld());
+        }
+    }
+
+    /**
+     * 世界卸载后释放世界引用和空间索引，使卸载的世界可以被回收
+     *
+     * @param event 世界卸载事件
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        ShopDataManager dataManager = plugin.getDataManager();
+        if (dataManager != null) {
+            dataManager.onWorldUnloaded(event.getWorld());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.plugin.shoptools.manager;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.plugin.Plugin;
+import org.plugin.shoptools.storage.SnapshotFiles;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * 店主名称服务
+ * <p>
+ * 维护 UUID → 玩家名称的映射，供同步转换商店数据和命令显示店主时查询，全程只读内存，不访问磁盘。
+ * 启动时在后台线程读取自身持久化的名称表（owner_names.json），再合并服务端的 usercache.json；
+ * 玩家进服时更新名称。名称表有变化时延迟合并写入，插件关闭时同步写入。
+ * <p>
+ * 线程模型：查询和更新可在任意线程调用；写入在后台线程进行，与关闭时的写入互斥。
+ *
+ * @author NSrank & Augment
+ */
+public class OwnerNameService {
+
+    /** 名称表文件名 */
+    static final String FILE_NAME = "owner_names.json";
+
+    /** 名称变化后延迟写入的时间（tick），合并短时间内的多次进服 */
+    private static final long SAVE_DELAY_TICKS = 200L;
+
+    private final File dataFile;
+    private final File userCacheFile;
+    private final Logger logger;
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+    private final Object saveLock = new Object();
+
+    /**
+     * 构造函数
+     *
+     * @param dataFolder    插件数据文件夹
+     * @param userCacheFile 服务端的 usercache.json，不存在时跳过
+     * @param logger        日志记录器
+     */
+    public OwnerNameService(File dataFolder, File userCacheFile, Logger logger) {
+        this.dataFile = new File(dataFolder, FILE_NAME);
+        this.userCacheFile = userCacheFile;
+        this.logger = logger;
+    }
+
+    /**
+     * 在后台线程加载名称表和 usercache.json
+     *
+     * @param plugin 插件实例（用于调度异步任务）
+     */
+    public void loadAsync(Plugin plugin) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, this::load);
+    }
+
+    /**
+     * 加载名称表并合并 usercache.json；合并后名称表有变化时立即写入
+     */
+    void load() {
+        int stored = readTable();
+        int imported = importUserCache();
+        logger.info("店主名称表已加载：" + names.size() + " 位玩家（名称表 " + stored + "，usercache 更新 " + imported + "）。");
+        if (dirty.get()) {
+            save();
+        }
+    }
+
+    /**
+     * 查询玩家名称
+     *
+     * @param playerId 玩家UUID
+     * @return 玩家名称，未知时返回 {@code null}
+     */
+    public String getName(UUID playerId) {
+        return playerId == null ? null : names.get(playerId);
+    }
+
+    /**
+     * 记录玩家名称
+     *
+     * @param playerId 玩家UUID
+     * @param name     玩家名称
+     * @return 名称发生变化返回 {@code true}
+     */
+    public boolean update(UUID playerId, String name) {
+        if (playerId == null || name == null || name.isEmpty()) {
+            return false;
+        }
+        String previous = names.put(playerId, name);
+        if (name.equals(previous)) {
+            return false;
+        }
+        dirty.set(true);
+        return true;
+    }
+
+    /**
+     * 安排一次延迟写入，延迟期间的多次请求合并为一次
+     *
+     * @param plugin 插件实例（用于调度异步任务）
+     */
+    public void requestSave(Plugin plugin) {
+        if (dirty.get() && saveScheduled.compareAndSet(false, true)) {
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY_TICKS);
+        }
+    }
+
+    /**
+     * 获取已知玩家数量
+     *
+     * @return 数量
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * 写入名称表（先写临时文件并落盘，再原子替换正式文件）；没有变化时不写
+     */
+    public void save() {
+        synchronized (saveLock) {
+            if (!dirty.compareAndSet(true, false)) {
+                return;
+            }
+            File parent = dataFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            File temp = new File(dataFile.getPath() + ".tmp");
+            try {
+                try (FileOutputStream fileOut = new FileOutputStream(temp);
+                     JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                             fileOut, StandardCharsets.UTF_8)))) {
+                    writer.beginObject();
+                    for (Map.Entry<UUID, String> entry : new TreeMap<>(names).entrySet()) {
+                        writer.name(entry.getKey().toString()).value(entry.getValue());
+                    }
+                    writer.endObject();
+                    writer.flush();
+                    // 确认数据已落盘后才替换正式文件
+                    fileOut.getFD().sync();
+                }
+                SnapshotFiles.replace(temp, dataFile);
+            } catch (IOException e) {
+                temp.delete();
+                dirty.set(true);
+                logger.warning("保存店主名称表失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 读取自身的名称表：{@code {"uuid": "name", ...}}
+     *
+     * @return 读取的条数
+     */
+    private int readTable() {
+        if (!dataFile.exists()) {
+            return 0;
+        }
+        int count = 0;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(dataFile), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                UUID playerId = parseUuid(reader.nextName());
+                String name = reader.peek() == JsonToken.STRING ? reader.nextString() : skip(reader);
+                if (playerId != null && name != null && !name.isEmpty()) {
+                    // 不覆盖加载期间由进服写入的最新名称
+                    if (names.putIfAbsent(playerId, name) == null) {
+                        count++;
+                    }
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            logger.warning("读取店主名称表失败，将从 usercache.json 重建: " + e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * 合并服务端的 usercache.json：{@code [{"name": "...", "uuid": "...", "expiresOn": "..."}, ...]}。
+     * usercache 随玩家登录由服务端维护，与名称表不一致时以 usercache 为准。
+     *
+     * @return 新增或更新的条数
+     */
+    int importUserCache() {
+        if (userCacheFile == null || !userCacheFile.exists()) {
+            return 0;
+        }
+        int count = 0;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(userCacheFile), StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                UUID playerId = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "name":
+                            name = reader.nextString();
+                            break;
+                        case "uuid":
+                            playerId = parseUuid(reader.nextString());
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+                if (update(playerId, name)) {
+                    count++;
+                }
+            }
+            reader.endArray();
+        } catch (IOException | IllegalStateException e) {
+            logger.warning("读取 usercache.json 失败: " + e.getMessage());
+        }
+        return count;
+    }
+
+    private static String skip(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return null;
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -5,11 +5,18 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.plugin.shoptools.config.ConfigManager;
+import org.plugin.shoptools.util.CompressionUtil;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,6 +34,7 @@ import java.util.logging.Logger;
 public class ShopBackupManager {
     
     private final File backupFolder;
+    private final ConfigManager configManager;
     private final Gson gson;
     private final Logger logger;
     
@@ -125,8 +133,9 @@ public class ShopBackupManager {
         public void setShops(List<ShopBackupData> shops) { this.shops = shops; }
     }
     
-    public ShopBackupManager(File dataFolder, Logger logger) {
+    public ShopBackupManager(File dataFolder, ConfigManager configManager, Logger logger) {
         this.backupFolder = new File(dataFolder, "shop_backups");
+        this.configManager = configManager;
         this.logger = logger;
         
         // 确保备份文件夹存在
@@ -155,7 +164,10 @@ public class ShopBackupManager {
             
             File backupFile = new File(backupFolder, fileName);
             
-            try (FileWriter writer = new FileWriter(backupFile)) {
+            // 按配置压缩，文件名不变，读取时按文件头自动识别
+            try (OutputStream out = CompressionUtil.compress(new FileOutputStream(backupFile),
+                    configManager.getCompressionLevel());
+                 Writer writer = new OutputStreamWriter(out)) {
                 gson.toJson(playerBackupData, writer);
             }
             
@@ -201,7 +213,7 @@ public class ShopBackupManager {
             return null;
         }
         
-        try (FileReader reader = new FileReader(latestFile)) {
+        try (Reader reader = new InputStreamReader(CompressionUtil.decompress(new FileInputStream(latestFile)))) {
             Type type = new TypeToken<PlayerBackupData>(){}.getType();
             return gson.fromJson(reader, type);
         } catch (IOException e) {
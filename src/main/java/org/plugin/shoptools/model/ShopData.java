@@ -3,8 +3,10 @@ package org.plugin.shoptools.model;
 import com.google.gson.annotations.Expose;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.inventory.ItemStack;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -22,8 +24,11 @@ public class ShopData {
     private final String itemId;
     @Expose
     private final String itemDisplayName;
+    /** 所在世界（驻留的标识，不直接持有 World，世界卸载后可被回收） */
     @Expose
-    private final Location location;
+    private final WorldKey world;
+    @Expose
+    private final double x, y, z;
     @Expose
     private final double price;
     @Expose
@@ -32,14 +37,18 @@ public class ShopData {
     private final String ownerName;
     @Expose
     private final ShopType shopType;
+    // 库存相关字段由库存扫描在主线程原地更新（不重建索引快照），volatile 保证其他线程读到最新值；
+    // 三个字段之间不保证原子性，读者可能短暂看到新库存和旧扫描时间
     @Expose
-    private int stock;
+    private volatile int stock;
     @Expose
     private final boolean isUnlimited;
     // 不序列化ItemStack，因为它可能包含复杂的内部结构
     private final ItemStack item;
-    // 库存是否已被扫描器确认过（非持久化，服务器重启后需重新扫描）
-    private boolean stockKnown = false;
+    // 库存是否已被扫描器确认过（随快照持久化，重启后在新鲜期内无需重新扫描）
+    private volatile boolean stockKnown = false;
+    // 最近一次确认库存的时间戳（毫秒），0 表示从未扫描
+    private volatile long lastScanned = 0;
     
     /**
      * 商店类型枚举
@@ -52,6 +61,9 @@ public class ShopData {
     
     /**
      * 构造函数
+     * <p>
+     * 可在异步线程调用：只按世界名称取得世界标识，不绑定 World；
+     * 世界引用只在主线程（启动加载、世界加载事件）绑定，避免异步线程把已卸载的世界重新绑定回来。
      *
      * @param shopId 商店唯一ID
      * @param itemId 物品ID
@@ -68,10 +80,43 @@ public class ShopData {
     public ShopData(UUID shopId, String itemId, String itemDisplayName, Location location,
                    double price, UUID ownerId, String ownerName, ShopType shopType,
                    int stock, boolean isUnlimited, ItemStack item) {
+        this(shopId, itemId, itemDisplayName,
+            location != null && location.getWorld() != null ? WorldKey.of(location.getWorld().getName()) : null,
+            location != null ? location.getX() : 0,
+            location != null ? location.getY() : 0,
+            location != null ? location.getZ() : 0,
+            price, ownerId, ownerName, shopType, stock, isUnlimited, item);
+    }
+
+    /**
+     * 构造函数（按世界名称和坐标，世界无需已加载）
+     *
+     * @param shopId 商店唯一ID
+     * @param itemId 物品ID
+     * @param itemDisplayName 物品显示名称
+     * @param world 所在世界，没有位置时为 {@code null}
+     * @param x X 坐标
+     * @param y Y 坐标
+     * @param z Z 坐标
+     * @param price 价格
+     * @param ownerId 店主UUID
+     * @param ownerName 店主名称
+     * @param shopType 商店类型
+     * @param stock 库存数量
+     * @param isUnlimited 是否为无限商店
+     * @param item 物品堆栈
+     */
+    public ShopData(UUID shopId, String itemId, String itemDisplayName, WorldKey world,
+                   double x, double y, double z,
+                   double price, UUID ownerId, String ownerName, ShopType shopType,
+                   int stock, boolean isUnlimited, ItemStack item) {
         this.shopId = shopId;
         this.itemId = itemId;
         this.itemDisplayName = itemDisplayName;
-        this.location = location;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
         this.price = price;
         this.ownerId = ownerId;
         this.ownerName = ownerName;
@@ -81,11 +126,58 @@ public class ShopData {
         this.item = item;
     }
     
+    /**
+     * 根据商店位置生成稳定的商店ID。
+     * QuickShop-Reremake 没有持久化的商店ID（商店以位置区分），这里对位置键 "world:x:y:z" 生成名称 UUID，
+     * 同一位置的商店在每次同步、重载和重启后都得到相同的ID。
+     *
+     * @param location 商店位置
+     * @return 商店ID；位置或世界为 {@code null} 时返回随机ID
+     */
+    public static UUID idFor(Location location) {
+        String key = locationKey(location);
+        if (key == null) {
+            return UUID.randomUUID();
+        }
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 将位置转换为位置键。
+     * 使用方块坐标（整数），忽略 yaw/pitch，与 QuickShop 内部行为一致。
+     *
+     * @param location 位置
+     * @return 格式为 "world:blockX:blockY:blockZ" 的键；位置无效时返回 {@code null}
+     */
+    public static String locationKey(Location location) {
+        if (location == null || location.getWorld() == null) return null;
+        return locationKey(location.getWorld().getName(), location.getBlockX(), location.getBlockY(),
+                location.getBlockZ());
+    }
+
+    /**
+     * 由世界名称和方块坐标生成位置键
+     *
+     * @param worldName 世界名称
+     * @param blockX 方块 X 坐标
+     * @param blockY 方块 Y 坐标
+     * @param blockZ 方块 Z 坐标
+     * @return 格式为 "world:blockX:blockY:blockZ" 的键
+     */
+    public static String locationKey(String worldName, int blockX, int blockY, int blockZ) {
+        return worldName + ":" + blockX + ":" + blockY + ":" + blockZ;
+    }
+
     // Getter方法
     public UUID getShopId() { return shopId; }
     public String getItemId() { return itemId; }
     public String getItemDisplayName() { return itemDisplayName; }
-    public Location getLocation() { return location; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public double getZ() { return z; }
+    public int getBlockX() { return (int) Math.floor(x); }
+    public int getBlockY() { return (int) Math.floor(y); }
+    public int getBlockZ() { return (int) Math.floor(z); }
     public double getPrice() { return price; }
     public UUID getOwnerId() { return ownerId; }
     public String getOwnerName() { return ownerName; }
@@ -94,16 +186,88 @@ public class ShopData {
     public boolean isUnlimited() { return isUnlimited; }
     public ItemStack getItem() { return item; }
     public boolean isStockKnown() { return stockKnown; }
+    public long getLastScanned() { return lastScanned; }
 
     /**
-     * 更新库存数量并标记为已确认。
+     * 获取商店位置，世界按需解析
+     *
+     * @return Location对象，没有位置或所在世界未加载时返回 {@code null}
+     */
+    public Location getLocation() {
+        World loaded = world != null ? world.getWorld() : null;
+        if (loaded == null) {
+            return null;
+        }
+        return new Location(loaded, x, y, z);
+    }
+
+    /**
+     * 获取所在世界的名称（世界未加载时同样可用）
+     *
+     * @return 世界名称，没有位置时返回 {@code null}
+     */
+    public String getWorldName() {
+        return world != null ? world.getName() : null;
+    }
+
+    /**
+     * 获取所在世界的标识
+     *
+     * @return 世界标识，没有位置时返回 {@code null}
+     */
+    public WorldKey getWorldKey() {
+        return world;
+    }
+
+    /**
+     * 检查所在世界当前是否已加载
+     *
+     * @return 已加载返回 {@code true}
+     */
+    public boolean isWorldLoaded() {
+        return world != null && world.isLoaded();
+    }
+
+    /**
+     * 获取商店的位置键（世界未加载时同样可用）
+     *
+     * @return 格式为 "world:blockX:blockY:blockZ" 的键；没有位置时返回 {@code null}
+     */
+    public String getLocationKey() {
+        return world != null ? locationKey(world.getName(), getBlockX(), getBlockY(), getBlockZ()) : null;
+    }
+
+    /**
+     * 更新库存数量并标记为已确认，扫描时间记为当前时间。
      * 仅由 StockScanQueue 在区块加载完成后调用。
      *
      * @param stock 从 QuickShop API 读取到的实际库存数量
      */
     public void setStock(int stock) {
+        setStock(stock, System.currentTimeMillis());
+    }
+
+    /**
+     * 恢复已确认的库存数量及其扫描时间（从快照、库存日志或同步前的缓存恢复）
+     *
+     * @param stock       库存数量
+     * @param lastScanned 确认库存的时间戳（毫秒）
+     */
+    public void setStock(int stock, long lastScanned) {
         this.stock = stock;
         this.stockKnown = true;
+        this.lastScanned = lastScanned;
+    }
+
+    /**
+     * 检查库存是否在新鲜期内，超过新鲜期或从未扫描的库存需要重新扫描
+     *
+     * @param ttlMillis 新鲜期（毫秒），不大于 0 时总是视为过期
+     * @param now       当前时间戳（毫秒）
+     * @return 库存已确认且未过期返回 {@code true}
+     */
+    public boolean isStockFresh(long ttlMillis, long now) {
+        return stockKnown && ttlMillis > 0 && now - lastScanned < ttlMillis;
     }
 
     /**
@@ -131,12 +295,12 @@ public class ShopData {
      * @return 格式化的位置信息
      */
     public String getFormattedLocation() {
-        if (location == null) return "未知位置";
+        if (world == null) return "未知位置";
         return String.format("%s (%d, %d, %d)", 
-            location.getWorld() != null ? location.getWorld().getName() : "未知世界",
-            location.getBlockX(), 
-            location.getBlockY(), 
-            location.getBlockZ());
+            world.getName(),
+            getBlockX(), 
+            getBlockY(), 
+            getBlockZ());
     }
     
     /**
@@ -0,0 +1,106 @@
+package org.plugin.shoptools.model;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 世界标识
+ * <p>
+ * 每个世界名称对应唯一的实例（驻留），同一世界的所有商店共享它，商店自身只保存该实例和坐标。
+ * 实例持有的 {@link World} 引用在世界加载时绑定、卸载时释放：释放后同一世界的全部商店
+ * 都不再引用该 World，卸载的世界可以被回收，商店仍可按世界名称和坐标查询。
+ * <p>
+ * 线程安全：绑定与释放在主线程进行，查询可在任意线程调用。
+ *
+ * @author NSrank & Augment
+ */
+public final class WorldKey {
+
+    private static final Map<String, WorldKey> KEYS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private volatile World world;
+
+    private WorldKey(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 获取世界名称对应的标识（不绑定 World）
+     *
+     * @param name 世界名称
+     * @return 标识，名称为 {@code null} 时返回 {@code null}
+     */
+    public static WorldKey of(String name) {
+        return name == null ? null : KEYS.computeIfAbsent(name, WorldKey::new);
+    }
+
+    /**
+     * 获取世界对应的标识并绑定该 World
+     *
+     * @param world 已加载的世界
+     * @return 标识，世界为 {@code null} 时返回 {@code null}
+     */
+    public static WorldKey bind(World world) {
+        if (world == null) {
+            return null;
+        }
+        WorldKey key = of(world.getName());
+        key.world = world;
+        return key;
+    }
+
+    /**
+     * 释放世界引用（世界卸载时调用）
+     *
+     * @param world 卸载的世界
+     */
+    public static void release(World world) {
+        WorldKey key = KEYS.get(world.getName());
+        if (key != null && key.world == world) {
+            key.world = null;
+        }
+    }
+
+    /**
+     * 获取世界名称
+     *
+     * @return 世界名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取已绑定的世界。未绑定时在主线程按名称查找一次并绑定（世界在监听器注册前已加载的情况）
+     *
+     * @return 世界，未加载时返回 {@code null}
+     */
+    public World getWorld() {
+        World current = world;
+        if (current == null && Bukkit.getServer() != null && Bukkit.isPrimaryThread()) {
+            current = Bukkit.getWorld(name);
+            if (current != null) {
+                world = current;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 检查世界是否已绑定（已加载），不做查找，可在任意线程调用
+     *
+     * @return 已绑定返回 {@code true}
+     */
+    public boolean isLoaded() {
+        return world != null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -36,6 +36,9 @@ import java.util.logging.Logger;
  */
 public class StockScanQueue {
 
+    /** 扫描过程中缓冲的库存变化达到该条数时先推送一批 */
+    private static final int FEED_FLUSH_BATCH = 256;
+
     /** 待扫描区块组的队列（主线程操作，无需并发集合） */
     private final Deque<ChunkGroup> queue = new ArrayDeque<>();
 
@@ -84,13 +87,29 @@ public class StockScanQueue {
     /**
      * 启动库存扫描（服务器启动时调用，等待 40 tick 待世界稳定后开始）。
      * <p>
-     * 必须从主线程调用。内部将商店按区块分组后启动定时分批处理。
+     * 必须从主线程调用。库存仍在新鲜期内（{@code performance.stock-scan.freshness-ttl}）的商店
+     * 直接使用快照中的库存，不再加载区块；其余商店按区块分组后启动定时分批处理。
      *
      * @param allShops   需要扫描库存的商店列表（通常为全部缓存商店）
      * @param onComplete 扫描全部完成后的回调（在主线程执行）
      */
     public void start(List<ShopData> allShops, Runnable onComplete) {
-        start(allShops, onComplete, 40L);
+        if (allShops == null) {
+            start(null, onComplete, 40L);
+            return;
+        }
+        long ttl = configManager.getStockFreshnessTtl();
+        long now = System.currentTimeMillis();
+        List<ShopData> staleShops = new ArrayList<>();
+        for (ShopData shop : allShops) {
+            if (!shop.isStockFresh(ttl, now)) {
+                staleShops.add(shop);
+            }
+        }
+        if (staleShops.size() < allShops.size()) {
+            logger.info("跳过 " + (allShops.size() - staleShops.size()) + " 家库存仍在新鲜期内的商店。");
+        }
+        start(staleShops, onComplete, 40L);
     }
 
     /**
@@ -227,11 +246,16 @@ public class StockScanQueue {
     private void readStocks(ChunkGroup group, boolean wasNewLoad) {
         for (ShopData shopData : group.shops()) {
             try {
-                Shop qsShop = quickShopIntegration.getShopAtLocation(shopData.getLocation());
+                org.bukkit.Location location = shopData.getLocation();
+                if (location == null) {
+                    // 扫描期间世界已卸载
+                    continue;
+                }
+                Shop qsShop = quickShopIntegration.getShopAtLocation(location);
                 if (qsShop != null) {
                     int stock = qsShop.getRemainingStock();
                     // 直接更新当前缓存中的对象，避免孤儿引用问题
-                    boolean updated = dataManager.updateStockByLocation(shopData.getLocation(), stock);
+                    boolean updated = dataManager.updateStockByLocation(location, stock);
                     if (!updated) {
                         // 若缓存未命中（极少数情况），退而更新本地引用
                         shopData.setStock(stock);
@@ -242,6 +266,10 @@ public class StockScanQueue {
                 logger.warning("读取商店库存失败 " + shopData.getFormattedLocation() + ": " + e.getMessage());
             }
         }
+        // 库存变化攒够一批再推送，其余在扫描结束时推送
+        if (dataManager.getChangeFeed().pendingCount() >= FEED_FLUSH_BATCH) {
+            dataManager.getChangeFeed().flush();
+        }
         // 若区块是扫描器主动加载的，读完后立即卸载以节省内存
         if (wasNewLoad && !group.world().isChunkLoaded(group.chunkX(), group.chunkZ())) {
             return; // 已被其他原因卸载，无需处理
@@ -254,19 +282,14 @@ public class StockScanQueue {
     }
 
     /**
-     * 扫描全部完成时的处理：输出统计日志，异步保存 JSON，执行回调。
+     * 扫描全部完成时的处理：输出统计日志，执行回调。
+     * 库存及扫描时间在扫描过程中已逐条追加到库存日志，无需再重写快照。
      */
     private void onScanComplete() {
+        dataManager.getChangeFeed().flush();
         long elapsed = System.currentTimeMillis() - scanStartTime;
-        logger.info(String.format("库存扫描完成！共扫描 %d 家商店，耗时 %dms，正在异步保存数据...",
+        logger.info(String.format("库存扫描完成！共扫描 %d 家商店，耗时 %dms，扫描结果已写入库存日志。",
                 totalShopsScanned.get(), elapsed));
-
-        // 异步保存 JSON，避免阻塞主线程
-        org.bukkit.Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            dataManager.saveDataNow();
-            logger.info("库存数据已持久化到 shops.json。");
-        });
-
         if (onCompleteCallback != null) {
             onCompleteCallback.run();
         }
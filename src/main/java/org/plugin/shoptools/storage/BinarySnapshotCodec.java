@@ -0,0 +1,279 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 二进制商店快照编解码器
+ * <p>
+ * 物品、店主、世界等在每条记录中大量重复的字符串只在文件头的字典中写入一次，
+ * 记录本身只保存字典下标与定长数值字段，体积和解析开销都远小于带缩进的 JSON。
+ * 读写均为流式：写入时对记录源遍历两次（收集字典、写记录），读取时逐条交给消费者。
+ * 记录区为定长记录，可按记录边界切分成多段并行解码，见 {@link SegmentedSnapshotLoader}。
+ *
+ * <h3>文件布局（版本 2）</h3>
+ * <pre>
+ * int    魔数 "STSD"
+ * short  格式版本
+ * int    记录数
+ * 世界字典: int 数量, 每项 UTF 世界名
+ * 店主字典: int 数量, 每项 long+long UUID, 可空 UTF 店主名
+ * 物品字典: int 数量, 每项 UTF 物品ID, 可空 UTF 显示名
+ * 记录区:   每条 {@value #RECORD_SIZE} 字节
+ *           long+long 商店UUID, int 物品下标, int 店主下标, int 世界下标(-1 表示无),
+ *           double x/y/z, double 价格, int 库存, byte 商店类型, byte 标志位,
+ *           long 最近一次确认库存的时间戳
+ * </pre>
+ * 版本 1 的记录没有末尾的时间戳（{@value #RECORD_SIZE_V1} 字节），读取时库存一律视为未确认。
+ *
+ * @author NSrank & Augment
+ */
+final class BinarySnapshotCodec {
+
+    /** 文件魔数 "STSD"（ShopTools Snapshot Data） */
+    static final int MAGIC = 0x53545344;
+
+    /** 当前写入的格式版本 */
+    static final short VERSION = 2;
+
+    /** 版本 1 单条记录的固定字节数 */
+    static final int RECORD_SIZE_V1 = 16 + 4 + 4 + 4 + 24 + 8 + 4 + 1 + 1;
+
+    /** 当前版本单条记录的固定字节数 */
+    static final int RECORD_SIZE = RECORD_SIZE_V1 + 8;
+
+    private static final int FLAG_UNLIMITED = 1;
+    private static final int FLAG_STOCK_KNOWN = 2;
+
+    private static final ShopData.ShopType[] SHOP_TYPES = ShopData.ShopType.values();
+
+    private BinarySnapshotCodec() {
+    }
+
+    /**
+     * 将商店记录写入输出流
+     *
+     * @param records     待写入的记录（可以是惰性转换的视图，会被遍历两次）
+     * @param recordCount 记录数，必须与 {@code records} 的实际元素数一致
+     * @param output      输出流（调用方负责关闭）
+     * @throws IOException 写入失败时抛出
+     */
+    static void write(Iterable<SimpleShopData> records, int recordCount, OutputStream output) throws IOException {
+        // 第一遍：收集字典，保持首次出现的顺序
+        Map<String, Integer> worlds = new LinkedHashMap<>();
+        Map<OwnerKey, Integer> owners = new LinkedHashMap<>();
+        Map<ItemKey, Integer> items = new LinkedHashMap<>();
+        for (SimpleShopData record : records) {
+            if (record.worldName != null) {
+                worlds.putIfAbsent(record.worldName, worlds.size());
+            }
+            owners.putIfAbsent(new OwnerKey(UUID.fromString(record.ownerId), record.ownerName), owners.size());
+            items.putIfAbsent(new ItemKey(record.itemId, record.itemDisplayName), items.size());
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(recordCount);
+
+        out.writeInt(worlds.size());
+        for (String world : worlds.keySet()) {
+            out.writeUTF(world);
+        }
+        out.writeInt(owners.size());
+        for (OwnerKey owner : owners.keySet()) {
+            out.writeLong(owner.id().getMostSignificantBits());
+            out.writeLong(owner.id().getLeastSignificantBits());
+            writeNullableUTF(out, owner.name());
+        }
+        out.writeInt(items.size());
+        for (ItemKey item : items.keySet()) {
+            writeNullableUTF(out, item.itemId());
+            writeNullableUTF(out, item.displayName());
+        }
+
+        // 第二遍：写入定长记录
+        int written = 0;
+        for (SimpleShopData record : records) {
+            if (written++ == recordCount) {
+                throw new IOException("记录数与声明的数量不一致: " + recordCount);
+            }
+            UUID shopId = UUID.fromString(record.shopId);
+            out.writeLong(shopId.getMostSignificantBits());
+            out.writeLong(shopId.getLeastSignificantBits());
+            out.writeInt(items.get(new ItemKey(record.itemId, record.itemDisplayName)));
+            out.writeInt(owners.get(new OwnerKey(UUID.fromString(record.ownerId), record.ownerName)));
+            out.writeInt(record.worldName != null ? worlds.get(record.worldName) : -1);
+            out.writeDouble(record.x);
+            out.writeDouble(record.y);
+            out.writeDouble(record.z);
+            out.writeDouble(record.price);
+            out.writeInt(record.stock);
+            out.writeByte(ShopData.ShopType.valueOf(record.shopType).ordinal());
+            out.writeByte((record.isUnlimited ? FLAG_UNLIMITED : 0) | (record.stockKnown ? FLAG_STOCK_KNOWN : 0));
+            out.writeLong(record.lastScanned);
+        }
+        if (written != recordCount) {
+            throw new IOException("记录数与声明的数量不一致: " + written + " != " + recordCount);
+        }
+        out.flush();
+    }
+
+    /**
+     * 逐条读取商店记录，每解析完一条立即交给 {@code sink} 处理
+     *
+     * @param input 输入流（调用方负责关闭）
+     * @param sink  记录消费者
+     * @return 读取的记录数
+     * @throws IOException 文件损坏、版本不支持或读取失败时抛出
+     */
+    static int read(InputStream input, Consumer<SimpleShopData> sink) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, 64 * 1024));
+        Header header = readHeader(in);
+
+        // 记录定长，按块整读后逐条解码，与分段并行加载共用同一解码逻辑
+        byte[] chunk = new byte[header.recordSize() * 1024];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        int remaining = header.recordCount();
+        while (remaining > 0) {
+            int count = Math.min(remaining, 1024);
+            in.readFully(chunk, 0, count * header.recordSize());
+            buffer.clear();
+            for (int i = 0; i < count; i++) {
+                sink.accept(decodeRecord(buffer, header));
+            }
+            remaining -= count;
+        }
+        return header.recordCount();
+    }
+
+    /**
+     * 读取文件头与字典，读取结束时输入流恰好位于记录区起点
+     *
+     * @param input 输入流（调用方负责关闭）
+     * @return 文件头信息
+     * @throws IOException 文件损坏、版本不支持或读取失败时抛出
+     */
+    static Header readHeader(InputStream input) throws IOException {
+        CountingInputStream counter = new CountingInputStream(input);
+        DataInputStream in = new DataInputStream(counter);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("不是有效的二进制商店快照文件");
+        }
+        short version = in.readShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("不支持的快照版本: " + version);
+        }
+        int recordCount = in.readInt();
+
+        String[] worlds = new String[in.readInt()];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = in.readUTF();
+        }
+        String[] ownerIds = new String[in.readInt()];
+        String[] ownerNames = new String[ownerIds.length];
+        for (int i = 0; i < ownerIds.length; i++) {
+            ownerIds[i] = new UUID(in.readLong(), in.readLong()).toString();
+            ownerNames[i] = readNullableUTF(in);
+        }
+        String[] itemIds = new String[in.readInt()];
+        String[] itemNames = new String[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            itemIds[i] = readNullableUTF(in);
+            itemNames[i] = readNullableUTF(in);
+        }
+        int recordSize = version == 1 ? RECORD_SIZE_V1 : RECORD_SIZE;
+        return new Header(recordCount, recordSize, counter.count, worlds, ownerIds, ownerNames, itemIds, itemNames);
+    }
+
+    /**
+     * 从缓冲区当前位置解码一条记录，缓冲区位置前进 {@link Header#recordSize()} 字节
+     *
+     * @param buffer 记录区数据（大端序）
+     * @param header 文件头，提供字典
+     * @return 解码后的记录
+     */
+    static SimpleShopData decodeRecord(ByteBuffer buffer, Header header) {
+        SimpleShopData record = new SimpleShopData();
+        record.shopId = new UUID(buffer.getLong(), buffer.getLong()).toString();
+        int item = buffer.getInt();
+        int owner = buffer.getInt();
+        int world = buffer.getInt();
+        record.itemId = header.itemIds()[item];
+        record.itemDisplayName = header.itemNames()[item];
+        record.ownerId = header.ownerIds()[owner];
+        record.ownerName = header.ownerNames()[owner];
+        record.worldName = world >= 0 ? header.worlds()[world] : null;
+        record.x = buffer.getDouble();
+        record.y = buffer.getDouble();
+        record.z = buffer.getDouble();
+        record.price = buffer.getDouble();
+        record.stock = buffer.getInt();
+        record.shopType = SHOP_TYPES[buffer.get() & 0xFF].name();
+        int flags = buffer.get();
+        record.isUnlimited = (flags & FLAG_UNLIMITED) != 0;
+        if (header.recordSize() > RECORD_SIZE_V1) {
+            record.stockKnown = (flags & FLAG_STOCK_KNOWN) != 0;
+            record.lastScanned = buffer.getLong();
+        }
+        return record;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 文件头信息
+     *
+     * @param recordCount   记录数
+     * @param recordSize    单条记录的字节数（由文件版本决定）
+     * @param recordsOffset 记录区起点的字节偏移；记录定长，第 i 条位于 {@code recordsOffset + i * recordSize}
+     */
+    record Header(int recordCount, int recordSize, long recordsOffset, String[] worlds,
+                  String[] ownerIds, String[] ownerNames, String[] itemIds, String[] itemNames) {}
+
+    /** 统计已读取字节数，用于定位记录区起点 */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /** 店主字典键：同一 UUID 在无限商店中可能以"系统商店"名义出现，因此名称也参与区分 */
+    private record OwnerKey(UUID id, String name) {}
+
+    /** 物品字典键：自定义显示名的同类物品单独成项 */
+    private record ItemKey(String itemId, String displayName) {}
+}
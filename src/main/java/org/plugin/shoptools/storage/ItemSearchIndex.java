@@ -0,0 +1,269 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.util.*;
+
+/**
+ * 物品模糊搜索索引
+ * <p>
+ * 对规范化后的物品ID和自定义显示名称建立三元组（连续三个字符）倒排索引。查询时取查询词的全部三元组，
+ * 从最短的倒排表开始求交集得到候选词条，再确认候选词条确实包含查询词，查询耗时只取决于倒排表长度，
+ * 与物品种类数无关。结果按匹配程度排序：完全一致、前缀、单词开头、其他位置，同一档内词条越短越靠前。
+ * <p>
+ * 规范化：转为小写，去除颜色代码，下划线视为空格，因此 "diamond sword" 可以匹配 DIAMOND_SWORD。
+ * 不足三个字符的查询无法使用三元组，直接检查全部词条。
+ * <p>
+ * 词条只记录对应的物品分组键，不保存商店：查询时从调用方传入的物品分组取出商店，
+ * 因此商店增减但词条集合不变时，新快照可以继续使用同一份索引。
+ * <p>
+ * 索引构建后不可变，可在任意线程查询。
+ *
+ * @author NSrank & Augment
+ */
+final class ItemSearchIndex {
+
+    private static final int GRAM = 3;
+
+    /** 词条（规范化后的物品ID或显示名称），下标即倒排表中的词条编号 */
+    private final String[] terms;
+    /** 物品ID规范化后等于该词条的物品分组键，分组内的商店全部命中 */
+    private final String[][] itemKeys;
+    /** 含有自定义显示名称等于该词条的商店的物品分组键，只有名称相符的商店命中 */
+    private final String[][] displayKeys;
+    /** 三元组 → 按编号升序排列的词条编号 */
+    private final Map<String, int[]> postings;
+
+    private ItemSearchIndex(String[] terms, String[][] itemKeys, String[][] displayKeys,
+                            Map<String, int[]> postings) {
+        this.terms = terms;
+        this.itemKeys = itemKeys;
+        this.displayKeys = displayKeys;
+        this.postings = postings;
+    }
+
+    /**
+     * 由物品分组构建索引
+     *
+     * @param byItem 小写物品ID → 该物品的商店
+     * @return 新索引
+     */
+    static ItemSearchIndex build(Map<String, List<ShopData>> byItem) {
+        Map<String, Set<String>> byItemTerm = new HashMap<>();
+        Map<String, Set<String>> byDisplayName = new HashMap<>();
+        for (Map.Entry<String, List<ShopData>> entry : byItem.entrySet()) {
+            String itemTerm = normalize(entry.getKey());
+            if (!itemTerm.isEmpty()) {
+                byItemTerm.computeIfAbsent(itemTerm, k -> new HashSet<>()).add(entry.getKey());
+            }
+            for (ShopData shop : entry.getValue()) {
+                String displayTerm = displayTerm(shop);
+                if (displayTerm != null) {
+                    byDisplayName.computeIfAbsent(displayTerm, k -> new HashSet<>()).add(entry.getKey());
+                }
+            }
+        }
+
+        Set<String> allTerms = new HashSet<>(byItemTerm.keySet());
+        allTerms.addAll(byDisplayName.keySet());
+        String[] terms = allTerms.toArray(new String[0]);
+        String[][] itemKeys = new String[terms.length][];
+        String[][] displayKeys = new String[terms.length][];
+        Map<String, List<Integer>> grams = new HashMap<>();
+        for (int id = 0; id < terms.length; id++) {
+            itemKeys[id] = toArray(byItemTerm.get(terms[id]));
+            displayKeys[id] = toArray(byDisplayName.get(terms[id]));
+            for (String gram : grams(terms[id])) {
+                grams.computeIfAbsent(gram, k -> new ArrayList<>()).add(id);
+            }
+        }
+        Map<String, int[]> postings = new HashMap<>(grams.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : grams.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new ItemSearchIndex(terms, itemKeys, displayKeys, postings);
+    }
+
+    /**
+     * 查找物品ID或显示名称包含查询词的商店
+     *
+     * @param query  查询词
+     * @param byItem 提供商店的物品分组（与构建时词条集合相同的任意快照）
+     * @return 商店列表（不重复），按匹配程度排序
+     */
+    List<ShopData> search(String query, Map<String, List<ShopData>> byItem) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Match> matches = new ArrayList<>();
+        if (normalized.length() < GRAM) {
+            for (int id = 0; id < terms.length; id++) {
+                addMatch(matches, id, normalized);
+            }
+        } else {
+            int[] candidates = candidates(normalized);
+            for (int id : candidates) {
+                addMatch(matches, id, normalized);
+            }
+        }
+        Collections.sort(matches);
+
+        // 同一商店可能同时通过物品ID和显示名称命中，只保留排名最高的一次
+        Set<ShopData> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ShopData> result = new ArrayList<>();
+        for (Match match : matches) {
+            for (String key : itemKeys[match.id]) {
+                for (ShopData shop : byItem.getOrDefault(key, Collections.emptyList())) {
+                    if (seen.add(shop)) {
+                        result.add(shop);
+                    }
+                }
+            }
+            for (String key : displayKeys[match.id]) {
+                for (ShopData shop : byItem.getOrDefault(key, Collections.emptyList())) {
+                    if (match.term.equals(displayTerm(shop)) && seen.add(shop)) {
+                        result.add(shop);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取商店自定义显示名称对应的词条
+     * <p>
+     * 未自定义名称的商店显示名称就是物品ID，不单独建立词条。
+     *
+     * @param shop 商店
+     * @return 规范化后的显示名称；与物品ID相同或为空时返回 {@code null}
+     */
+    static String displayTerm(ShopData shop) {
+        String displayTerm = normalize(shop.getItemDisplayName());
+        if (displayTerm.isEmpty() || displayTerm.equals(normalize(shop.getItemId()))) {
+            return null;
+        }
+        return displayTerm;
+    }
+
+    /**
+     * 规范化物品ID或名称：小写、去除颜色代码、下划线视为空格、合并首尾空白
+     *
+     * @param text 原始文本
+     * @return 规范化后的文本，{@code null} 返回空字符串
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '§') {
+                // 颜色代码：跳过 § 和其后的一个字符
+                i++;
+            } else if (c == '_') {
+                builder.append(' ');
+            } else {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString().trim();
+    }
+
+    /**
+     * 求查询词全部三元组倒排表的交集，任一三元组不存在时没有候选
+     */
+    private int[] candidates(String normalized) {
+        List<int[]> lists = new ArrayList<>();
+        for (String gram : grams(normalized)) {
+            int[] posting = postings.get(gram);
+            if (posting == null) {
+                return new int[0];
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 三元组只保证候选词条含有这些片段，这里确认词条确实包含查询词并计算匹配档位
+     */
+    private void addMatch(List<Match> matches, int id, String normalized) {
+        String term = terms[id];
+        int position = term.indexOf(normalized);
+        if (position < 0) {
+            return;
+        }
+        int rank;
+        if (position == 0) {
+            rank = term.length() == normalized.length() ? 0 : 1;
+        } else {
+            rank = term.charAt(position - 1) == ' ' ? 2 : 3;
+        }
+        matches.add(new Match(id, rank, term));
+    }
+
+    private static Set<String> grams(String term) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            grams.add(term.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static String[] toArray(Set<String> keys) {
+        return keys == null ? new String[0] : keys.toArray(new String[0]);
+    }
+
+    /**
+     * 命中的词条：先按匹配档位，再按词条长度（越接近查询词越靠前），最后按词条排序保证结果稳定
+     */
+    private static final class Match implements Comparable<Match> {
+
+        private final int id;
+        private final int rank;
+        private final String term;
+
+        private Match(int id, int rank, String term) {
+            this.id = id;
+            this.rank = rank;
+            this.term = term;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            if (rank != other.rank) {
+                return Integer.compare(rank, other.rank);
+            }
+            if (term.length() != other.term.length()) {
+                return Integer.compare(term.length(), other.term.length());
+            }
+            return term.compareTo(other.term);
+        }
+    }
+}
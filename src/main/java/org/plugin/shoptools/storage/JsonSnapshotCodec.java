@@ -0,0 +1,158 @@
+package org.plugin.shoptools.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * 流式 JSON 商店快照编解码器
+ * <p>
+ * 基于 Gson 的 {@link JsonReader} / {@link JsonWriter} 逐条读写记录，
+ * 不再一次性构造完整的 {@code List<SimpleShopData>}，读写过程中的峰值内存与商店总数无关。
+ * 输出格式与旧版 {@code gson.toJson(List<SimpleShopData>)} 完全兼容（两空格缩进、省略 null 字段）。
+ *
+ * @author NSrank & Augment
+ */
+final class JsonSnapshotCodec {
+
+    private JsonSnapshotCodec() {
+    }
+
+    /**
+     * 逐条写出商店记录
+     *
+     * @param records 待写入的记录（可以是惰性转换的视图）
+     * @param output  字符输出流（调用方负责关闭）
+     * @throws IOException 写入失败时抛出
+     */
+    static void write(Iterable<SimpleShopData> records, Writer output) throws IOException {
+        JsonWriter writer = new JsonWriter(output);
+        writer.setIndent("  ");
+        writer.beginArray();
+        for (SimpleShopData record : records) {
+            writer.beginObject();
+            writeString(writer, "shopId", record.shopId);
+            writeString(writer, "itemId", record.itemId);
+            writeString(writer, "itemDisplayName", record.itemDisplayName);
+            writeString(writer, "worldName", record.worldName);
+            writer.name("x").value(record.x);
+            writer.name("y").value(record.y);
+            writer.name("z").value(record.z);
+            writer.name("price").value(record.price);
+            writeString(writer, "ownerId", record.ownerId);
+            writeString(writer, "ownerName", record.ownerName);
+            writeString(writer, "shopType", record.shopType);
+            writer.name("stock").value(record.stock);
+            writer.name("isUnlimited").value(record.isUnlimited);
+            writer.name("stockKnown").value(record.stockKnown);
+            writer.name("lastScanned").value(record.lastScanned);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    /**
+     * 逐条读取商店记录，每解析完一条立即交给 {@code sink} 处理
+     *
+     * @param input 字符输入流（调用方负责关闭）
+     * @param sink  记录消费者
+     * @return 读取的记录数
+     * @throws IOException 读取或解析失败时抛出
+     */
+    static int read(Reader input, Consumer<SimpleShopData> sink) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        try {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return 0;
+            }
+        } catch (EOFException e) {
+            // 空文件：与旧版 gson.fromJson 返回 null 的行为保持一致
+            return 0;
+        }
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sink.accept(readRecord(reader));
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    private static SimpleShopData readRecord(JsonReader reader) throws IOException {
+        SimpleShopData record = new SimpleShopData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "shopId":
+                    record.shopId = reader.nextString();
+                    break;
+                case "itemId":
+                    record.itemId = reader.nextString();
+                    break;
+                case "itemDisplayName":
+                    record.itemDisplayName = reader.nextString();
+                    break;
+                case "worldName":
+                    record.worldName = reader.nextString();
+                    break;
+                case "x":
+                    record.x = reader.nextDouble();
+                    break;
+                case "y":
+                    record.y = reader.nextDouble();
+                    break;
+                case "z":
+                    record.z = reader.nextDouble();
+                    break;
+                case "price":
+                    record.price = reader.nextDouble();
+                    break;
+                case "ownerId":
+                    record.ownerId = reader.nextString();
+                    break;
+                case "ownerName":
+                    record.ownerName = reader.nextString();
+                    break;
+                case "shopType":
+                    record.shopType = reader.nextString();
+                    break;
+                case "stock":
+                    record.stock = reader.nextInt();
+                    break;
+                case "isUnlimited":
+                    record.isUnlimited = reader.nextBoolean();
+                    break;
+                case "stockKnown":
+                    record.stockKnown = reader.nextBoolean();
+                    break;
+                case "lastScanned":
+                    record.lastScanned = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return record;
+    }
+
+    private static void writeString(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+}
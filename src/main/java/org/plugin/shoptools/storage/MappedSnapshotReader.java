@@ -0,0 +1,309 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * 内存映射的二进制快照惰性读取器
+ * <p>
+ * 打开时只映射文件并建立轻量索引（物品、店主 → 记录下标），不解码任何记录；
+ * {@link ShopData} 在第一次被访问时才从映射区解码并缓存，同一条记录始终返回同一个对象。
+ * 打开耗时只与索引字段的读取有关，启动后查询命令几乎立即可用，完整缓存可在后台继续构建。
+ * <p>
+ * 所有方法都可在任意线程调用。
+ *
+ * @author NSrank & Augment
+ */
+final class MappedSnapshotReader {
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private final ByteBuffer records;
+    private final BinarySnapshotCodec.Header header;
+    private final AtomicReferenceArray<ShopData> materialized;
+
+    /** 物品ID（小写）→ 物品字典下标 */
+    private final Map<String, int[]> itemSlots;
+    /** 物品字典下标 → 记录下标 */
+    private final int[][] itemRecords;
+    /** 店主UUID → 店主字典下标（同一店主可能以不同名称出现） */
+    private final Map<UUID, int[]> ownerSlots;
+    /** 店主字典下标 → 记录下标 */
+    private final int[][] ownerRecords;
+    /** 世界名称 → 世界字典下标 */
+    private final Map<String, Integer> worldSlots;
+
+    private MappedSnapshotReader(ByteBuffer records, BinarySnapshotCodec.Header header) {
+        this.records = records;
+        this.header = header;
+        int count = header.recordCount();
+        this.materialized = new AtomicReferenceArray<>(count);
+
+        int[] itemOf = new int[count];
+        int[] ownerOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            int base = i * header.recordSize();
+            itemOf[i] = records.getInt(base + 16);
+            ownerOf[i] = records.getInt(base + 20);
+        }
+        this.itemRecords = group(itemOf, header.itemIds().length);
+        this.ownerRecords = group(ownerOf, header.ownerIds().length);
+
+        this.itemSlots = new HashMap<>();
+        for (int slot = 0; slot < header.itemIds().length; slot++) {
+            String itemId = header.itemIds()[slot];
+            if (itemId != null) {
+                itemSlots.merge(itemId.toLowerCase(), new int[]{slot}, MappedSnapshotReader::concat);
+            }
+        }
+        this.worldSlots = new HashMap<>();
+        for (int slot = 0; slot < header.worlds().length; slot++) {
+            worldSlots.put(header.worlds()[slot], slot);
+        }
+        this.ownerSlots = new HashMap<>();
+        for (int slot = 0; slot < header.ownerIds().length; slot++) {
+            ownerSlots.merge(UUID.fromString(header.ownerIds()[slot]), new int[]{slot}, MappedSnapshotReader::concat);
+        }
+    }
+
+    /**
+     * 映射快照文件并建立索引
+     *
+     * @param file          二进制快照文件
+     * @return 读取器
+     * @throws IOException 文件损坏或读取失败时抛出
+     */
+    static MappedSnapshotReader open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            BinarySnapshotCodec.Header header = BinarySnapshotCodec.readHeader(
+                    new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            long length = (long) header.recordCount() * header.recordSize();
+            if (channel.size() < header.recordsOffset() + length) {
+                throw new IOException("快照文件不完整: 期望 " + (header.recordsOffset() + length)
+                        + " 字节，实际 " + channel.size() + " 字节");
+            }
+            ByteBuffer records;
+            if (IS_WINDOWS) {
+                // Windows 上被映射的文件无法重命名，会阻塞快照轮换，改为整块读入堆内存
+                records = ByteBuffer.allocate((int) length);
+                while (records.hasRemaining()) {
+                    if (channel.read(records, header.recordsOffset() + records.position()) < 0) {
+                        throw new IOException("快照文件提前结束");
+                    }
+                }
+                records.flip();
+            } else {
+                // 映射在 channel 关闭后依然有效
+                records = channel.map(FileChannel.MapMode.READ_ONLY, header.recordsOffset(), length);
+            }
+            return new MappedSnapshotReader(records, header);
+        }
+    }
+
+    /**
+     * 获取记录数
+     *
+     * @return 记录数
+     */
+    int size() {
+        return header.recordCount();
+    }
+
+    /**
+     * 获取指定记录，首次访问时解码
+     *
+     * @param index 记录下标
+     * @return 商店数据；世界不存在时位置为 {@code null}
+     */
+    ShopData get(int index) {
+        ShopData shopData = materialized.get(index);
+        if (shopData == null) {
+            ByteBuffer view = records.duplicate();
+            view.position(index * header.recordSize());
+            ShopData decoded = BinarySnapshotCodec.decodeRecord(view, header).toShopData();
+            // 并发首次访问时只保留一个实例
+            shopData = materialized.compareAndSet(index, null, decoded) ? decoded : materialized.get(index);
+        }
+        return shopData;
+    }
+
+    /**
+     * 按物品ID精确查询
+     *
+     * @param normalizedItemId 小写并去除首尾空格的物品ID
+     * @return 商店数据列表；快照中没有该物品时返回 {@code null}
+     */
+    List<ShopData> getByItemExact(String normalizedItemId) {
+        int[] slots = itemSlots.get(normalizedItemId);
+        return slots != null ? collect(itemRecords, slots) : null;
+    }
+
+    /**
+     * 按物品ID包含关系模糊查询
+     *
+     * @param normalizedItemId 小写并去除首尾空格的物品ID
+     * @return 商店数据列表
+     */
+    List<ShopData> getByItemContaining(String normalizedItemId) {
+        List<ShopData> result = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : itemSlots.entrySet()) {
+            if (entry.getKey().contains(normalizedItemId)) {
+                result.addAll(collect(itemRecords, entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按店主UUID查询
+     *
+     * @param ownerId 店主UUID
+     * @return 商店数据列表
+     */
+    List<ShopData> getByOwner(UUID ownerId) {
+        int[] slots = ownerSlots.get(ownerId);
+        return slots != null ? collect(ownerRecords, slots) : new ArrayList<>();
+    }
+
+    /**
+     * 按店主名称模糊查询
+     *
+     * @param normalizedName 小写并去除首尾空格的名称
+     * @return 商店数据列表
+     */
+    List<ShopData> getByOwnerName(String normalizedName) {
+        List<ShopData> result = new ArrayList<>();
+        String[] names = header.ownerNames();
+        for (int slot = 0; slot < names.length; slot++) {
+            if (names[slot] != null && names[slot].toLowerCase().contains(normalizedName)) {
+                result.addAll(collect(ownerRecords, new int[]{slot}));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查找范围内的商店，直接在映射区比较坐标，只解码命中的记录
+     *
+     * @param worldName 世界名称
+     * @param x         中心 X
+     * @param y         中心 Y
+     * @param z         中心 Z
+     * @param radius    半径
+     * @return 按距离排序的商店数据
+     */
+    List<ShopData> findNearby(String worldName, double x, double y, double z, double radius) {
+        Integer worldSlot = worldSlots.get(worldName);
+        if (worldSlot == null) {
+            return new ArrayList<>();
+        }
+        double radiusSquared = radius * radius;
+        List<double[]> hits = new ArrayList<>();
+        for (int i = 0; i < header.recordCount(); i++) {
+            int base = i * header.recordSize();
+            if (records.getInt(base + 24) != worldSlot) {
+                continue;
+            }
+            double dx = records.getDouble(base + 28) - x;
+            double dy = records.getDouble(base + 36) - y;
+            double dz = records.getDouble(base + 44) - z;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared <= radiusSquared) {
+                hits.add(new double[]{distanceSquared, i});
+            }
+        }
+        hits.sort(Comparator.comparingDouble(hit -> hit[0]));
+        List<ShopData> result = new ArrayList<>(hits.size());
+        for (double[] hit : hits) {
+            result.add(get((int) hit[1]));
+        }
+        return result;
+    }
+
+    /**
+     * 顺序获取全部记录（未解码的记录在此时解码）
+     *
+     * @return 按文件顺序排列的商店数据
+     */
+    List<ShopData> all() {
+        List<ShopData> result = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 并行解码全部记录（已解码的记录复用原对象），用于构建完整缓存
+     *
+     * @param threadCount 并行线程数
+     * @return 按文件顺序排列的商店数据
+     * @throws IOException 解码被中断或失败时抛出
+     */
+    List<ShopData> materializeAll(int threadCount) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.submit(() -> IntStream.range(0, size()).parallel().forEach(this::get)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("商店数据解码被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("商店数据解码失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        List<ShopData> result = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            result.add(materialized.get(i));
+        }
+        return result;
+    }
+
+    private List<ShopData> collect(int[][] recordsBySlot, int[] slots) {
+        List<ShopData> result = new ArrayList<>();
+        for (int slot : slots) {
+            for (int index : recordsBySlot[slot]) {
+                result.add(get(index));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按字典下标分组记录下标（计数排序，不产生装箱对象）
+     */
+    private static int[][] group(int[] slotOf, int slotCount) {
+        int[] counts = new int[slotCount];
+        for (int slot : slotOf) {
+            counts[slot]++;
+        }
+        int[][] groups = new int[slotCount][];
+        for (int slot = 0; slot < slotCount; slot++) {
+            groups[slot] = new int[counts[slot]];
+            counts[slot] = 0;
+        }
+        for (int i = 0; i < slotOf.length; i++) {
+            int slot = slotOf[i];
+            groups[slot][counts[slot]++] = i;
+        }
+        return groups;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
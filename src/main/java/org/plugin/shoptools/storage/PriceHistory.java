@@ -0,0 +1,427 @@
+package org.plugin.shoptools.storage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * 商店价格历史时间序列
+ * <p>
+ * 全量同步和事件驱动的单个商店更新（{@link ShopDataManager#applyShopUpdate}）中价格发生变化的商店
+ * 都以"时间 + 物品 + 位置 + 旧价格 + 新价格"的形式追加到按日期分段的文件中。
+ * 查询只读取时间范围覆盖的段文件，超过保留天数的段整体删除。
+ * <p>
+ * 时间与价格均为增量编码的变长整数：时间记录与上一条记录的差值，新价格记录与旧价格的差值；
+ * 物品ID与位置键在段内只写一次，之后以字典下标引用。一次调价通常只占十几个字节。
+ * <p>
+ * 线程模型：{@link #record} 可在任意线程调用（只入队）；{@link #flush} 在写入线程调用；
+ * {@link #query} 可在任意线程调用，与写入互斥。
+ *
+ * <h3>段文件布局（price_history/yyyy-MM-dd.seg，按 UTC 日期分段）</h3>
+ * <pre>
+ * int    魔数 "STPH"
+ * short  格式版本
+ * long   段起始时间（毫秒）
+ * 记录:
+ *   zigzag varint  与上一条记录的时间差（毫秒，第一条相对段起始时间）
+ *   varint         物品ID：0 表示其后紧跟新字符串（varint 长度 + UTF-8），否则为段内字典下标 + 1
+ *   varint         位置键 "world:x:y:z"：编码同上，与物品ID共用字典
+ *   zigzag varint  旧价格（定点数，单位为万分之一）
+ *   zigzag varint  新价格减旧价格
+ * </pre>
+ * 文件末尾不完整的记录（写入中途崩溃）在读取时忽略，下次追加前截断。
+ *
+ * @author NSrank & Augment
+ */
+public final class PriceHistory {
+
+    /** 段文件魔数 "STPH"（ShopTools Price History） */
+    static final int MAGIC = 0x53545048;
+
+    /** 当前写入的格式版本 */
+    static final short VERSION = 1;
+
+    /** 段文件目录名 */
+    static final String FOLDER = "price_history";
+
+    /** 每个段覆盖的时间（一天） */
+    static final long BUCKET_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final String EXTENSION = ".seg";
+    private static final int HEADER_SIZE = 4 + 2 + 8;
+    private static final double PRICE_SCALE = 10000.0;
+
+    private final File folder;
+    private final IntSupplier retentionDays;
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<PriceChange> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // 当前追加的段（仅在持有锁时访问）
+    private long openBucket = Long.MIN_VALUE;
+    private OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long lastTimestamp;
+
+    /**
+     * 一次价格变化
+     *
+     * @param timestamp   记录时间（毫秒）
+     * @param itemId      物品ID
+     * @param locationKey 商店位置键 "world:x:y:z"
+     * @param oldPrice    旧价格
+     * @param newPrice    新价格
+     */
+    public record PriceChange(long timestamp, String itemId, String locationKey, double oldPrice, double newPrice) {}
+
+    /**
+     * 构造价格历史
+     *
+     * @param dataFolder    插件数据文件夹
+     * @param retentionDays 段文件保留天数（每次切换到新段时读取）
+     * @param logger        日志记录器
+     */
+    public PriceHistory(File dataFolder, IntSupplier retentionDays, Logger logger) {
+        this.folder = new File(dataFolder, FOLDER);
+        this.retentionDays = retentionDays;
+        this.logger = logger;
+    }
+
+    /**
+     * 记录一次价格变化（只入队，不做 I/O，可在主线程调用）
+     *
+     * @param change 价格变化
+     */
+    public void record(PriceChange change) {
+        pending.add(change);
+    }
+
+    /**
+     * 标记已安排写入；返回 {@code true} 表示调用方需要提交一次 {@link #flush}
+     *
+     * @return 此前没有待执行的写入时返回 {@code true}
+     */
+    public boolean markFlushScheduled() {
+        return flushScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * 将排队的价格变化追加到对应日期的段文件（在写入线程调用）
+     *
+     * @return 本次写入的记录数
+     */
+    public synchronized int flush() {
+        flushScheduled.set(false);
+        int written = 0;
+        PriceChange change;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            while ((change = pending.poll()) != null) {
+                long bucket = Math.floorDiv(change.timestamp(), BUCKET_MILLIS);
+                if (bucket != openBucket) {
+                    if (out != null) {
+                        out.write(buffer.toByteArray());
+                        buffer.reset();
+                    }
+                    openSegment(bucket);
+                }
+                encode(change, buffer);
+                written++;
+            }
+            if (out != null) {
+                out.write(buffer.toByteArray());
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 价格历史只用于统计，写入失败时丢弃本批记录，不影响商店数据
+            logger.warning("写入价格历史时发生错误: " + e.getMessage());
+            pending.clear();
+            closeSegment();
+        }
+        return written;
+    }
+
+    /**
+     * 查询指定物品在时间范围内的价格变化，只读取范围覆盖的段文件
+     *
+     * @param itemId 物品ID（不区分大小写，精确匹配）
+     * @param from   起始时间（毫秒，包含）
+     * @param to     结束时间（毫秒，包含）
+     * @return 按时间排序的价格变化；无法读取的段被跳过
+     */
+    public synchronized List<PriceChange> query(String itemId, long from, long to) {
+        List<PriceChange> result = new ArrayList<>();
+        for (long bucket = Math.floorDiv(from, BUCKET_MILLIS); bucket <= Math.floorDiv(to, BUCKET_MILLIS); bucket++) {
+            File file = segmentFile(bucket);
+            if (!file.isFile()) {
+                continue;
+            }
+            try {
+                readSegment(Files.readAllBytes(file.toPath()), file.getName(), new ArrayList<>(), change -> {
+                    if (change.timestamp() >= from && change.timestamp() <= to
+                            && change.itemId().equalsIgnoreCase(itemId)) {
+                        result.add(change);
+                    }
+                });
+            } catch (IOException e) {
+                // 单个段损坏只影响这一天
+                logger.warning("跳过无法读取的价格历史: " + e.getMessage());
+            }
+        }
+        result.sort(Comparator.comparingLong(PriceChange::timestamp));
+        return result;
+    }
+
+    /**
+     * 关闭当前段文件（在写入线程或写入线程结束后调用）
+     */
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    /**
+     * 打开指定日期的段用于追加：重建段内字典与最后时间，截断末尾不完整的记录，并清理过期段
+     */
+    private void openSegment(long bucket) throws IOException {
+        closeSegment();
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        dictionary.clear();
+        lastTimestamp = bucket * BUCKET_MILLIS;
+
+        File file = segmentFile(bucket);
+        if (file.isFile() && file.length() >= HEADER_SIZE) {
+            byte[] data = Files.readAllBytes(file.toPath());
+            List<String> strings = new ArrayList<>();
+            int validLength = -1;
+            try {
+                validLength = readSegment(data, file.getName(), strings, change -> lastTimestamp = change.timestamp());
+            } catch (IOException e) {
+                // 文件头无效：保留原文件以便排查，重新开始这一天的段
+                File backup = new File(folder, file.getName() + ".bak");
+                logger.warning(e.getMessage() + "，已重命名为 " + backup.getName());
+                backup.delete();
+                file.renameTo(backup);
+            }
+            if (validLength >= 0) {
+                for (String value : strings) {
+                    dictionary.put(value, dictionary.size());
+                }
+                if (validLength < data.length) {
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                        raf.setLength(validLength);
+                    }
+                }
+                out = new BufferedOutputStream(new FileOutputStream(file, true));
+            }
+        }
+        if (out == null) {
+            lastTimestamp = bucket * BUCKET_MILLIS;
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeShort(VERSION);
+            header.writeLong(bucket * BUCKET_MILLIS);
+            header.flush();
+        }
+        openBucket = bucket;
+        pruneSegments(bucket);
+    }
+
+    private void closeSegment() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响后续重新打开
+            }
+            out = null;
+        }
+        openBucket = Long.MIN_VALUE;
+    }
+
+    /**
+     * 删除超过保留天数的段文件
+     */
+    private void pruneSegments(long currentBucket) {
+        int days = retentionDays.getAsInt();
+        String[] names = folder.list();
+        if (days <= 0 || names == null) {
+            return;
+        }
+        for (String name : names) {
+            long bucket = parseBucket(name);
+            if (bucket != Long.MIN_VALUE && bucket <= currentBucket - days) {
+                if (!new File(folder, name).delete()) {
+                    logger.warning("无法删除过期的价格历史: " + name);
+                }
+            }
+        }
+    }
+
+    private void encode(PriceChange change, ByteArrayOutputStream buffer) {
+        writeVarLong(buffer, zigzag(change.timestamp() - lastTimestamp));
+        lastTimestamp = change.timestamp();
+        writeString(buffer, change.itemId());
+        writeString(buffer, change.locationKey());
+        long oldPrice = Math.round(change.oldPrice() * PRICE_SCALE);
+        long newPrice = Math.round(change.newPrice() * PRICE_SCALE);
+        writeVarLong(buffer, zigzag(oldPrice));
+        writeVarLong(buffer, zigzag(newPrice - oldPrice));
+    }
+
+    private void writeString(ByteArrayOutputStream buffer, String value) {
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(buffer, index + 1L);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(buffer, 0);
+        writeVarLong(buffer, bytes.length);
+        buffer.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 解析段文件，逐条交给 {@code sink}
+     *
+     * @param strings 输出段内字典（只含完整记录引入的字符串），供追加时继续使用
+     * @return 最后一条完整记录结束的位置
+     */
+    private int readSegment(byte[] data, String name, List<String> strings, Consumer<PriceChange> sink)
+            throws IOException {
+        SegmentReader reader = new SegmentReader(data);
+        if (data.length < HEADER_SIZE || reader.readInt() != MAGIC) {
+            throw new IOException("不是有效的价格历史文件: " + name);
+        }
+        short version = reader.readShort();
+        if (version != VERSION) {
+            throw new IOException("不支持的价格历史版本: " + version);
+        }
+        long timestamp = reader.readLong();
+
+        int validLength = reader.position;
+        int validStrings = 0;
+        try {
+            while (reader.position < data.length) {
+                timestamp += unzigzag(reader.readVarLong());
+                String itemId = reader.readString(strings);
+                String locationKey = reader.readString(strings);
+                long oldPrice = unzigzag(reader.readVarLong());
+                long newPrice = oldPrice + unzigzag(reader.readVarLong());
+                sink.accept(new PriceChange(timestamp, itemId, locationKey,
+                        oldPrice / PRICE_SCALE, newPrice / PRICE_SCALE));
+                validLength = reader.position;
+                validStrings = strings.size();
+            }
+        } catch (IOException e) {
+            // 写入中途崩溃留下的不完整记录（或之后的损坏数据）从这里截断
+            logger.warning("价格历史 " + name + " 末尾存在不完整的记录，已忽略。");
+        }
+        // 不完整的记录可能已引入字典项，截断后不再有效
+        strings.subList(validStrings, strings.size()).clear();
+        return validLength;
+    }
+
+    private File segmentFile(long bucket) {
+        return new File(folder, LocalDate.ofEpochDay(bucket) + EXTENSION);
+    }
+
+    private static long parseBucket(String name) {
+        if (!name.endsWith(EXTENSION)) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, name.length() - EXTENSION.length())).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.write((int) value);
+    }
+
+    /**
+     * 段文件字节读取器，读到末尾时抛出 {@link EOFException}，数据无效时抛出 {@link IOException}
+     */
+    private static final class SegmentReader {
+        private final byte[] data;
+        private int position;
+
+        SegmentReader(byte[] data) {
+            this.data = data;
+        }
+
+        private int readByte() throws EOFException {
+            if (position >= data.length) {
+                throw new EOFException();
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int readInt() throws EOFException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        short readShort() throws EOFException {
+            return (short) ((readByte() << 8) | readByte());
+        }
+
+        long readLong() throws EOFException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("价格历史中的变长整数过长");
+        }
+
+        String readString(List<String> strings) throws IOException {
+            long tag = readVarLong();
+            if (tag > 0) {
+                if (tag > strings.size()) {
+                    throw new IOException("价格历史中的字典下标无效: " + tag);
+                }
+                return strings.get((int) tag - 1);
+            }
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > data.length) {
+                throw new EOFException();
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            strings.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.plugin.shoptools.storage;
+
+import java.util.*;
+
+/**
+ * 分段共享的不可变映射
+ * <p>
+ * 按键的哈希值把条目分到固定数量的段中，每段是一个普通 {@link HashMap}。
+ * 通过 {@link Editor} 修改时只复制段数组（{@value #SEGMENTS} 个引用）和被修改的段，
+ * 其余段在新旧映射之间共享，因此一次修改的复制量与被修改的段数成正比，与映射总大小无关。
+ * <p>
+ * 映射本身不可修改，可在任意线程读取；修改器只由一个线程使用。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author NSrank & Augment
+ */
+final class SegmentedMap<K, V> extends AbstractMap<K, V> {
+
+    /** 段数（2 的幂） */
+    static final int SEGMENTS = 256;
+
+    private static final SegmentedMap<?, ?> EMPTY;
+
+    static {
+        @SuppressWarnings("unchecked")
+        Map<Object, Object>[] segments = new Map[SEGMENTS];
+        Arrays.fill(segments, Collections.emptyMap());
+        EMPTY = new SegmentedMap<>(segments, 0);
+    }
+
+    private final Map<K, V>[] segments;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private SegmentedMap(Map<K, V>[] segments, int size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * 获取空映射
+     *
+     * @return 空映射（共享实例）
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> SegmentedMap<K, V> empty() {
+        return (SegmentedMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 以当前映射为起点创建修改器，当前映射本身不受影响
+     *
+     * @return 修改器
+     */
+    Editor<K, V> edit() {
+        return new Editor<>(this);
+    }
+
+    @Override
+    public V get(Object key) {
+        return segments[segment(key)].get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segments[segment(key)].containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            result = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = result;
+        }
+        return result;
+    }
+
+    private static int segment(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return (hash ^ (hash >>> 16)) & (SEGMENTS - 1);
+    }
+
+    /**
+     * 依次遍历各段的条目（只读）
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private int next = 0;
+        private Iterator<Entry<K, V>> current = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next >= SEGMENTS) {
+                    return false;
+                }
+                current = segments[next++].entrySet().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = current.next();
+            return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 映射修改器：第一次修改某段时复制该段，{@link #build()} 后不再使用
+     *
+     * @param <K> 键类型
+     * @param <V> 值类型
+     */
+    static final class Editor<K, V> {
+
+        private final Map<K, V>[] segments;
+        /** 已复制为可修改映射的段 */
+        private final boolean[] owned = new boolean[SEGMENTS];
+        private int size;
+
+        private Editor(SegmentedMap<K, V> source) {
+            this.segments = source.segments.clone();
+            this.size = source.size;
+        }
+
+        V get(Object key) {
+            return segments[segment(key)].get(key);
+        }
+
+        boolean containsKey(Object key) {
+            return segments[segment(key)].containsKey(key);
+        }
+
+        int size() {
+            return size;
+        }
+
+        V put(K key, V value) {
+            Map<K, V> map = mutable(segment(key));
+            int before = map.size();
+            V previous = map.put(key, value);
+            size += map.size() - before;
+            return previous;
+        }
+
+        V remove(K key) {
+            int index = segment(key);
+            if (!segments[index].containsKey(key)) {
+                return null;
+            }
+            size--;
+            return mutable(index).remove(key);
+        }
+
+        /**
+         * 仅当键当前映射到指定对象（按对象身份）时移除
+         *
+         * @return 移除了返回 {@code true}
+         */
+        boolean remove(K key, V value) {
+            int index = segment(key);
+            if (value == null || segments[index].get(key) != value) {
+                return false;
+            }
+            size--;
+            mutable(index).remove(key);
+            return true;
+        }
+
+        /**
+         * 遍历当前全部值（修改器内部使用，遍历期间不得修改）
+         *
+         * @return 值的只读视图
+         */
+        Iterable<V> values() {
+            return () -> new Iterator<>() {
+                private int next = 0;
+                private Iterator<V> current = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext()) {
+                        if (next >= SEGMENTS) {
+                            return false;
+                        }
+                        current = segments[next++].values().iterator();
+                    }
+                    return true;
+                }
+
+                @Override
+                public V next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
+
+        /**
+         * 构建不可变映射
+         *
+         * @return 新映射
+         */
+        SegmentedMap<K, V> build() {
+            for (int i = 0; i < SEGMENTS; i++) {
+                if (owned[i]) {
+                    segments[i] = segments[i].isEmpty()
+                            ? Collections.emptyMap() : Collections.unmodifiableMap(segments[i]);
+                    owned[i] = false;
+                }
+            }
+            return size == 0 ? empty() : new SegmentedMap<>(segments.clone(), size);
+        }
+
+        private Map<K, V> mutable(int index) {
+            if (!owned[index]) {
+                segments[index] = new HashMap<>(segments[index]);
+                owned[index] = true;
+            }
+            return segments[index];
+        }
+    }
+}
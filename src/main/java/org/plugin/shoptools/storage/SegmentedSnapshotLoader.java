@@ -0,0 +1,122 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * 二进制快照的分段并行加载器
+ * <p>
+ * 二进制快照的记录区由定长记录组成，读出文件头后即可按记录边界把记录区切成若干段，
+ * 每段由独立的工作线程通过 {@link FileChannel} 定位读取、解码并转换为 {@link ShopData}，
+ * 解析本身也随 {@code performance.load-threads} 线性扩展，不再受单个解析线程限制。
+ *
+ * @author NSrank & Augment
+ */
+final class SegmentedSnapshotLoader {
+
+    /** 每段的最少记录数，避免小文件被切得过碎 */
+    private static final int MIN_SEGMENT_RECORDS = 4096;
+
+    /** 每个线程分到的段数，段数多于线程数可以平衡各段耗时差异 */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private SegmentedSnapshotLoader() {
+    }
+
+    /**
+     * 分段并行加载二进制快照
+     *
+     * @param file          二进制快照文件
+     * @param threadCount   解析线程数
+     * @param logger        日志记录器
+     * @return 按文件顺序排列的商店数据（转换失败的记录已剔除）
+     * @throws IOException 文件损坏、读取失败或加载被中断时抛出
+     */
+    static List<ShopData> load(File file, int threadCount, Logger logger) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // 不关闭该流：关闭会连带关闭 channel，由外层 try 统一关闭；缓冲区多读的部分不影响定位读取
+            BinarySnapshotCodec.Header header = BinarySnapshotCodec.readHeader(
+                    new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            int recordCount = header.recordCount();
+            if (recordCount == 0) {
+                return new ArrayList<>();
+            }
+            long expectedSize = header.recordsOffset() + (long) recordCount * header.recordSize();
+            if (channel.size() < expectedSize) {
+                throw new IOException("快照文件不完整: 期望 " + expectedSize + " 字节，实际 " + channel.size() + " 字节");
+            }
+
+            int segmentCount = Math.max(1, Math.min(threadCount * SEGMENTS_PER_THREAD,
+                    recordCount / MIN_SEGMENT_RECORDS));
+            int perSegment = (recordCount + segmentCount - 1) / segmentCount;
+
+            ForkJoinPool pool = new ForkJoinPool(threadCount);
+            try {
+                List<Future<List<ShopData>>> futures = new ArrayList<>(segmentCount);
+                for (int first = 0; first < recordCount; first += perSegment) {
+                    int start = first;
+                    int count = Math.min(perSegment, recordCount - first);
+                    futures.add(pool.submit(() -> loadSegment(channel, header, start, count, logger)));
+                }
+
+                List<ShopData> result = new ArrayList<>(recordCount);
+                for (Future<List<ShopData>> future : futures) {
+                    result.addAll(future.get());
+                }
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("商店数据分段加载被中断", e);
+            } catch (ExecutionException e) {
+                throw new IOException("商店数据分段加载失败: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 读取并转换一段连续记录（在工作线程执行）
+     */
+    private static List<ShopData> loadSegment(FileChannel channel, BinarySnapshotCodec.Header header,
+                                              int first, int count, Logger logger) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count * header.recordSize());
+        long position = header.recordsOffset() + (long) first * header.recordSize();
+        // 定位读取不改变 channel 的当前位置，多个线程可以安全地并发读取同一个 channel
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("快照文件提前结束");
+            }
+        }
+        buffer.flip();
+
+        List<ShopData> converted = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            buffer.position(i * header.recordSize());
+            try {
+                // 使用世界快照，避免在异步线程调用 Bukkit API
+                ShopData shopData = BinarySnapshotCodec.decodeRecord(buffer, header).toShopData();
+                if (shopData != null) {
+                    converted.add(shopData);
+                }
+            } catch (Exception e) {
+                logger.warning("转换商店数据时发生错误: " + e.getMessage());
+            }
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,345 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.util.CompressionUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * 按世界分片的商店快照存储
+ * <p>
+ * 每个世界的商店写入 {@code shards/<世界名>.dat}（或 .json），各分片独立校验并保留历代备份。
+ * 分片可按配置以 GZIP 压缩写出，读取时按文件头自动识别，扩展名不变。
+ * 启动时加载全部分片，包括所在世界尚未加载的分片：这些商店按世界名称和坐标进入缓存，
+ * 世界引用在世界加载后才绑定，Multiverse 等插件延迟加载的世界中的商店不会因为启动时世界不存在而被丢弃。
+ * <p>
+ * 只有调用方明确传入的世界才会被整体覆盖写出，无法加载的分片（所有历代快照均损坏）永远不会被写入。
+ * 单个商店的增删与库存更新需要重写所在分片，查询需要流式扫描分片，适合数据量不大的服务器；
+ * 需要索引查询时请使用 {@link SqliteShopStore}。
+ *
+ * @author NSrank & Augment
+ */
+final class ShardedSnapshotStore implements ShopStore {
+
+    /** 分片目录名 */
+    static final String SHARD_FOLDER = "shards";
+
+    /** 旧版单文件快照的名称（shops.dat / shops.json） */
+    static final String LEGACY_NAME = "shops";
+
+    private final File dataFolder;
+    private final SnapshotFiles shardFiles;
+    private final Supplier<SnapshotFormat> format;
+    private final IntSupplier compressionLevel;
+    private final Logger logger;
+
+    /**
+     * 构造分片存储
+     *
+     * @param dataFolder  插件数据文件夹
+     * @param generations 每个分片保留的历史快照代数
+     * @param format           写出时使用的快照格式（每次写出时读取，配置重载后立即生效）
+     * @param compressionLevel 写出时使用的压缩级别，0 表示不压缩（同样每次写出时读取）
+     * @param logger           日志记录器
+     */
+    ShardedSnapshotStore(File dataFolder, int generations, Supplier<SnapshotFormat> format,
+                         IntSupplier compressionLevel, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.shardFiles = new SnapshotFiles(new File(dataFolder, SHARD_FOLDER), generations);
+        this.format = format;
+        this.compressionLevel = compressionLevel;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "世界分片快照";
+    }
+
+    @Override
+    public Set<String> worldNames() {
+        return shardNames();
+    }
+
+    /**
+     * 列出磁盘上存在的分片
+     *
+     * @return 世界名称
+     */
+    Set<String> shardNames() {
+        return shardFiles.baseNames();
+    }
+
+    /**
+     * 按加载优先级列出指定世界分片的候选文件
+     *
+     * @param worldName 世界名称
+     * @param preferred 配置的快照格式
+     * @return 存在的候选文件，越靠前越新
+     */
+    List<SnapshotFiles.Candidate> candidates(String worldName, SnapshotFormat preferred) {
+        return shardFiles.candidates(worldName, preferred);
+    }
+
+    @Override
+    public List<ShopData> loadWorld(String worldName) throws IOException {
+        List<ShopData> shops = new ArrayList<>();
+        for (SimpleShopData record : readShard(worldName).values()) {
+            shops.add(record.toShopData());
+        }
+        return shops;
+    }
+
+    /**
+     * 整体写出若干世界的分片（在后台写入线程调用）
+     * <p>
+     * 列表为空的世界写出为空分片；没有世界的商店无法归入任何分片，调用方应事先排除。
+     *
+     * @param shopsByWorld 世界名称到该世界全部商店的映射
+     * @throws IOException 任一分片写入失败时抛出（已写出的分片保持新内容）
+     */
+    @Override
+    public void saveWorlds(Map<String, List<ShopData>> shopsByWorld) throws IOException {
+        SnapshotFormat target = format.get();
+        int level = compressionLevel.getAsInt();
+        for (Map.Entry<String, List<ShopData>> entry : shopsByWorld.entrySet()) {
+            List<ShopData> worldShops = entry.getValue();
+            shardFiles.write(entry.getKey(), target,
+                    out -> encode(target, level, SimpleShopData.view(worldShops), worldShops.size(), out));
+        }
+    }
+
+    @Override
+    public void upsert(Collection<ShopData> shops) throws IOException {
+        for (Map.Entry<String, List<ShopData>> entry : groupByWorld(shops).entrySet()) {
+            Map<String, SimpleShopData> records = readShard(entry.getKey());
+            for (ShopData shop : entry.getValue()) {
+                records.put(shop.getShopId().toString(), new SimpleShopData(shop));
+            }
+            writeShard(entry.getKey(), records.values());
+        }
+    }
+
+    @Override
+    public void delete(Collection<UUID> shopIds) throws IOException {
+        Set<String> ids = new HashSet<>();
+        shopIds.forEach(id -> ids.add(id.toString()));
+        // 商店ID不含世界信息，只能逐个分片检查
+        for (String worldName : shardNames()) {
+            Map<String, SimpleShopData> records = readShard(worldName);
+            if (records.keySet().removeAll(ids)) {
+                writeShard(worldName, records.values());
+            }
+        }
+    }
+
+    @Override
+    public void updateStocks(Collection<ShopData> shops) throws IOException {
+        for (Map.Entry<String, List<ShopData>> entry : groupByWorld(shops).entrySet()) {
+            Map<String, SimpleShopData> records = readShard(entry.getKey());
+            boolean changed = false;
+            for (ShopData shop : entry.getValue()) {
+                SimpleShopData record = records.get(shop.getShopId().toString());
+                if (record != null) {
+                    record.stock = shop.getStock();
+                    record.stockKnown = shop.isStockKnown();
+                    record.lastScanned = shop.getLastScanned();
+                    changed = true;
+                }
+            }
+            if (changed) {
+                writeShard(entry.getKey(), records.values());
+            }
+        }
+    }
+
+    @Override
+    public List<ShopData> findByItem(String normalizedItemId) throws IOException {
+        List<ShopData> exact = scan(shardNames(), record -> record.itemId != null
+                && record.itemId.toLowerCase().equals(normalizedItemId));
+        if (!exact.isEmpty()) {
+            return exact;
+        }
+        return scan(shardNames(), record -> record.itemId != null
+                && record.itemId.toLowerCase().contains(normalizedItemId));
+    }
+
+    @Override
+    public List<ShopData> findByOwner(UUID ownerId) throws IOException {
+        String owner = ownerId.toString();
+        return scan(shardNames(), record -> owner.equals(record.ownerId));
+    }
+
+    @Override
+    public List<ShopData> findInRegion(String worldName, double minX, double minZ, double maxX, double maxZ)
+            throws IOException {
+        // 只需读取该世界的分片
+        return scan(Collections.singleton(worldName), record -> record.x >= minX && record.x <= maxX
+                && record.z >= minZ && record.z <= maxZ);
+    }
+
+    @Override
+    public void close() {
+        // 每次读写都独立打开文件，无需释放
+    }
+
+    /**
+     * 将旧版单文件快照拆分为世界分片（在异步线程调用）
+     * <p>
+     * 只在分片目录为空时执行。按记录中的世界名称拆分，不依赖世界是否已加载，所有商店都会保留。
+     * 拆分成功后旧文件重命名为 .bak；当前快照损坏时依次尝试历代备份。
+     *
+     * @param generations 旧版快照保留的历史代数
+     * @return 执行了拆分返回 {@code true}
+     * @throws IOException 所有旧版快照均无法读取或分片写入失败时抛出（旧文件保持原样）
+     */
+    boolean migrateLegacy(int generations) throws IOException {
+        if (!shardNames().isEmpty()) {
+            return false;
+        }
+        List<SnapshotFiles.Candidate> candidates = new SnapshotFiles(dataFolder, generations)
+                .candidates(LEGACY_NAME, format.get());
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        for (SnapshotFiles.Candidate candidate : candidates) {
+            Map<String, List<SimpleShopData>> byWorld = new HashMap<>();
+            int[] withoutWorld = new int[1];
+            try {
+                SnapshotFiles.verify(candidate.file());
+                read(candidate.file(), record -> {
+                    if (record.worldName == null) {
+                        withoutWorld[0]++;
+                    } else {
+                        byWorld.computeIfAbsent(record.worldName, k -> new ArrayList<>()).add(record);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                logger.warning("旧版快照 " + candidate.file().getName() + " 无法读取（" + e.getMessage()
+                        + "），尝试上一代快照...");
+                continue;
+            }
+
+            for (Map.Entry<String, List<SimpleShopData>> entry : byWorld.entrySet()) {
+                writeShard(entry.getKey(), entry.getValue());
+            }
+            if (withoutWorld[0] > 0) {
+                logger.warning("旧版快照中有 " + withoutWorld[0] + " 个商店没有世界信息，无法归入分片，已忽略。");
+            }
+
+            File backup = new File(dataFolder, candidate.file().getName() + ".bak");
+            if (backup.exists()) {
+                backup.delete();
+            }
+            if (!candidate.file().renameTo(backup)) {
+                logger.warning("无法重命名旧版快照: " + candidate.file().getName());
+            }
+            logger.info("已将 " + candidate.file().getName() + " 拆分为 " + byWorld.size()
+                    + " 个世界分片，原文件保留为 " + backup.getName() + "。");
+            return true;
+        }
+        throw new IOException("所有旧版快照均无法读取");
+    }
+
+    /**
+     * 读取分片的最新有效快照，损坏时依次回退到上一代
+     *
+     * @param worldName 世界名称
+     * @return 商店ID到记录的映射，保持文件顺序；分片不存在时为空
+     * @throws IOException 所有快照均无法读取时抛出
+     */
+    Map<String, SimpleShopData> readShard(String worldName) throws IOException {
+        List<SnapshotFiles.Candidate> candidates = candidates(worldName, format.get());
+        Map<String, SimpleShopData> records = new LinkedHashMap<>();
+        if (candidates.isEmpty()) {
+            return records;
+        }
+        IOException failure = null;
+        for (SnapshotFiles.Candidate candidate : candidates) {
+            try {
+                SnapshotFiles.verify(candidate.file());
+                read(candidate.file(), record -> records.put(record.shopId, record));
+                return records;
+            } catch (IOException | RuntimeException e) {
+                records.clear();
+                failure = new IOException("分片 " + candidate.file().getName() + " 无法读取: " + e.getMessage(), e);
+            }
+        }
+        throw failure;
+    }
+
+    private void writeShard(String worldName, Collection<SimpleShopData> records) throws IOException {
+        SnapshotFormat target = format.get();
+        int level = compressionLevel.getAsInt();
+        shardFiles.write(worldName, target, out -> encode(target, level, records, records.size(), out));
+    }
+
+    /**
+     * 流式扫描分片，只为命中的记录构造 {@link ShopData}
+     */
+    private List<ShopData> scan(Collection<String> worldNames, Predicate<SimpleShopData> filter) throws IOException {
+        List<ShopData> result = new ArrayList<>();
+        for (String worldName : worldNames) {
+            for (SimpleShopData record : readShard(worldName).values()) {
+                if (filter.test(record)) {
+                    result.add(record.toShopData());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, List<ShopData>> groupByWorld(Collection<ShopData> shops) {
+        Map<String, List<ShopData>> byWorld = new HashMap<>();
+        for (ShopData shop : shops) {
+            String worldName = shop.getWorldName();
+            if (worldName != null) {
+                byWorld.computeIfAbsent(worldName, k -> new ArrayList<>()).add(shop);
+            }
+        }
+        return byWorld;
+    }
+
+    /**
+     * 流式读取快照文件，每条记录解析后立即交给 {@code sink}，格式与是否压缩均由文件头自动识别
+     *
+     * @param file 快照文件
+     * @param sink 记录消费者
+     * @return 读取的记录数
+     * @throws IOException 读取或解析失败时抛出
+     */
+    static int read(File file, Consumer<SimpleShopData> sink) throws IOException {
+        if (SnapshotFormat.detect(file) == SnapshotFormat.BINARY) {
+            try (InputStream in = CompressionUtil.decompress(new FileInputStream(file))) {
+                return BinarySnapshotCodec.read(in, sink);
+            }
+        }
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                CompressionUtil.decompress(new FileInputStream(file))))) {
+            return JsonSnapshotCodec.read(reader, sink);
+        }
+    }
+
+    /**
+     * 按格式编码快照内容；压缩时校验尾由 {@link SnapshotFiles} 附加在压缩数据之后，校验的是磁盘上的字节
+     */
+    static void encode(SnapshotFormat format, int compressionLevel, Iterable<SimpleShopData> records,
+                       int recordCount, OutputStream out) throws IOException {
+        OutputStream content = CompressionUtil.compress(out, compressionLevel);
+        if (format == SnapshotFormat.BINARY) {
+            BinarySnapshotCodec.write(records, recordCount, content);
+        } else {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(content));
+            JsonSnapshotCodec.write(records, writer);
+            writer.flush();
+        }
+        CompressionUtil.finish(content);
+    }
+}
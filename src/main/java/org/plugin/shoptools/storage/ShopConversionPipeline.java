@@ -0,0 +1,109 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 快照加载的流水线转换器
+ * <p>
+ * 解析线程每读出一批记录就立即提交给 ForkJoinPool 转换为 {@link ShopData}，
+ * 解析与转换并行进行。在途批次数量有上限，解析速度超过转换速度时解析线程会等待，
+ * 因此内存中同时存在的 {@link SimpleShopData} 数量与商店总数无关。
+ *
+ * @author NSrank & Augment
+ */
+final class ShopConversionPipeline implements Consumer<SimpleShopData>, AutoCloseable {
+
+    /** 每个转换批次的记录数 */
+    private static final int BATCH_SIZE = 1024;
+
+    private final Logger logger;
+    private final ForkJoinPool pool;
+    private final Semaphore inFlight;
+    private final List<Future<List<ShopData>>> futures = new ArrayList<>();
+    private List<SimpleShopData> batch = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * 构造流水线
+     *
+     * @param threadCount   转换线程数
+     * @param logger        日志记录器
+     */
+    ShopConversionPipeline(int threadCount, Logger logger) {
+        this.logger = logger;
+        this.pool = new ForkJoinPool(threadCount);
+        this.inFlight = new Semaphore(threadCount * 2);
+    }
+
+    @Override
+    public void accept(SimpleShopData record) {
+        batch.add(record);
+        if (batch.size() >= BATCH_SIZE) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 提交剩余记录并等待全部批次转换完成
+     *
+     * @return 按读取顺序排列的商店数据（转换失败的记录已剔除）
+     * @throws IOException 转换线程被中断时抛出
+     */
+    List<ShopData> finish() throws IOException {
+        if (!batch.isEmpty()) {
+            dispatch();
+        }
+        List<ShopData> result = new ArrayList<>(futures.size() * BATCH_SIZE);
+        try {
+            for (Future<List<ShopData>> future : futures) {
+                result.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("商店数据转换被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("商店数据转换失败: " + e.getCause().getMessage(), e.getCause());
+        }
+        futures.clear();
+        return result;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private void dispatch() {
+        List<SimpleShopData> records = batch;
+        batch = new ArrayList<>(BATCH_SIZE);
+        inFlight.acquireUninterruptibly();
+        futures.add(pool.submit(() -> {
+            try {
+                List<ShopData> converted = new ArrayList<>(records.size());
+                for (SimpleShopData record : records) {
+                    try {
+                        // 使用世界快照，避免在异步线程调用 Bukkit API
+                        ShopData shopData = record.toShopData();
+                        if (shopData != null) {
+                            converted.add(shopData);
+                        }
+                    } catch (Exception e) {
+                        logger.warning("转换商店数据时发生错误: " + e.getMessage());
+                    }
+                }
+                return converted;
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+}
@@ -1,20 +1,21 @@
 package org.plugin.shoptools.storage;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.plugin.Plugin;
 import org.plugin.shoptools.config.ConfigManager;
+import org.plugin.shoptools.feed.ShopChangeEvent;
+import org.plugin.shoptools.feed.ShopChangeFeed;
 import org.plugin.shoptools.model.ShopData;
-import org.plugin.shoptools.spatial.LocationSpatialIndex;
-import org.plugin.shoptools.data.LocationPoint;
+import org.plugin.shoptools.model.WorldKey;
+import org.plugin.shoptools.util.CompressionUtil;
 
 import java.io.*;
-import java.lang.reflect.Type;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,24 +26,56 @@ import java.util.stream.Collectors;
  * @author NSrank & Augment
  */
 public class ShopDataManager {
-    
+
+    /** 插件关闭时等待最后一次快照写入的最长时间（毫秒） */
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 10000L;
+
     private final Logger logger;
     private final ConfigManager configManager;
-    private final File dataFile;
-    private final Gson gson;
+    private final File dataFolder;
     
-    // 缓存系统
-    private final Map<UUID, ShopData> shopCache = new ConcurrentHashMap<>();
-    private final Map<String, List<ShopData>> itemCache = new ConcurrentHashMap<>();
-    private final Map<UUID, List<ShopData>> ownerCache = new ConcurrentHashMap<>();
-    /** 按 "world:blockX:blockY:blockZ" 快速定位 ShopData，供 StockScanQueue 原地更新库存 */
-    private final Map<String, ShopData> locationIndex = new ConcurrentHashMap<>();
-
-    // 空间索引系统
-    private final LocationSpatialIndex spatialIndex;
+    /**
+     * 缓存系统：主缓存、物品缓存、店主缓存、位置索引和空间索引。
+     * 索引是不可变快照，只通过替换此引用发布；读者在任意线程无锁读取，看到的总是完整的一份索引
+     */
+    private volatile ShopIndex index = ShopIndex.EMPTY;
+    /** 尚未发布的索引修改（写时复制），由 {@link #publishIndex()} 整体发布；只在持有对象锁时访问 */
+    private ShopIndex.Builder indexEdits;
+
+    /** 后台快照写入服务，主线程只标记脏数据，不直接写盘 */
+    private final ShopPersistenceService persistence;
+    /** 库存变更日志，库存扫描结果以追加方式持久化 */
+    private final StockJournal stockJournal;
+    /** 价格历史，全量同步发现的调价按日期分段追加 */
+    private final PriceHistory priceHistory;
+    /** 按世界分片的快照存储，未加载世界的分片原样保留；使用 SQLite 后端时作为首次导入的数据来源 */
+    private final ShardedSnapshotStore snapshotStore;
+    /** 实际使用的持久化后端（storage.backend） */
+    private final ShopStore store;
+    /** 已由缓存接管的世界，保存时只整体覆盖这些世界，其余世界的数据保持原样 */
+    private final Set<String> loadedWorlds = ConcurrentHashMap.newKeySet();
+    /** SQLite 后端下等待写入的库存变化，按商店ID合并 */
+    private final Map<UUID, ShopData> pendingStocks = new ConcurrentHashMap<>();
+    private final AtomicBoolean stockFlushScheduled = new AtomicBoolean();
+    /**
+     * 启动阶段的惰性快照视图（每个已映射的分片一个）：完整缓存构建完成前由它们响应查询，构建完成后清空。
+     * 只有查询方法读取它，库存扫描、同步等写操作始终在完整缓存上进行。
+     */
+    private volatile List<MappedSnapshotReader> lazySnapshots = Collections.emptyList();
+    /** 商店变化推送，同步和库存扫描的变化合并后按批次推送给下游插件 */
+    private final ShopChangeFeed changeFeed;
+    /** 物品搜索索引的后台构建线程，新快照的搜索词条变化后在这里重建，不占用主线程 */
+    private final ExecutorService itemSearchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ShopTools-ItemSearch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean itemSearchScheduled = new AtomicBoolean();
 
     private long lastUpdateTime = 0;
     private boolean isDataLoaded = false;
+    /** 完整缓存是否已构建（来自快照加载或全量同步） */
+    private boolean cacheBuilt = false;
     
     /**
      * 构造函数
@@ -54,117 +87,472 @@ public class ShopDataManager {
     public ShopDataManager(File dataFolder, ConfigManager configManager, Logger logger) {
         this.logger = logger;
         this.configManager = configManager;
-        this.dataFile = new File(dataFolder, "shops.json");
-
-        // 初始化空间索引
-        this.spatialIndex = new LocationSpatialIndex();
-
-        // 创建Gson实例，使用简化的序列化策略
-        this.gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
+        this.dataFolder = dataFolder;
+
+        this.stockJournal = new StockJournal(dataFolder, logger);
+        this.priceHistory = new PriceHistory(dataFolder, configManager::getPriceHistoryRetentionDays, logger);
+        this.snapshotStore = new ShardedSnapshotStore(dataFolder, configManager.getSnapshotGenerations(),
+                () -> SnapshotFormat.fromConfig(configManager.getStorageFormat()),
+                configManager::getCompressionLevel, logger);
+        this.persistence = new ShopPersistenceService(this::compactSnapshot, configManager.getSaveDelay(), logger);
+        this.changeFeed = new ShopChangeFeed(configManager.getFeedBufferSize(),
+                batch -> Bukkit.getPluginManager().callEvent(new ShopChangeEvent(batch)), logger);
+        this.changeFeed.setEnabled(configManager.isFeedEnabled());
 
         // 确保数据文件夹存在
         if (!dataFolder.exists()) {
             dataFolder.mkdirs();
         }
+        this.store = openStore();
         // 注意：数据加载通过 loadDataAsync() 异步完成，不在构造函数中执行
     }
+
+    /**
+     * 按配置打开持久化后端，SQLite 无法打开时回退到分片快照
+     *
+     * @return 持久化后端
+     */
+    private ShopStore openStore() {
+        if (!"sqlite".equals(configManager.getStorageBackend())) {
+            return snapshotStore;
+        }
+        try {
+            SqliteShopStore sqlite = SqliteShopStore.open(dataFolder);
+            logger.info("使用 SQLite 数据库存储商店数据: " + SqliteShopStore.FILE_NAME);
+            return sqlite;
+        } catch (IOException e) {
+            logger.severe("无法打开 SQLite 数据库，改用世界分片快照存储: " + e.getMessage());
+            return snapshotStore;
+        }
+    }
     
     /**
      * 更新商店数据（来自 DataSyncManager 的全量同步）。
      * <p>
-     * 在清空缓存前，会先对已扫描的库存信息做快照；重建完成后自动恢复，
-     * 确保 {@link org.plugin.shoptools.scan.StockScanQueue} 写入的库存数据
-     * 不会被每次同步冲掉。
+     * 按商店ID与当前缓存比较，只对新增、移除和内容变化的商店更新各索引，未变化的商店保留原对象。
+     * 由于 convertShopToShopData 无法在同步时读取库存（需加载区块），内容变化的商店沿用原有的已确认库存，
+     * 确保 {@link org.plugin.shoptools.scan.StockScanQueue} 写入的库存数据不会被每次同步冲掉。
+     * 没有任何变化时不写盘。
      *
      * @param shopDataList 从 QuickShop 获取的最新商店数据列表
      */
-    public void updateShopData(List<ShopData> shopDataList) {
+    public synchronized void updateShopData(List<ShopData> shopDataList) {
         if (shopDataList == null) {
             logger.warning("尝试更新空的商店数据列表！");
             return;
         }
 
         logger.info("开始更新商店数据，共 " + shopDataList.size() + " 个商店...");
+        // 完整缓存即将由同步数据接管，惰性视图不再需要
+        lazySnapshots = Collections.emptyList();
+
+        Map<UUID, ShopData> incoming = new HashMap<>();
+        for (ShopData shopData : shopDataList) {
+            if (shopData != null) {
+                incoming.put(shopData.getShopId(), shopData);
+            }
+        }
 
-        // ── 第一步：快照已扫描的库存数据，key = "world:x:y:z" ──────────────────
-        // 由于 convertShopToShopData 无法在同步时读取库存（需加载区块），
-        // 必须在替换缓存前将现有的已确认库存保存下来，供后续恢复。
-        Map<String, Integer> stockSnapshot = new HashMap<>();
-        for (ShopData existing : shopCache.values()) {
-            if (existing.isStockKnown()) {
-                String key = locationKey(existing.getLocation());
+        // ── 第一步：移除已不存在的商店 ───────────────────────────────────────────
+        // 按位置记下被移除的商店：旧版快照中的随机ID在首次同步时会全部换成位置派生的ID，
+        // 同一位置的新商店仍可沿用其库存并记录价格变化
+        Map<String, ShopData> removedByLocation = new HashMap<>();
+        List<ShopData> removedShops = new ArrayList<>();
+        // 在当前快照上比较，修改写入下一份快照，完成后整体发布
+        publishIndex();
+        ShopIndex current = index;
+        for (ShopData existing : current.shops.values()) {
+            // 未加载世界的商店不在 QuickShop 的同步数据中，保留到该世界加载后的同步
+            if (!incoming.containsKey(existing.getShopId()) && existing.isWorldLoaded()) {
+                unindexShop(existing);
+                removedShops.add(existing);
+                recordChange(existing, null);
+                String key = existing.getLocationKey();
                 if (key != null) {
-                    stockSnapshot.put(key, existing.getStock());
+                    removedByLocation.put(key, existing);
                 }
             }
         }
-        if (!stockSnapshot.isEmpty()) {
-            logger.info("已快照 " + stockSnapshot.size() + " 家商店的库存数据，将在同步后恢复。");
+
+        // ── 第二步：新增与变化的商店 ─────────────────────────────────────────────
+        long now = System.currentTimeMillis();
+        List<ShopData> upserted = new ArrayList<>();
+        int added = 0, changed = 0, restored = 0, priceChanges = 0;
+        for (ShopData shopData : incoming.values()) {
+            ShopData previous = current.shops.get(shopData.getShopId());
+            if (previous != null && sameListing(previous, shopData)) {
+                continue;
+            }
+            recordChange(previous, shopData);
+            if (previous != null) {
+                unindexShop(previous);
+                changed++;
+            } else {
+                previous = removedByLocation.get(shopData.getLocationKey());
+                added++;
+            }
+
+            if (previous != null) {
+                if (previous.isStockKnown()) {
+                    restored++;
+                }
+                if (carryOver(previous, shopData, now)) {
+                    priceChanges++;
+                }
+            }
+            indexShop(shopData);
+            upserted.add(shopData);
         }
 
-        // ── 第二步：清空并重建缓存 ───────────────────────────────────────────────
-        clearCache();
+        publishIndex();
+        finishSync(upserted, removedShops, incoming.size() - added - changed, added, restored, priceChanges);
+    }
 
+    /**
+     * 在后台线程为一次全量同步做准备：按商店ID去重并构建完整的新索引。
+     * 只访问传入的新对象，不读取当前缓存，可在任意线程调用；结果交给 {@link #applyPreparedSync(PreparedSync)}。
+     *
+     * @param shopDataList 转换完成的商店数据列表
+     * @return 准备好的同步结果
+     */
+    public PreparedSync prepareSync(List<ShopData> shopDataList) {
+        Map<UUID, ShopData> unique = new LinkedHashMap<>();
         for (ShopData shopData : shopDataList) {
             if (shopData != null) {
-                // 主缓存
-                shopCache.put(shopData.getShopId(), shopData);
-
-                // 物品缓存
-                String itemId = shopData.getItemId().toLowerCase();
-                itemCache.computeIfAbsent(itemId, k -> new ArrayList<>()).add(shopData);
+                unique.put(shopData.getShopId(), shopData);
+            }
+        }
+        return new PreparedSync(ShopIndex.build(unique.values()), shopDataList.size() - unique.size());
+    }
 
-                // 店主缓存
-                ownerCache.computeIfAbsent(shopData.getOwnerId(), k -> new ArrayList<>()).add(shopData);
+    /**
+     * 发布后台准备好的全量同步结果（必须在主线程调用）。
+     * <p>
+     * 与 {@link #updateShopData(List)} 的差异计算一致：内容未变化的商店沿用当前缓存中的对象，
+     * 只有新增、变化和移除的商店在当前索引的修改器中替换，修改量与变化的商店数成正比；
+     * 当前缓存为空时直接采用后台构建好的新索引。没有任何变化时保留当前索引，不写盘。
+     *
+     * @param prepared {@link #prepareSync(List)} 的结果
+     * @return 新增、移除和变化的商店总数
+     */
+    public synchronized int applyPreparedSync(PreparedSync prepared) {
+        publishIndex();
+        ShopIndex current = index;
+        ShopIndex incoming = prepared.index;
+        if (prepared.duplicates > 0) {
+            logger.warning("同步数据中有 " + prepared.duplicates + " 个重复位置的商店，已去重。");
+        }
+        if (current.shops.isEmpty()) {
+            return adoptPreparedIndex(incoming);
+        }
 
-                // 位置索引（供 StockScanQueue 原地更新）
-                String locKey = locationKey(shopData.getLocation());
-                if (locKey != null) {
-                    locationIndex.put(locKey, shopData);
+        ShopIndex.Builder builder = current.toBuilder();
+        // 按位置记下被移除的商店，同一位置的新商店仍可沿用其库存并记录价格变化
+        Map<String, ShopData> removedByLocation = new HashMap<>();
+        List<ShopData> removedShops = new ArrayList<>();
+        boolean dropped = false;
+        for (ShopData existing : current.shops.values()) {
+            if (incoming.shops.containsKey(existing.getShopId())) {
+                continue;
+            }
+            if (!existing.isWorldLoaded()) {
+                // 未加载世界的商店不在 QuickShop 的同步数据中，原样保留；位置已被新商店占用时丢弃
+                if (incoming.byLocation.containsKey(existing.getLocationKey())) {
+                    builder.remove(existing);
+                    dropped = true;
                 }
-
-                // 空间索引
-                Location shopLocation = shopData.getLocation();
-                if (shopLocation != null && shopLocation.getWorld() != null) {
-                    LocationPoint tempPoint = new LocationPoint(
-                        shopData.getShopId().toString(),
-                        "shop_" + shopData.getItemId(),
-                        shopData.getItemId(),
-                        shopLocation.getWorld().getName(),
-                        shopLocation.getX(),
-                        shopLocation.getY(),
-                        shopLocation.getZ(),
-                        "system"
-                    );
-                    spatialIndex.addLocation(tempPoint);
+            } else {
+                builder.remove(existing);
+                removedShops.add(existing);
+                recordChange(existing, null);
+                String key = existing.getLocationKey();
+                if (key != null) {
+                    removedByLocation.put(key, existing);
                 }
+            }
+        }
 
-                // ── 第三步：恢复该商店的库存快照（如有）────────────────────────────
-                if (locKey != null && stockSnapshot.containsKey(locKey)) {
-                    shopData.setStock(stockSnapshot.get(locKey)); // 同时将 stockKnown 置为 true
+        long now = System.currentTimeMillis();
+        List<ShopData> upserted = new ArrayList<>();
+        int added = 0, unchanged = 0, restored = 0, priceChanges = 0;
+        for (ShopData shopData : incoming.shops.values()) {
+            ShopData previous = current.shops.get(shopData.getShopId());
+            if (previous == null) {
+                recordChange(null, shopData);
+                previous = removedByLocation.get(shopData.getLocationKey());
+                added++;
+            } else if (sameListing(previous, shopData)) {
+                // 沿用现有对象，库存与扫描时间原样保留
+                unchanged++;
+                continue;
+            } else {
+                recordChange(previous, shopData);
+                builder.remove(previous);
+            }
+
+            if (previous != null) {
+                if (previous.isStockKnown()) {
+                    restored++;
+                }
+                if (carryOver(previous, shopData, now)) {
+                    priceChanges++;
                 }
             }
+            builder.add(shopData);
+            upserted.add(shopData);
+        }
+
+        if (!upserted.isEmpty() || !removedShops.isEmpty() || dropped || !cacheBuilt) {
+            // 完整缓存由同步数据接管，惰性视图不再需要
+            lazySnapshots = Collections.emptyList();
+            index = builder.build();
+            scheduleItemSearch();
+        }
+        finishSync(upserted, removedShops, unchanged, added, restored, priceChanges);
+        return upserted.size() + removedShops.size();
+    }
+
+    /**
+     * 当前缓存为空时整体采用后台构建的新索引：全部商店都是新增，没有可沿用的库存
+     *
+     * @param incoming 新索引
+     * @return 新增的商店数量
+     */
+    private int adoptPreparedIndex(ShopIndex incoming) {
+        List<ShopData> upserted = new ArrayList<>(incoming.shops.size());
+        for (ShopData shopData : incoming.shops.values()) {
+            recordChange(null, shopData);
+            upserted.add(shopData);
+        }
+        lazySnapshots = Collections.emptyList();
+        index = incoming;
+        scheduleItemSearch();
+        finishSync(upserted, Collections.emptyList(), 0, upserted.size(), 0, 0);
+        return upserted.size();
+    }
+
+    /**
+     * 全量同步收尾：输出差异统计、安排价格历史与差异的写入，并更新状态
+     */
+    private void finishSync(List<ShopData> upserted, List<ShopData> removedShops, int unchanged,
+                            int added, int restored, int priceChanges) {
+        logger.info("商店数据差异：新增 " + added + "，移除 " + removedShops.size() + "，变化 " + (upserted.size() - added)
+                + "，未变 " + unchanged + "（沿用 " + restored + " 家已扫描库存）。");
+
+        if (priceChanges > 0) {
+            logger.info("记录了 " + priceChanges + " 次价格变化。");
+            schedulePriceHistoryFlush();
         }
 
-        // 保存到文件
-        saveDataNow();
+        // 交给后台写入服务，不阻塞主线程；没有变化时不写盘
+        if (!upserted.isEmpty() || !removedShops.isEmpty() || !cacheBuilt) {
+            persistDelta(upserted, removedShops);
+        }
 
         this.lastUpdateTime = System.currentTimeMillis();
         this.isDataLoaded = true;
+        this.cacheBuilt = true;
 
-        logger.info("商店数据更新完成！缓存了 " + shopCache.size() + " 个商店（已恢复 "
-                + stockSnapshot.size() + " 家已扫描库存）。");
+        logger.info("商店数据更新完成！缓存了 " + index.shops.size() + " 个商店。");
+        changeFeed.flush();
     }
-    
+
+    /**
+     * 后台准备好的全量同步结果：去重后的商店数据及其完整索引
+     */
+    public static final class PreparedSync {
+
+        private final ShopIndex index;
+        private final int duplicates;
+
+        private PreparedSync(ShopIndex index, int duplicates) {
+            this.index = index;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * 获取去重后的商店数量
+         *
+         * @return 商店数量
+         */
+        public int size() {
+            return index.shops.size();
+        }
+    }
+
+    /**
+     * 应用单个商店的创建或变更（来自 QuickShop 事件）。
+     * <p>
+     * 与全量同步的单条处理一致：内容未变时忽略，否则沿用原有库存、记录价格变化并只更新该商店的索引。
+     * 缓存尚未建立（启动加载或惰性视图期间）时忽略，由随后的全量同步补齐。必须在主线程调用。
+     * 修改累积在下一份索引中，调用方处理完一批事件后调用 {@link #publishIndex()} 发布。
+     *
+     * @param shopData 转换后的最新商店数据
+     * @return 缓存发生变化返回 {@code true}
+     */
+    public synchronized boolean applyShopUpdate(ShopData shopData) {
+        if (shopData == null || !cacheBuilt) {
+            return false;
+        }
+        ShopData previous = editIndex().get(shopData.getShopId());
+        if (previous != null && sameListing(previous, shopData)) {
+            return false;
+        }
+        recordChange(previous, shopData);
+        if (previous != null) {
+            unindexShop(previous);
+            if (carryOver(previous, shopData, System.currentTimeMillis())) {
+                schedulePriceHistoryFlush();
+            }
+        }
+        indexShop(shopData);
+        persistDelta(Collections.singletonList(shopData), Collections.emptyList());
+        this.lastUpdateTime = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 移除指定位置的商店（来自 QuickShop 删除事件）。必须在主线程调用。
+     * 与 {@link #applyShopUpdate(ShopData)} 一样，处理完一批事件后调用 {@link #publishIndex()} 发布。
+     *
+     * @param location 商店位置
+     * @return 缓存中存在该商店并已移除返回 {@code true}
+     */
+    public synchronized boolean removeShopAt(Location location) {
+        String key = locationKey(location);
+        if (key == null || !cacheBuilt) {
+            return false;
+        }
+        ShopData existing = editIndex().at(key);
+        if (existing == null) {
+            return false;
+        }
+        unindexShop(existing);
+        recordChange(existing, null);
+        persistDelta(Collections.emptyList(), Collections.singletonList(existing));
+        this.lastUpdateTime = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 将同一位置原有商店的状态带到新数据上：沿用已确认的库存，并把同一物品的价格变化记入价格历史
+     *
+     * @param previous 原有数据
+     * @param shopData 新数据
+     * @param now      记录时间
+     * @return 记录了价格变化返回 {@code true}
+     */
+    private boolean carryOver(ShopData previous, ShopData shopData, long now) {
+        if (previous.isStockKnown()) {
+            // 同时将 stockKnown 置为 true，并保留原扫描时间
+            shopData.setStock(previous.getStock(), previous.getLastScanned());
+        }
+        if (!configManager.isPriceHistoryEnabled()
+                || !previous.getItemId().equalsIgnoreCase(shopData.getItemId())
+                || Double.compare(previous.getPrice(), shopData.getPrice()) == 0) {
+            return false;
+        }
+        priceHistory.record(new PriceHistory.PriceChange(now, shopData.getItemId(),
+                shopData.getLocationKey(), previous.getPrice(), shopData.getPrice()));
+        return true;
+    }
+
+    /**
+     * 在后台写入线程安排一次价格历史写出（已安排时不重复提交）
+     */
+    private void schedulePriceHistoryFlush() {
+        if (priceHistory.markFlushScheduled()) {
+            persistence.execute(priceHistory::flush);
+        }
+    }
+
+    /**
+     * 持久化一次同步的差异：数据库按行写入和删除；分片快照只能整份重写，交给合并窗口统一写出
+     *
+     * @param upserted 新增或内容变化的商店
+     * @param removed  移除的商店
+     */
+    private void persistDelta(List<ShopData> upserted, List<ShopData> removed) {
+        if (store == snapshotStore || !cacheBuilt) {
+            persistence.markAllDirty();
+            persistence.requestSave();
+            return;
+        }
+        List<UUID> removedIds = removed.stream().map(ShopData::getShopId).collect(Collectors.toList());
+        persistence.execute(() -> {
+            try {
+                store.upsert(upserted);
+                store.delete(removedIds);
+            } catch (IOException e) {
+                logger.warning("写入商店数据变化失败，将随下次完整保存写出: " + e.getMessage());
+                persistence.markAllDirty();
+                persistence.requestSave();
+            }
+        });
+    }
+
+    /**
+     * 把一次商品变化记入变化推送。完整缓存建立之前的同步是初次载入而非变化，不记录
+     *
+     * @param previous 原有数据，新增时为 {@code null}
+     * @param shopData 新数据，移除时为 {@code null}
+     */
+    private void recordChange(ShopData previous, ShopData shopData) {
+        if (!cacheBuilt) {
+            return;
+        }
+        if (previous == null) {
+            changeFeed.added(shopData);
+        } else if (shopData == null) {
+            changeFeed.removed(previous);
+        } else {
+            changeFeed.changed(previous, shopData, sameListingExceptPrice(previous, shopData));
+        }
+    }
+
+    /**
+     * 比较同一商店两次同步的内容（不含库存，库存由扫描器维护）
+     *
+     * @param a 原有数据
+     * @param b 新数据
+     * @return 内容相同返回 {@code true}
+     */
+    private static boolean sameListing(ShopData a, ShopData b) {
+        return Double.compare(a.getPrice(), b.getPrice()) == 0 && sameListingExceptPrice(a, b);
+    }
+
+    /**
+     * 比较同一商店两次同步除价格以外的内容
+     *
+     * @param a 原有数据
+     * @param b 新数据
+     * @return 除价格外内容相同返回 {@code true}
+     */
+    private static boolean sameListingExceptPrice(ShopData a, ShopData b) {
+        return Objects.equals(a.getItemId(), b.getItemId())
+                && Objects.equals(a.getItemDisplayName(), b.getItemDisplayName())
+                && Objects.equals(a.getOwnerId(), b.getOwnerId())
+                && Objects.equals(a.getOwnerName(), b.getOwnerName())
+                && a.getShopType() == b.getShopType()
+                && a.isUnlimited() == b.isUnlimited()
+                && Objects.equals(a.getLocationKey(), b.getLocationKey());
+    }
+
     /**
      * 获取所有商店数据
      *
      * @return 商店数据列表
      */
     public List<ShopData> getAllShops() {
-        return new ArrayList<>(shopCache.values());
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            List<ShopData> result = new ArrayList<>();
+            for (MappedSnapshotReader reader : lazy) {
+                result.addAll(reader.all());
+            }
+            return result;
+        }
+        return new ArrayList<>(index.shops.values());
     }
 
     /**
@@ -179,24 +567,28 @@ public class ShopDataManager {
             return new ArrayList<>();
         }
 
-        // 使用空间索引查找附近的位置点
-        List<LocationPoint> nearbyPoints = spatialIndex.findNearbyLocations(center, radius);
-
-        // 将LocationPoint转换为ShopData
-        List<ShopData> nearbyShops = new ArrayList<>();
-        for (LocationPoint point : nearbyPoints) {
-            try {
-                UUID shopId = UUID.fromString(point.getId());
-                ShopData shop = shopCache.get(shopId);
-                if (shop != null) {
-                    nearbyShops.add(shop);
-                }
-            } catch (IllegalArgumentException e) {
-                // 忽略无效的UUID，可能是位置点而非商店
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            // 每个分片只含一个世界，命中的分片最多一个，结果已按距离排序
+            List<ShopData> result = new ArrayList<>();
+            for (MappedSnapshotReader reader : lazy) {
+                result.addAll(reader.findNearby(center.getWorld().getName(),
+                        center.getX(), center.getY(), center.getZ(), radius));
             }
+            return result;
+        }
+        if (queryFromStore()) {
+            // 先按外接正方形走区域索引，再按实际距离过滤排序
+            List<ShopData> result = queryStore(() -> store.findInRegion(center.getWorld().getName(),
+                    center.getX() - radius, center.getZ() - radius,
+                    center.getX() + radius, center.getZ() + radius));
+            result.removeIf(shop -> distanceSquared(shop, center) > radius * radius);
+            result.sort(Comparator.comparingDouble(shop -> distanceSquared(shop, center)));
+            return result;
         }
 
-        return nearbyShops;
+        // 在当前索引快照的区块空间索引中查找，结果已按距离排序
+        return index.findNearby(center.getWorld().getName(), center.getX(), center.getY(), center.getZ(), radius);
     }
 
     /**
@@ -215,36 +607,27 @@ public class ShopDataManager {
         // 先获取所有该物品的商店
         List<ShopData> itemShops = getShopsByItem(itemId);
 
-        // 过滤出在范围内的商店
+        // 过滤出在范围内的商店（按世界名称和坐标比较，不为每个商店构造 Location）
+        String worldName = center.getWorld().getName();
+        double radiusSquared = radius * radius;
         List<ShopData> nearbyShops = new ArrayList<>();
         for (ShopData shop : itemShops) {
-            Location shopLocation = shop.getLocation();
-            if (shopLocation != null && shopLocation.getWorld() != null &&
-                shopLocation.getWorld().equals(center.getWorld())) {
-
-                double distance = center.distance(shopLocation);
-                if (distance <= radius) {
-                    nearbyShops.add(shop);
-                }
+            if (worldName.equals(shop.getWorldName()) && distanceSquared(shop, center) <= radiusSquared) {
+                nearbyShops.add(shop);
             }
         }
 
         // 按距离排序
-        nearbyShops.sort((a, b) -> {
-            Location locA = a.getLocation();
-            Location locB = b.getLocation();
-            if (locA == null || locB == null) return 0;
-
-            double distA = center.distance(locA);
-            double distB = center.distance(locB);
-            return Double.compare(distA, distB);
-        });
+        nearbyShops.sort(Comparator.comparingDouble(shop -> distanceSquared(shop, center)));
 
         return nearbyShops;
     }
     
     /**
      * 根据物品ID获取商店数据
+     * <p>
+     * 优先精确匹配物品ID；没有精确匹配时模糊匹配物品ID和显示名称，结果按匹配程度排序
+     * （完全一致、前缀、单词开头、其他位置）。
      * 
      * @param itemId 物品ID
      * @return 商店数据列表
@@ -255,17 +638,21 @@ public class ShopDataManager {
         }
         
         String normalizedItemId = itemId.toLowerCase().trim();
-        List<ShopData> shops = itemCache.get(normalizedItemId);
-        
-        if (shops == null) {
-            // 尝试模糊匹配
-            shops = itemCache.entrySet().stream()
-                    .filter(entry -> entry.getKey().contains(normalizedItemId))
-                    .flatMap(entry -> entry.getValue().stream())
-                    .collect(Collectors.toList());
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            return getLazyShopsByItem(lazy, normalizedItemId);
         }
-        
-        return shops != null ? new ArrayList<>(shops) : new ArrayList<>();
+        if (queryFromStore()) {
+            return queryStore(() -> store.findByItem(normalizedItemId));
+        }
+        ShopIndex current = index;
+        List<ShopData> shops = current.byItem.get(normalizedItemId);
+        if (shops != null) {
+            return new ArrayList<>(shops);
+        }
+
+        // 没有精确匹配时在三元组索引上模糊匹配（物品ID和显示名称），按匹配程度排序
+        return current.searchItems(normalizedItemId);
     }
     
     /**
@@ -278,8 +665,19 @@ public class ShopDataManager {
         if (ownerId == null) {
             return new ArrayList<>();
         }
-        
-        List<ShopData> shops = ownerCache.get(ownerId);
+
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            List<ShopData> result = new ArrayList<>();
+            for (MappedSnapshotReader reader : lazy) {
+                result.addAll(reader.getByOwner(ownerId));
+            }
+            return result;
+        }
+        if (queryFromStore()) {
+            return queryStore(() -> store.findByOwner(ownerId));
+        }
+        List<ShopData> shops = index.byOwner.get(ownerId);
         return shops != null ? new ArrayList<>(shops) : new ArrayList<>();
     }
     
@@ -295,24 +693,93 @@ public class ShopDataManager {
         }
         
         String normalizedName = ownerName.toLowerCase().trim();
-        
-        return shopCache.values().stream()
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            List<ShopData> result = new ArrayList<>();
+            for (MappedSnapshotReader reader : lazy) {
+                result.addAll(reader.getByOwnerName(normalizedName));
+            }
+            return result;
+        }
+
+        return index.shops.values().stream()
                 .filter(shop -> shop.getOwnerName() != null && 
                                shop.getOwnerName().toLowerCase().contains(normalizedName))
                 .collect(Collectors.toList());
     }
     
     /**
-     * 清空所有缓存
+     * 在惰性视图上按物品查询：任一分片有精确匹配时只返回精确结果，否则在所有分片中模糊匹配
+     * （与完整缓存的行为一致）
+     *
+     * @param lazy             惰性视图
+     * @param normalizedItemId 小写并去除首尾空格的物品ID
+     * @return 商店数据列表
+     */
+    private List<ShopData> getLazyShopsByItem(List<MappedSnapshotReader> lazy, String normalizedItemId) {
+        List<ShopData> result = new ArrayList<>();
+        boolean exactFound = false;
+        for (MappedSnapshotReader reader : lazy) {
+            List<ShopData> exact = reader.getByItemExact(normalizedItemId);
+            if (exact != null) {
+                result.addAll(exact);
+                exactFound = true;
+            }
+        }
+        if (!exactFound) {
+            for (MappedSnapshotReader reader : lazy) {
+                result.addAll(reader.getByItemContaining(normalizedItemId));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 完整缓存构建完成前，SQLite 后端的查询直接走数据库索引，不需要先把全部商店加载到内存
+     *
+     * @return 需要查询数据库时返回 {@code true}
+     */
+    private boolean queryFromStore() {
+        return !cacheBuilt && store != snapshotStore;
+    }
+
+    /**
+     * 在数据库上执行查询，失败时记录日志并返回空列表
+     *
+     * @param query 查询
+     * @return 商店数据列表
+     */
+    private List<ShopData> queryStore(StoreQuery query) {
+        try {
+            return query.run();
+        } catch (IOException e) {
+            logger.warning("查询商店数据库失败: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 计算商店与中心位置的距离平方（调用方保证同一世界，只使用坐标，不解析商店的世界）
      */
-    private void clearCache() {
-        shopCache.clear();
-        itemCache.clear();
-        ownerCache.clear();
-        locationIndex.clear();
+    private static double distanceSquared(ShopData shop, Location center) {
+        double dx = shop.getX() - center.getX();
+        double dy = shop.getY() - center.getY();
+        double dz = shop.getZ() - center.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @FunctionalInterface
+    private interface StoreQuery {
+        List<ShopData> run() throws IOException;
+    }
 
-        // 清空空间索引
-        spatialIndex.clear();
+    /**
+     * 复制当前索引快照的商店引用列表。索引不可变，复制时不需要加锁，写出的一定是某一时刻的完整数据。
+     *
+     * @return 商店列表副本
+     */
+    private List<ShopData> snapshotShops() {
+        return new ArrayList<>(index.shops.values());
     }
 
     /**
@@ -323,129 +790,513 @@ public class ShopDataManager {
      * @return 格式为 "world:blockX:blockY:blockZ" 的键；loc 无效时返回 {@code null}
      */
     private String locationKey(Location loc) {
-        if (loc == null || loc.getWorld() == null) return null;
-        return loc.getWorld().getName() + ":" + loc.getBlockX() + ":" + loc.getBlockY() + ":" + loc.getBlockZ();
+        return ShopData.locationKey(loc);
     }
     
     /**
-     * 将当前缓存的所有商店数据立即保存到 shops.json。
+     * 将当前缓存的所有商店数据立即保存为快照文件。
      * <p>
-     * 可在主线程或异步线程调用，但建议在异步线程中调用以避免 I/O 阻塞主线程。
-     * {@link org.plugin.shoptools.scan.StockScanQueue} 在扫描完成后会通过异步任务调用此方法。
+     * 按世界分片写入 {@code shards/} 目录，文件格式由配置项 {@code storage.format} 决定（默认二进制）。
+     * 会阻塞调用线程直到写入完成，不要在主线程调用；常规保存请使用 {@link #requestSave()}。
      */
     public void saveDataNow() {
-        try (FileWriter writer = new FileWriter(dataFile)) {
-            List<ShopData> shopList = new ArrayList<>(shopCache.values());
-            List<SimpleShopData> simpleShopList = new ArrayList<>();
+        saveSnapshot();
+    }
+
+    /**
+     * 请求在后台保存已变化的商店数据。
+     * <p>
+     * 多次请求会在 {@code storage.save-delay} 合并窗口内合并为一次写入，没有变化时不写盘。
+     * 不阻塞调用线程，可在主线程调用。
+     */
+    public void requestSave() {
+        persistence.requestSave();
+    }
+
+    /**
+     * 关闭数据管理器：立即写入尚未保存的变更并停止后台写入线程。
+     * 在插件禁用时调用。
+     */
+    public void shutdown() {
+        persistence.execute(this::flushStockJournal);
+        persistence.execute(this::flushPendingStocks);
+        persistence.execute(priceHistory::flush);
+        persistence.shutdown(SHUTDOWN_FLUSH_TIMEOUT);
+        itemSearchExecutor.shutdownNow();
+        stockJournal.close();
+        priceHistory.close();
+        store.close();
+    }
+
+    /**
+     * 写出完整快照并清空库存日志（在后台写入线程调用）
+     *
+     * @return 写入成功返回 {@code true}
+     */
+    private boolean compactSnapshot() {
+        if (!saveSnapshot()) {
+            return false;
+        }
+        stockJournal.truncate();
+        return true;
+    }
 
-            // 转换为简化的数据对象
-            for (ShopData shop : shopList) {
-                simpleShopList.add(new SimpleShopData(shop));
+    /**
+     * 将排队的库存变更追加到日志；日志过长或写入失败时安排一次快照压实（在后台写入线程调用）
+     */
+    private void flushStockJournal() {
+        int entries;
+        try {
+            entries = stockJournal.flush();
+        } catch (IOException e) {
+            // 未写入日志的库存仍在内存缓存中，随完整快照写出，快照成功后日志被清空
+            logger.severe("写入库存日志时发生错误，安排写入完整快照: " + e.getMessage());
+            persistence.markAllDirty();
+            persistence.requestSave();
+            return;
+        }
+        if (entries >= configManager.getJournalCompactThreshold()) {
+            if (configManager.isDebugEnabled()) {
+                logger.info("库存日志已有 " + entries + " 条记录，安排压实为新快照。");
             }
+            persistence.markAllDirty();
+            persistence.requestSave();
+        }
+    }
 
-            gson.toJson(simpleShopList, writer);
+    /**
+     * 将合并后的库存及扫描时间批量写入数据库（SQLite 后端，在后台写入线程调用）
+     * <p>
+     * 写入失败时安排一次完整保存，库存随整份数据一起写出。
+     */
+    private void flushPendingStocks() {
+        stockFlushScheduled.set(false);
+        if (pendingStocks.isEmpty()) {
+            return;
+        }
+        List<ShopData> batch = new ArrayList<>(pendingStocks.size());
+        for (UUID shopId : new ArrayList<>(pendingStocks.keySet())) {
+            ShopData shopData = pendingStocks.remove(shopId);
+            if (shopData != null) {
+                batch.add(shopData);
+            }
+        }
+        try {
+            store.updateStocks(batch);
+            if (configManager.isDebugEnabled()) {
+                logger.info("已将 " + batch.size() + " 家商店的库存写入数据库。");
+            }
+        } catch (IOException e) {
+            logger.warning("写入库存变化失败，将随下次完整保存写出: " + e.getMessage());
+            persistence.markAllDirty();
+            persistence.requestSave();
+        }
+    }
+
+    /**
+     * 在当前缓存上重放库存日志（主线程调用）
+     *
+     * @param journalStocks 日志中每个位置的最新库存
+     */
+    private void applyStockJournal(Map<String, StockJournal.Entry> journalStocks) {
+        int applied = 0;
+        for (StockJournal.Entry entry : journalStocks.values()) {
+            ShopData shopData = index.byLocation.get(entry.locationKey());
+            if (shopData != null) {
+                // 同时将 stockKnown 置为 true，扫描时间取日志记录时间
+                shopData.setStock(entry.stock(), entry.timestamp());
+                applied++;
+            }
+        }
+        logger.info("已从库存日志恢复 " + applied + " 家商店的库存数据。");
+    }
+
+    /**
+     * 将缓存中各世界的商店整体写入持久化后端（在后台写入线程调用）
+     * <p>
+     * 写出缓存中出现的世界以及已接管但当前没有商店的世界（未加载世界的商店同样在缓存中）；
+     * 其余分片（如无法加载的分片）保持原样。
+     *
+     * @return 写入成功返回 {@code true}
+     */
+    private boolean saveSnapshot() {
+        // 只复制引用列表，记录在写出时逐条转换，不再构造整份 SimpleShopData 副本
+        Map<String, List<ShopData>> shopsByWorld = new HashMap<>();
+        int withoutWorld = 0;
+        for (ShopData shop : snapshotShops()) {
+            String worldName = shop.getWorldName();
+            if (worldName == null) {
+                withoutWorld++;
+                continue;
+            }
+            shopsByWorld.computeIfAbsent(worldName, k -> new ArrayList<>()).add(shop);
+        }
+        loadedWorlds.addAll(shopsByWorld.keySet());
+        for (String worldName : loadedWorlds) {
+            shopsByWorld.computeIfAbsent(worldName, k -> new ArrayList<>());
+        }
+        if (withoutWorld > 0) {
+            logger.warning("有 " + withoutWorld + " 个商店没有世界信息，无法保存。");
+        }
+
+        try {
+            // 分片快照先写临时文件并 fsync 再原子替换；数据库在一个事务内完成，写入中途崩溃不会破坏已有数据
+            store.saveWorlds(shopsByWorld);
 
             if (configManager.isDebugEnabled()) {
-                logger.info("商店数据已保存到文件: " + dataFile.getAbsolutePath());
+                logger.info("商店数据已保存到" + store.getName() + "，共 " + shopsByWorld.size() + " 个世界。");
             }
+            return true;
         } catch (IOException e) {
             logger.severe("保存商店数据时发生错误: " + e.getMessage());
             e.printStackTrace();
+            return false;
         }
     }
-    
+
+    /**
+     * 发布惰性快照视图，使查询命令在完整缓存构建完成前即可使用（主线程调用）
+     *
+     * @param reader 惰性读取器
+     */
+    private void publishLazySnapshot(MappedSnapshotReader reader) {
+        if (cacheBuilt) {
+            // 全量同步或完整加载已先完成，惰性视图已过时
+            return;
+        }
+        List<MappedSnapshotReader> readers = new ArrayList<>(lazySnapshots);
+        readers.add(reader);
+        lazySnapshots = Collections.unmodifiableList(readers);
+        isDataLoaded = true;
+        logger.info("分片已映射，" + reader.size() + " 个商店可立即查询，完整缓存在后台继续构建...");
+    }
+
+    /**
+     * 加载单个快照文件：先校验校验尾，再按格式和配置选择分段并行或流水线解析
+     *
+     * @param file          快照文件
+     * @param threadCount   解析线程数
+     * @return 商店数据列表
+     * @throws IOException 校验失败、文件损坏或读取失败时抛出
+     */
+    private List<ShopData> loadSnapshotFile(Plugin plugin, File file, int threadCount) throws IOException {
+        SnapshotFiles.verify(file);
+        // 压缩的快照无法映射或按偏移分段，只能流式解压
+        boolean binary = SnapshotFormat.detect(file) == SnapshotFormat.BINARY && !CompressionUtil.isCompressed(file);
+        if (binary && configManager.isLazyLoadEnabled()) {
+            // 映射文件并只建立轻量索引，先发布给查询命令使用，再在后台解码出完整缓存所需的全部对象
+            MappedSnapshotReader reader = MappedSnapshotReader.open(file);
+            if (reader.size() > 0) {
+                Bukkit.getScheduler().runTask(plugin, () -> publishLazySnapshot(reader));
+            }
+            return reader.materializeAll(threadCount);
+        }
+        if (binary && configManager.isSegmentedLoadEnabled()) {
+            // 二进制快照按记录边界分段，每段由一个线程独立解析并转换
+            return SegmentedSnapshotLoader.load(file, threadCount, logger);
+        }
+        // 解析与转换流水线并行：每解析出一批记录立即提交给 ForkJoinPool 转换
+        try (ShopConversionPipeline pipeline = new ShopConversionPipeline(threadCount, logger)) {
+            int recordCount = ShardedSnapshotStore.read(file, pipeline);
+            return recordCount == 0 ? new ArrayList<>() : pipeline.finish();
+        }
+    }
+
+    /**
+     * 加载完成后修复磁盘上的分片：
+     * 从历代备份恢复时重新写出当前快照；从非配置格式的旧文件加载时按配置格式写出，并将旧文件重命名为 .bak。
+     * 在写入线程执行，写出失败时保留旧文件不动。
+     *
+     * @param loaded 本次加载所用的分片快照
+     */
+    private void migrateSnapshotIfNeeded(List<SnapshotFiles.Candidate> loaded) {
+        SnapshotFormat configured = SnapshotFormat.fromConfig(configManager.getStorageFormat());
+        List<File> outdated = new ArrayList<>();
+        boolean restored = false;
+        for (SnapshotFiles.Candidate candidate : loaded) {
+            if (candidate == null) {
+                // 来自数据库，不涉及快照文件
+                continue;
+            }
+            if (candidate.generation() > 0) {
+                restored = true;
+            } else if (candidate.format() != configured) {
+                outdated.add(candidate.file());
+            }
+        }
+        if (outdated.isEmpty()) {
+            if (restored) {
+                // 当前快照已损坏，尽快用恢复出的数据覆盖
+                persistence.markAllDirty();
+                persistence.requestSave();
+            }
+            return;
+        }
+        // 在写入线程执行，与常规保存串行，避免两个线程同时写快照
+        persistence.execute(() -> {
+            if (!saveSnapshot()) {
+                logger.warning("快照格式迁移失败，保留 " + outdated.size() + " 个原分片文件。");
+                return;
+            }
+            for (File file : outdated) {
+                File backup = new File(file.getParentFile(), file.getName() + ".bak");
+                if (backup.exists()) {
+                    backup.delete();
+                }
+                if (!file.renameTo(backup)) {
+                    logger.warning("分片已迁移为 " + configured.name().toLowerCase() + " 格式，但无法重命名旧文件: "
+                            + file.getName());
+                }
+            }
+            logger.info("已将 " + outdated.size() + " 个分片迁移为 " + configured.name().toLowerCase()
+                    + " 格式，原文件保留为 .bak。");
+        });
+    }
+
+    /**
+     * 加载完成的世界分片
+     *
+     * @param worldName 世界名称
+     * @param candidate 实际加载的快照文件；来自数据库时为 {@code null}
+     * @param shops     商店数据
+     */
+    private record LoadedShard(String worldName, SnapshotFiles.Candidate candidate, List<ShopData> shops) {}
+
     /**
      * 异步从文件加载商店数据（多线程加速，避免阻塞主线程）
      * <p>
      * 必须从主线程调用，内部会自动调度异步任务：
      * <ol>
-     *   <li>主线程：捕获世界快照（避免在异步线程调用 Bukkit API）</li>
-     *   <li>异步线程：文件 I/O + JSON 解析 + ForkJoinPool 并行对象转换</li>
-     *   <li>主线程：重建内存缓存和空间索引，然后调用 {@code onLoaded} 回调</li>
+     *   <li>主线程：绑定已加载的世界（异步线程只按世界名称记录商店，不调用 Bukkit API）</li>
+     *   <li>异步线程：旧版单文件快照首次启动时拆分为世界分片</li>
+     *   <li>异步线程：每个世界一个任务并行加载分片（自动识别 JSON / 二进制），未加载世界的商店同样加载，
+     *       可按坐标查询，世界加载后再加入空间索引</li>
+     *   <li>异步线程：读取库存日志中快照之后的库存变化</li>
+     *   <li>主线程：重建内存缓存和空间索引，重放库存日志，然后调用 {@code onLoaded} 回调</li>
      * </ol>
      *
      * @param plugin   插件实例，用于调度 Bukkit 任务
      * @param onLoaded 数据加载并缓存完成后在主线程执行的回调；为 {@code null} 时忽略
      */
     public void loadDataAsync(Plugin plugin, Runnable onLoaded) {
-        if (!dataFile.exists()) {
-            logger.info("商店数据文件不存在，将在首次同步后创建。");
-            return;
-        }
-
-        // 在主线程捕获世界快照，避免在异步线程中调用 Bukkit API
-        Map<String, World> worldSnapshot = new HashMap<>();
+        // 在主线程绑定已加载的世界，异步线程解析出的商店只持有世界标识
         for (World world : Bukkit.getWorlds()) {
-            worldSnapshot.put(world.getName(), world);
+            WorldKey.bind(world);
         }
 
-        // 确定并行线程数
-        int configThreads = configManager.getLoadThreads();
-        int threadCount = (configThreads <= 0)
-                ? Math.max(1, Runtime.getRuntime().availableProcessors() - 2)
-                : configThreads;
-
+        int threadCount = loadThreadCount();
         logger.info("开始异步加载商店数据，使用 " + threadCount + " 个线程...");
         final long startTime = System.currentTimeMillis();
 
         // 切换到异步线程执行文件 I/O 和数据解析
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try (FileReader reader = new FileReader(dataFile)) {
-                Type listType = new TypeToken<List<SimpleShopData>>(){}.getType();
-                List<SimpleShopData> simpleShopList = gson.fromJson(reader, listType);
-
-                if (simpleShopList == null || simpleShopList.isEmpty()) {
-                    logger.info("商店数据文件为空。");
-                    return;
-                }
-
-                logger.info("已解析 " + simpleShopList.size() + " 条记录，开始并行转换（" + threadCount + " 线程）...");
-
-                // 使用 ForkJoinPool 并行将 SimpleShopData 转换为 ShopData
-                ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
-                List<ShopData> shopList;
-                try {
-                    shopList = forkJoinPool.submit(() ->
-                        simpleShopList.parallelStream()
-                            .map(simpleShop -> {
-                                try {
-                                    // 使用世界快照，避免在异步线程调用 Bukkit API
-                                    return simpleShop.toShopData(worldSnapshot);
-                                } catch (Exception e) {
-                                    logger.warning("转换商店数据时发生错误: " + e.getMessage());
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList())
-                    ).get();
-                } finally {
-                    forkJoinPool.shutdown();
-                }
-
+            List<LoadedShard> shards = loadShards(plugin, threadCount);
+            List<ShopData> shopList = new ArrayList<>();
+            for (LoadedShard shard : shards) {
+                shopList.addAll(shard.shops());
+            }
+            // 快照之后的库存变化记录在日志中，读取失败时只丢失这部分库存
+            Map<String, StockJournal.Entry> journalStocks = shopList.isEmpty() ? new HashMap<>() : replayStockJournal();
+            if (!shopList.isEmpty()) {
                 long parseTime = System.currentTimeMillis() - startTime;
-                final List<ShopData> finalShopList = shopList;
-                logger.info("并行转换完成，共 " + finalShopList.size() + " 个商店，耗时 " + parseTime + "ms，切回主线程重建缓存...");
+                logger.info("快照解析转换完成，共 " + shards.size() + " 个世界分片、" + shopList.size()
+                        + " 个商店，耗时 " + parseTime + "ms，切回主线程重建缓存...");
+            }
 
-                // 切回主线程重建内存缓存，保证线程安全
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    rebuildCachesOnly(finalShopList);
+            // 切回主线程重建内存缓存，保证线程安全
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (!shards.isEmpty() && shopList.isEmpty()) {
+                    logger.info("商店数据文件为空。");
+                    shards.forEach(shard -> loadedWorlds.add(shard.worldName()));
+                } else if (!shopList.isEmpty()) {
+                    rebuildCachesOnly(shopList, shards.stream().map(LoadedShard::worldName).collect(Collectors.toList()));
+                    if (!journalStocks.isEmpty()) {
+                        applyStockJournal(journalStocks);
+                    }
                     long totalTime = System.currentTimeMillis() - startTime;
-                    logger.info("商店数据加载完成！共加载 " + shopCache.size() + " 个商店，总耗时 " + totalTime + "ms。");
+                    logger.info("商店数据加载完成！共加载 " + index.shops.size() + " 个商店，总耗时 " + totalTime + "ms。");
+                    migrateSnapshotIfNeeded(shards.stream().map(LoadedShard::candidate).collect(Collectors.toList()));
                     // 通知调用方加载已完成（用于触发库存扫描等后续操作）
                     if (onLoaded != null) {
                         onLoaded.run();
                     }
-                });
+                }
+
+            });
+        });
+    }
+
+    /**
+     * 世界加载后绑定该世界，并将其商店加入空间索引（主线程调用）
+     * <p>
+     * 商店在启动加载时已按世界名称全部进入缓存，这里只恢复世界引用和空间索引，不读取磁盘。
+     *
+     * @param world 新加载的世界
+     */
+    public synchronized void onWorldLoaded(World world) {
+        WorldKey.bind(world);
+        int count = editIndex().bindWorld(world.getName());
+        publishIndex();
+        if (count > 0 && configManager.isDebugEnabled()) {
+            logger.info("世界 " + world.getName() + " 已加载，" + count + " 个商店加入空间索引。");
+        }
+    }
+
+    /**
+     * 世界卸载后释放对该世界的引用和它的空间索引（主线程调用）
+     * <p>
+     * 商店仍保留在缓存中，可按物品、店主和坐标查询，位置在世界重新加载前返回 {@code null}；
+     * 全量同步不会移除这些商店。
+     *
+     * @param world 卸载的世界
+     */
+    public synchronized void onWorldUnloaded(World world) {
+        WorldKey.release(world);
+        int released = editIndex().releaseWorld(world.getName());
+        publishIndex();
+        logger.info("世界 " + world.getName() + " 已卸载，释放了 " + released + " 个商店的空间索引。");
+    }
 
+    /**
+     * 拆分旧版快照（如需要），然后并行加载全部世界的分片（在异步线程调用）
+     *
+     * @param plugin        插件实例
+     * @param threadCount   解析线程数
+     * @return 成功加载的分片；无法加载的分片不在其中，保留在磁盘上不会被覆盖
+     */
+    private List<LoadedShard> loadShards(Plugin plugin, int threadCount) {
+        Set<String> shardNames;
+        try {
+            snapshotStore.migrateLegacy(configManager.getSnapshotGenerations());
+            if (store instanceof SqliteShopStore) {
+                importShardsIfEmpty((SqliteShopStore) store);
+            }
+            shardNames = store.worldNames();
+        } catch (IOException e) {
+            logger.severe("准备商店数据失败，保留原文件，将等待 QuickShop 全量同步重建数据: " + e.getMessage());
+            return new ArrayList<>();
+        }
+
+        if (shardNames.isEmpty()) {
+            logger.info("商店数据文件不存在，将在首次同步后创建。");
+            return new ArrayList<>();
+        }
+        List<String> worlds = new ArrayList<>(shardNames);
+
+        // 每个世界一个任务，解析线程在各分片之间平分
+        int shardThreads = Math.max(1, threadCount / worlds.size());
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threadCount, worlds.size()));
+        try {
+            List<Future<LoadedShard>> futures = new ArrayList<>();
+            for (String worldName : worlds) {
+                futures.add(pool.submit(() -> loadShard(plugin, worldName, shardThreads)));
+            }
+            List<LoadedShard> loaded = new ArrayList<>();
+            for (Future<LoadedShard> future : futures) {
+                LoadedShard shard = future.get();
+                if (shard != null) {
+                    loaded.add(shard);
+                }
+            }
+            return loaded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.severe("加载商店数据被中断。");
+            return new ArrayList<>();
+        } catch (ExecutionException e) {
+            logger.severe("加载商店数据时发生错误: " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 加载一个世界分片：从最新的快照开始尝试，损坏时依次回退到上一代，避免退化为等待全量同步的冷启动
+     *
+     * @param plugin        插件实例
+     * @param worldName     世界名称
+     * @param threadCount   解析线程数
+     * @return 加载结果；所有快照均无法加载时返回 {@code null}
+     */
+    private LoadedShard loadShard(Plugin plugin, String worldName, int threadCount) {
+        if (store != snapshotStore) {
+            try {
+                return new LoadedShard(worldName, null, store.loadWorld(worldName));
             } catch (IOException e) {
-                logger.severe("加载商店数据时发生 I/O 错误: " + e.getMessage());
-                e.printStackTrace();
-            } catch (Exception e) {
-                logger.severe("解析商店数据时发生错误: " + e.getMessage());
-                e.printStackTrace();
+                logger.severe("从" + store.getName() + "加载世界 " + worldName + " 的商店失败，将等待 QuickShop 全量同步重建数据: "
+                        + e.getMessage());
+                return null;
             }
-        });
+        }
+        List<SnapshotFiles.Candidate> candidates = snapshotStore.candidates(worldName,
+                SnapshotFormat.fromConfig(configManager.getStorageFormat()));
+        for (SnapshotFiles.Candidate candidate : candidates) {
+            try {
+                List<ShopData> shops = loadSnapshotFile(plugin, candidate.file(), threadCount);
+                if (candidate.generation() > 0) {
+                    logger.warning("已从备份快照 " + candidate.file().getName() + " 恢复世界 " + worldName + " 的商店数据。");
+                }
+                return new LoadedShard(worldName, candidate, shops);
+            } catch (IOException | RuntimeException e) {
+                // 解码损坏的字典下标等也会表现为运行时异常，同样回退
+                logger.warning("分片 " + candidate.file().getName() + " 无法加载（" + e.getMessage()
+                        + "），尝试上一代快照...");
+            }
+        }
+        // 分片保留在磁盘上；同步数据中出现该世界的商店时才会被覆盖
+        logger.severe("世界 " + worldName + " 的所有分片快照均无法加载，将等待 QuickShop 全量同步重建数据。");
+        return null;
+    }
+
+    /**
+     * 数据库为空时导入现有的世界分片（SQLite 后端首次启动，在异步线程调用）
+     * <p>
+     * 导入快照中的原始记录，未加载世界的商店同样保留；分片文件原样留在磁盘上，切换回文件存储时仍可使用。
+     *
+     * @param sqlite 数据库存储
+     * @throws IOException 分片无法读取或写入数据库失败时抛出
+     */
+    private void importShardsIfEmpty(SqliteShopStore sqlite) throws IOException {
+        Set<String> shardNames = snapshotStore.shardNames();
+        if (shardNames.isEmpty() || !sqlite.isEmpty()) {
+            return;
+        }
+        int imported = 0;
+        for (String worldName : shardNames) {
+            Collection<SimpleShopData> records = snapshotStore.readShard(worldName).values();
+            sqlite.importRecords(records);
+            imported += records.size();
+        }
+        logger.info("已将 " + shardNames.size() + " 个世界分片中的 " + imported
+                + " 个商店导入 SQLite 数据库，原分片文件保留不动。");
+    }
+
+    /**
+     * 读取库存日志中每个位置的最新库存，读取失败时返回空表
+     *
+     * @return 位置键到日志记录
+     */
+    private Map<String, StockJournal.Entry> replayStockJournal() {
+        try {
+            return stockJournal.replay();
+        } catch (IOException e) {
+            logger.warning("读取库存日志失败，将忽略日志: " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * 获取快照加载使用的并行线程数
+     *
+     * @return 线程数
+     */
+    private int loadThreadCount() {
+        int configThreads = configManager.getLoadThreads();
+        return (configThreads <= 0)
+                ? Math.max(1, Runtime.getRuntime().availableProcessors() - 2)
+                : configThreads;
     }
 
     /**
@@ -455,51 +1306,84 @@ public class ShopDataManager {
      * 必须在主线程调用。
      *
      * @param shopList 商店数据列表
+     * @param worlds   商店数据来源的分片，重建后由缓存接管
      */
-    private void rebuildCachesOnly(List<ShopData> shopList) {
-        // 清空旧缓存和空间索引
-        clearCache();
+    private synchronized void rebuildCachesOnly(List<ShopData> shopList, Collection<String> worlds) {
+        // 完整缓存在旁边构建后整体替换，惰性视图不再需要
+        lazySnapshots = Collections.emptyList();
+        indexEdits = null;
+        index = ShopIndex.build(shopList);
+        scheduleItemSearch();
+        loadedWorlds.addAll(worlds);
 
-        for (ShopData shopData : shopList) {
-            if (shopData == null) continue;
-
-            // 添加到主缓存
-            shopCache.put(shopData.getShopId(), shopData);
+        this.lastUpdateTime = System.currentTimeMillis();
+        this.isDataLoaded = true;
+        this.cacheBuilt = true;
+    }
 
-            // 添加到物品缓存
-            String itemId = shopData.getItemId();
-            if (itemId != null) {
-                itemCache.computeIfAbsent(itemId.toLowerCase(), k -> new ArrayList<>()).add(shopData);
-            }
+    /**
+     * 将商店加入下一份索引（主缓存、物品缓存、店主缓存、位置索引和空间索引）
+     *
+     * @param shopData 商店数据
+     */
+    private void indexShop(ShopData shopData) {
+        editIndex().add(shopData);
+    }
 
-            // 添加到店主缓存
-            ownerCache.computeIfAbsent(shopData.getOwnerId(), k -> new ArrayList<>()).add(shopData);
+    /**
+     * 将商店从下一份索引中移除（按对象身份，不影响同位置的其他对象）
+     *
+     * @param shopData 缓存中的商店对象
+     */
+    private void unindexShop(ShopData shopData) {
+        editIndex().remove(shopData);
+    }
 
-            // 添加到位置索引（供 StockScanQueue 原地更新库存）
-            String locKey = locationKey(shopData.getLocation());
-            if (locKey != null) {
-                locationIndex.put(locKey, shopData);
-            }
+    /**
+     * 获取下一份索引的修改器，第一次修改时以当前快照为起点创建（写时复制，当前快照不受影响）
+     *
+     * @return 修改器
+     */
+    private ShopIndex.Builder editIndex() {
+        if (indexEdits == null) {
+            indexEdits = index.toBuilder();
+        }
+        return indexEdits;
+    }
 
-            // 添加到空间索引
-            Location shopLocation = shopData.getLocation();
-            if (shopLocation != null && shopLocation.getWorld() != null) {
-                LocationPoint tempPoint = new LocationPoint(
-                    shopData.getShopId().toString(),
-                    "shop_" + shopData.getItemId(),
-                    shopData.getItemId(),
-                    shopLocation.getWorld().getName(),
-                    shopLocation.getX(),
-                    shopLocation.getY(),
-                    shopLocation.getZ(),
-                    "system"
-                );
-                spatialIndex.addLocation(tempPoint);
-            }
+    /**
+     * 发布累积的索引修改：构建不可变快照并一次性替换索引引用（主线程调用）。
+     * 没有未发布的修改时不做任何事。事件同步在处理完一批事件后调用。
+     */
+    public synchronized void publishIndex() {
+        if (indexEdits != null) {
+            index = indexEdits.build();
+            indexEdits = null;
+            scheduleItemSearch();
         }
+    }
 
-        this.lastUpdateTime = System.currentTimeMillis();
-        this.isDataLoaded = true;
+    /**
+     * 当前索引的搜索词条有变化时，安排在后台线程重建物品搜索索引（已安排时不重复提交）。
+     * 重建总是针对执行时的最新索引，期间发布的更早快照不再单独重建。
+     */
+    private void scheduleItemSearch() {
+        if (!index.needsItemSearch() || !itemSearchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            itemSearchExecutor.execute(() -> {
+                // 先清除标记：构建期间发布的新快照会另行安排
+                itemSearchScheduled.set(false);
+                ShopIndex latest = index;
+                if (latest.needsItemSearch()) {
+                    latest.buildItemSearch();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已关闭：查询时按需构建
+            itemSearchScheduled.set(false);
+        }
     }
     
     /**
@@ -516,14 +1400,51 @@ public class ShopDataManager {
     public boolean updateStockByLocation(Location location, int stock) {
         String key = locationKey(location);
         if (key == null) return false;
-        ShopData shopData = locationIndex.get(key);
+        ShopData shopData = index.byLocation.get(key);
         if (shopData != null) {
+            boolean changed = !shopData.isStockKnown() || shopData.getStock() != stock;
+            int oldStock = shopData.isStockKnown() ? shopData.getStock() : -1;
             shopData.setStock(stock); // 同时将 stockKnown 置为 true
+            if (changed) {
+                changeFeed.stockChanged(shopData, oldStock);
+            }
+            // 库存未变化时同样记录扫描时间，重启后新鲜期内的商店无需重新扫描
+            if (store == snapshotStore) {
+                // 只追加一条日志，不重写整份快照
+                stockJournal.append(key, stock);
+                if (stockJournal.markFlushScheduled()) {
+                    persistence.execute(this::flushStockJournal);
+                }
+            } else {
+                // 数据库按行更新，合并后批量写入
+                pendingStocks.put(shopData.getShopId(), shopData);
+                if (stockFlushScheduled.compareAndSet(false, true)) {
+                    persistence.execute(this::flushPendingStocks);
+                }
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * 获取商店变化推送，供下游插件注册监听器
+     *
+     * @return 变化推送
+     */
+    public ShopChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * 获取价格历史，供查询命令使用
+     *
+     * @return 价格历史
+     */
+    public PriceHistory getPriceHistory() {
+        return priceHistory;
+    }
+
     /**
      * 检查数据是否已加载
      *
@@ -548,76 +1469,14 @@ public class ShopDataManager {
      * @return 商店数量
      */
     public int getShopCount() {
-        return shopCache.size();
-    }
-
-    /**
-     * 简化的商店数据类，用于JSON序列化
-     */
-    private static class SimpleShopData {
-        public String shopId;
-        public String itemId;
-        public String itemDisplayName;
-        public String worldName;
-        public double x, y, z;
-        public double price;
-        public String ownerId;
-        public String ownerName;
-        public String shopType;
-        public int stock;
-        public boolean isUnlimited;
-
-        public SimpleShopData() {
-            // 默认构造函数，用于反序列化
-        }
-
-        public SimpleShopData(ShopData shopData) {
-            this.shopId = shopData.getShopId().toString();
-            this.itemId = shopData.getItemId();
-            this.itemDisplayName = shopData.getItemDisplayName();
-
-            Location loc = shopData.getLocation();
-            if (loc != null && loc.getWorld() != null) {
-                this.worldName = loc.getWorld().getName();
-                this.x = loc.getX();
-                this.y = loc.getY();
-                this.z = loc.getZ();
+        List<MappedSnapshotReader> lazy = lazySnapshots;
+        if (!lazy.isEmpty()) {
+            int count = 0;
+            for (MappedSnapshotReader reader : lazy) {
+                count += reader.size();
             }
-
-            this.price = shopData.getPrice();
-            this.ownerId = shopData.getOwnerId().toString();
-            this.ownerName = shopData.getOwnerName();
-            this.shopType = shopData.getShopType().name();
-            this.stock = shopData.getStock();
-            this.isUnlimited = shopData.isUnlimited();
-        }
-
-        /**
-         * 将简化数据转换为 ShopData（使用世界快照，适合在异步线程调用）
-         *
-         * @param worldMap 世界名称到 World 对象的映射快照（主线程提前采集）
-         * @return 完整的 ShopData 对象
-         */
-        public ShopData toShopData(Map<String, World> worldMap) {
-            UUID shopUUID = UUID.fromString(shopId);
-            UUID ownerUUID = UUID.fromString(ownerId);
-
-            Location location = null;
-            if (worldName != null) {
-                World world = worldMap.get(worldName);
-                if (world != null) {
-                    location = new Location(world, x, y, z);
-                }
-            }
-
-            ShopData.ShopType type = ShopData.ShopType.valueOf(shopType);
-
-            return new ShopData(
-                shopUUID, itemId, itemDisplayName, location,
-                price, ownerUUID, ownerName, type, stock, isUnlimited, null
-            );
+            return count;
         }
+        return index.shops.size();
     }
-
-
 }
@@ -0,0 +1,459 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.util.*;
+
+/**
+ * 商店缓存的一组索引：主缓存、物品缓存、店主缓存、位置索引和空间索引
+ * <p>
+ * 索引是不可变快照：构建完成后不再修改，{@link ShopDataManager} 通过一个 volatile 引用整体发布新快照。
+ * 任意线程读取引用后得到的都是一致的视图，不需要加锁，也不会看到清空或重建到一半的索引；
+ * 被替换的旧快照在没有读者后由 GC 回收。
+ * <p>
+ * 修改通过 {@link Builder} 在旁边进行（写时复制）：各映射都是 {@link SegmentedMap}，只复制被修改的段，
+ * 分组也只在被修改时才复制列表，未修改的段和分组在新旧快照之间共享，一批修改的开销与修改量成正比，
+ * 与商店总数无关。
+ * <p>
+ * 快照只共享 {@link ShopData} 对象本身：库存和扫描时间由库存扫描在主线程原地更新，不经过修改器，
+ * 这些字段是 volatile 的，其他线程读取快照时能看到最新值。
+ * <p>
+ * 主缓存、物品、店主和位置索引包含所有商店（含世界未加载的商店）；空间索引只包含已加载世界的商店，
+ * 世界加载/卸载时按世界整体建立或释放。空间索引按区块分组，查询时只检查半径覆盖的区块。
+ *
+ * @author NSrank & Augment
+ */
+final class ShopIndex {
+
+    /** 空索引 */
+    static final ShopIndex EMPTY = new Builder().build();
+
+    final SegmentedMap<UUID, ShopData> shops;
+    final SegmentedMap<String, List<ShopData>> byItem;
+    final SegmentedMap<UUID, List<ShopData>> byOwner;
+    /** 按 "world:blockX:blockY:blockZ" 快速定位 ShopData，供 StockScanQueue 原地更新库存 */
+    final SegmentedMap<String, ShopData> byLocation;
+    /** 世界名称 → 区块键 → 商店，只包含已加载世界的商店 */
+    private final Map<String, SegmentedMap<Long, List<ShopData>>> byChunk;
+    /**
+     * 物品模糊搜索索引，由 {@link #buildItemSearch()} 在后台线程构建；词条集合未变化的后续快照直接沿用。
+     * 词条集合变化后沿用的是上一份索引（新词条暂时查不到），直到后台重建完成
+     */
+    private volatile ItemSearchIndex itemSearch;
+    /** {@link #itemSearch} 的词条集合是否与本快照一致 */
+    private volatile boolean itemSearchCurrent;
+
+    private ShopIndex(SegmentedMap<UUID, ShopData> shops, SegmentedMap<String, List<ShopData>> byItem,
+                      SegmentedMap<UUID, List<ShopData>> byOwner, SegmentedMap<String, ShopData> byLocation,
+                      Map<String, SegmentedMap<Long, List<ShopData>>> byChunk, ItemSearchIndex itemSearch,
+                      boolean itemSearchCurrent) {
+        this.shops = shops;
+        this.byItem = byItem;
+        this.byOwner = byOwner;
+        this.byLocation = byLocation;
+        this.byChunk = byChunk;
+        this.itemSearch = itemSearch;
+        this.itemSearchCurrent = itemSearchCurrent;
+    }
+
+    /**
+     * 由商店列表构建完整索引，可在任意线程调用（只访问新建的对象）
+     *
+     * @param shops 商店数据（商店ID不重复）
+     * @return 新索引
+     */
+    static ShopIndex build(Collection<ShopData> shops) {
+        Builder builder = new Builder();
+        for (ShopData shopData : shops) {
+            if (shopData != null) {
+                builder.add(shopData);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 以当前快照为起点创建修改器，当前快照本身不受影响
+     *
+     * @return 修改器
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * 模糊查找物品ID或显示名称包含查询词的商店
+     *
+     * @param query 查询词
+     * @return 商店列表，按匹配程度排序
+     */
+    List<ShopData> searchItems(String query) {
+        ItemSearchIndex search = itemSearch;
+        if (search == null) {
+            // 还没有任何一份搜索索引（后台尚未构建完成），只能当场构建
+            search = buildItemSearch();
+        }
+        return search.search(query, byItem);
+    }
+
+    /**
+     * 搜索索引的词条集合是否落后于本快照，需要调用 {@link #buildItemSearch()}
+     *
+     * @return 需要重建返回 {@code true}
+     */
+    boolean needsItemSearch() {
+        return !itemSearchCurrent;
+    }
+
+    /**
+     * 按本快照的物品分组构建搜索索引，可在任意线程调用（应在后台线程调用）
+     *
+     * @return 新的搜索索引
+     */
+    ItemSearchIndex buildItemSearch() {
+        // 多个线程同时构建时结果相同，保留任意一份即可
+        ItemSearchIndex search = ItemSearchIndex.build(byItem);
+        itemSearch = search;
+        itemSearchCurrent = true;
+        return search;
+    }
+
+    /**
+     * 查找指定半径内的商店（只包含已加载世界的商店）
+     *
+     * @param worldName 世界名称
+     * @param x         中心X
+     * @param y         中心Y
+     * @param z         中心Z
+     * @param radius    搜索半径
+     * @return 范围内的商店，按距离排序
+     */
+    List<ShopData> findNearby(String worldName, double x, double y, double z, double radius) {
+        SegmentedMap<Long, List<ShopData>> chunks = byChunk.get(worldName);
+        if (chunks == null || radius < 0) {
+            return new ArrayList<>();
+        }
+        int minChunkX = (int) Math.floor(x - radius) >> 4;
+        int maxChunkX = (int) Math.floor(x + radius) >> 4;
+        int minChunkZ = (int) Math.floor(z - radius) >> 4;
+        int maxChunkZ = (int) Math.floor(z + radius) >> 4;
+        double radiusSquared = radius * radius;
+
+        List<ShopData> result = new ArrayList<>();
+        long area = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (area > chunks.size()) {
+            // 半径覆盖的区块比有商店的区块还多，直接遍历有商店的区块
+            for (Map.Entry<Long, List<ShopData>> entry : chunks.entrySet()) {
+                int chunkX = (int) (entry.getKey() >> 32);
+                int chunkZ = (int) (long) entry.getKey();
+                if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ) {
+                    collectWithin(entry.getValue(), x, y, z, radiusSquared, result);
+                }
+            }
+        } else {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    List<ShopData> bucket = chunks.get(chunkKey(chunkX, chunkZ));
+                    if (bucket != null) {
+                        collectWithin(bucket, x, y, z, radiusSquared, result);
+                    }
+                }
+            }
+        }
+        result.sort(Comparator.comparingDouble(shop -> distanceSquared(shop, x, y, z)));
+        return result;
+    }
+
+    private static void collectWithin(List<ShopData> bucket, double x, double y, double z,
+                                      double radiusSquared, List<ShopData> result) {
+        for (ShopData shop : bucket) {
+            if (distanceSquared(shop, x, y, z) <= radiusSquared) {
+                result.add(shop);
+            }
+        }
+    }
+
+    private static double distanceSquared(ShopData shop, double x, double y, double z) {
+        double dx = shop.getX() - x;
+        double dy = shop.getY() - y;
+        double dz = shop.getZ() - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static long chunkKey(ShopData shopData) {
+        return chunkKey(shopData.getBlockX() >> 4, shopData.getBlockZ() >> 4);
+    }
+
+    /**
+     * 索引修改器：在旁边构建下一份快照，只由一个线程使用，{@link #build()} 后不再使用
+     */
+    static final class Builder {
+
+        private final SegmentedMap.Editor<UUID, ShopData> shops;
+        private final Buckets<String> byItem;
+        private final Buckets<UUID> byOwner;
+        private final SegmentedMap.Editor<String, ShopData> byLocation;
+        private final Map<String, SegmentedMap<Long, List<ShopData>>> sourceChunks;
+        private final ItemSearchIndex sourceItemSearch;
+        private final boolean sourceItemSearchCurrent;
+        /** 是否新增或移除了搜索词条（物品ID或自定义显示名称） */
+        private boolean termsChanged;
+        /** 已修改过的世界的区块分组 */
+        private final Map<String, Buckets<Long>> chunkEdits = new HashMap<>();
+
+        private Builder() {
+            this(new ShopIndex(SegmentedMap.empty(), SegmentedMap.empty(), SegmentedMap.empty(),
+                    SegmentedMap.empty(), Collections.emptyMap(), null, false));
+        }
+
+        private Builder(ShopIndex source) {
+            this.shops = source.shops.edit();
+            this.byItem = new Buckets<>(source.byItem);
+            this.byOwner = new Buckets<>(source.byOwner);
+            this.byLocation = source.byLocation.edit();
+            this.sourceChunks = source.byChunk;
+            this.sourceItemSearch = source.itemSearch;
+            this.sourceItemSearchCurrent = source.itemSearchCurrent;
+        }
+
+        /**
+         * 按商店ID查找
+         *
+         * @param shopId 商店ID
+         * @return 商店数据，不存在时返回 {@code null}
+         */
+        ShopData get(UUID shopId) {
+            return shops.get(shopId);
+        }
+
+        /**
+         * 按位置键查找
+         *
+         * @param locationKey 位置键
+         * @return 商店数据，不存在时返回 {@code null}
+         */
+        ShopData at(String locationKey) {
+            return locationKey == null ? null : byLocation.get(locationKey);
+        }
+
+        /**
+         * 将商店加入各索引
+         *
+         * @param shopData 商店数据
+         * @return 修改器本身
+         */
+        Builder add(ShopData shopData) {
+            shops.put(shopData.getShopId(), shopData);
+
+            String itemId = shopData.getItemId();
+            if (itemId != null) {
+                String itemKey = itemId.toLowerCase();
+                if (!termsChanged && !hasTerms(itemKey, shopData)) {
+                    termsChanged = true;
+                }
+                byItem.add(itemKey, shopData);
+            }
+
+            byOwner.add(shopData.getOwnerId(), shopData);
+
+            String locKey = shopData.getLocationKey();
+            if (locKey != null) {
+                byLocation.put(locKey, shopData);
+            }
+
+            if (shopData.isWorldLoaded()) {
+                chunks(shopData.getWorldName()).add(chunkKey(shopData), shopData);
+            }
+            return this;
+        }
+
+        /**
+         * 将商店从各索引中移除（按对象身份，不影响同位置的其他对象）
+         *
+         * @param shopData 索引中的商店对象
+         * @return 修改器本身
+         */
+        Builder remove(ShopData shopData) {
+            shops.remove(shopData.getShopId(), shopData);
+
+            String itemId = shopData.getItemId();
+            if (itemId != null) {
+                String itemKey = itemId.toLowerCase();
+                if (byItem.remove(itemKey, shopData) && !termsChanged && !hasTerms(itemKey, shopData)) {
+                    termsChanged = true;
+                }
+            }
+            byOwner.remove(shopData.getOwnerId(), shopData);
+
+            String locKey = shopData.getLocationKey();
+            if (locKey != null) {
+                byLocation.remove(locKey, shopData);
+            }
+
+            String worldName = shopData.getWorldName();
+            if (worldName != null && (chunkEdits.containsKey(worldName) || sourceChunks.containsKey(worldName))) {
+                chunks(worldName).remove(chunkKey(shopData), shopData);
+            }
+            return this;
+        }
+
+        /**
+         * 世界加载后将该世界的商店加入空间索引
+         *
+         * @param worldName 世界名称
+         * @return 加入的商店数量
+         */
+        int bindWorld(String worldName) {
+            Buckets<Long> grid = new Buckets<>(SegmentedMap.empty());
+            int count = 0;
+            for (ShopData shopData : shops.values()) {
+                if (worldName.equals(shopData.getWorldName())) {
+                    grid.add(chunkKey(shopData), shopData);
+                    count++;
+                }
+            }
+            chunkEdits.put(worldName, grid);
+            return count;
+        }
+
+        /**
+         * 世界卸载后释放该世界的空间索引，商店本身仍保留在其他索引中
+         *
+         * @param worldName 世界名称
+         * @return 释放的商店数量
+         */
+        int releaseWorld(String worldName) {
+            int count = chunks(worldName).size();
+            chunkEdits.put(worldName, new Buckets<>(SegmentedMap.empty()));
+            return count;
+        }
+
+        /**
+         * 构建不可变快照
+         *
+         * @return 新索引
+         */
+        ShopIndex build() {
+            Map<String, SegmentedMap<Long, List<ShopData>>> byChunk = sourceChunks;
+            if (!chunkEdits.isEmpty()) {
+                // 世界数量很少，外层映射直接复制
+                byChunk = new HashMap<>(sourceChunks);
+                for (Map.Entry<String, Buckets<Long>> entry : chunkEdits.entrySet()) {
+                    SegmentedMap<Long, List<ShopData>> grid = entry.getValue().freeze();
+                    if (grid.isEmpty()) {
+                        byChunk.remove(entry.getKey());
+                    } else {
+                        byChunk.put(entry.getKey(), grid);
+                    }
+                }
+                byChunk = Collections.unmodifiableMap(byChunk);
+            }
+            return new ShopIndex(shops.build(), byItem.freeze(), byOwner.freeze(),
+                    byLocation.build(), byChunk, sourceItemSearch, sourceItemSearchCurrent && !termsChanged);
+        }
+
+        /**
+         * 检查物品分组中的其他商店是否已提供该商店的全部搜索词条（物品ID和自定义显示名称）
+         */
+        private boolean hasTerms(String itemKey, ShopData shopData) {
+            List<ShopData> bucket = byItem.get(itemKey);
+            if (bucket == null) {
+                return false;
+            }
+            String displayTerm = ItemSearchIndex.displayTerm(shopData);
+            if (displayTerm == null) {
+                return true;
+            }
+            for (ShopData shop : bucket) {
+                if (shop != shopData && displayTerm.equals(ItemSearchIndex.displayTerm(shop))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Buckets<Long> chunks(String worldName) {
+            return chunkEdits.computeIfAbsent(worldName,
+                    name -> new Buckets<>(sourceChunks.getOrDefault(name, SegmentedMap.empty())));
+        }
+    }
+
+    /**
+     * 写时复制的分组映射：映射只复制被修改的段，分组列表在第一次修改时才复制，未修改的分组与原快照共享
+     */
+    private static final class Buckets<K> {
+
+        private final SegmentedMap.Editor<K, List<ShopData>> map;
+        /** 已复制为可修改列表的分组 */
+        private final Set<K> owned = new HashSet<>();
+
+        Buckets(SegmentedMap<K, List<ShopData>> source) {
+            this.map = source.edit();
+        }
+
+        List<ShopData> get(K key) {
+            return map.get(key);
+        }
+
+        void add(K key, ShopData shopData) {
+            mutable(key).add(shopData);
+        }
+
+        /**
+         * 按对象身份移除，分组为空时一并移除
+         *
+         * @return 移除了返回 {@code true}
+         */
+        boolean remove(K key, ShopData shopData) {
+            List<ShopData> bucket = map.get(key);
+            if (bucket == null || !containsIdentity(bucket, shopData)) {
+                return false;
+            }
+            bucket = mutable(key);
+            bucket.removeIf(shop -> shop == shopData);
+            if (bucket.isEmpty()) {
+                map.remove(key);
+                owned.remove(key);
+            }
+            return true;
+        }
+
+        int size() {
+            int count = 0;
+            for (List<ShopData> bucket : map.values()) {
+                count += bucket.size();
+            }
+            return count;
+        }
+
+        SegmentedMap<K, List<ShopData>> freeze() {
+            for (K key : owned) {
+                map.put(key, Collections.unmodifiableList(map.get(key)));
+            }
+            owned.clear();
+            return map.build();
+        }
+
+        private List<ShopData> mutable(K key) {
+            List<ShopData> bucket = map.get(key);
+            if (owned.add(key)) {
+                bucket = bucket == null ? new ArrayList<>() : new ArrayList<>(bucket);
+                map.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        private static boolean containsIdentity(List<ShopData> bucket, ShopData shopData) {
+            for (ShopData shop : bucket) {
+                if (shop == shopData) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
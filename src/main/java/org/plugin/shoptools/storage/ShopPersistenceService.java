@@ -0,0 +1,127 @@
+package org.plugin.shoptools.storage;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * 商店快照的后台写入服务（write-behind）
+ * <p>
+ * 调用方只负责标记脏数据并请求保存，真正的写盘由专用的后台线程完成：
+ * 首次请求后等待一个合并窗口，窗口内的所有请求合并为一次写入；没有脏数据时跳过写入。
+ * 所有快照写入（包括格式迁移）都在同一线程串行执行，不会出现两个线程同时写同一个文件。
+ *
+ * @author NSrank & Augment
+ */
+final class ShopPersistenceService {
+
+    private final Logger logger;
+    private final BooleanSupplier snapshotWriter;
+    private final long saveDelay;
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 自上次写入以来缓存是否有变化。快照总是整份重写，不需要逐个记录变化的商店；
+     * 库存变化由库存日志追加，不经过这里
+     */
+    private volatile boolean allDirty = false;
+    /** 是否已有等待中的合并写入 */
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+
+    /**
+     * 构造写入服务
+     *
+     * @param snapshotWriter 写出完整快照的操作，成功返回 {@code true}（在后台线程调用）
+     * @param saveDelay      合并窗口（毫秒）
+     * @param logger         日志记录器
+     */
+    ShopPersistenceService(BooleanSupplier snapshotWriter, long saveDelay, Logger logger) {
+        this.snapshotWriter = snapshotWriter;
+        this.saveDelay = Math.max(0L, saveDelay);
+        this.logger = logger;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ShopTools-Persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 关闭时丢弃尚未到期的合并写入，由 shutdown() 立即补写一次
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * 标记缓存已变化，下一次写入时重写整份快照
+     */
+    void markAllDirty() {
+        allDirty = true;
+    }
+
+    /**
+     * 请求保存：存在脏数据时在合并窗口结束后写入，窗口内的重复请求被合并。
+     * 不阻塞调用线程，可在主线程调用。
+     */
+    void requestSave() {
+        if (!hasPendingChanges() || executor.isShutdown()) {
+            return;
+        }
+        if (saveScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flushPending, saveDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 在写入线程上执行任务，与快照写入串行
+     *
+     * @param task 任务
+     */
+    void execute(Runnable task) {
+        if (!executor.isShutdown()) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * 停止服务：立即写入尚未保存的变更，并等待写入线程结束
+     *
+     * @param timeoutMillis 最长等待时间（毫秒）
+     */
+    void shutdown(long timeoutMillis) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(this::flushPending);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("等待商店快照写入超时，部分变更可能未保存。");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warning("等待商店快照写入时被中断，部分变更可能未保存。");
+        }
+    }
+
+    private boolean hasPendingChanges() {
+        return allDirty;
+    }
+
+    /**
+     * 写入累积的变更（仅在写入线程执行）
+     */
+    private void flushPending() {
+        // 先清除调度标记：写入期间到达的新请求会另行安排下一次写入
+        saveScheduled.set(false);
+        if (!hasPendingChanges()) {
+            return;
+        }
+
+        allDirty = false;
+
+        if (!snapshotWriter.getAsBoolean()) {
+            // 写入失败：保留脏标记，等待下一个合并窗口重试
+            allDirty = true;
+            requestSave();
+        }
+    }
+}
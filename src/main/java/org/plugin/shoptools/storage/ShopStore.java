@@ -0,0 +1,117 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 商店数据持久化后端
+ * <p>
+ * 以世界为加载与整体替换的单位，同时支持单个商店的增删、库存更新以及按物品、店主、区域的查询。
+ * 写操作只在后台写入线程调用；查询方法可在任意线程调用，不需要先把全部数据加载到内存。
+ * <p>
+ * 返回的 {@link ShopData} 只记录世界名称和坐标，不要求世界已加载，世界按需解析。
+ *
+ * @author NSrank & Augment
+ */
+public interface ShopStore {
+
+    /**
+     * 获取存储名称，用于日志
+     *
+     * @return 存储名称
+     */
+    String getName();
+
+    /**
+     * 列出存有商店的世界
+     *
+     * @return 世界名称
+     * @throws IOException 读取失败时抛出
+     */
+    Set<String> worldNames() throws IOException;
+
+    /**
+     * 加载一个世界的全部商店
+     *
+     * @param worldName     世界名称
+     * @return 商店数据列表
+     * @throws IOException 读取失败或数据损坏时抛出
+     */
+    List<ShopData> loadWorld(String worldName) throws IOException;
+
+    /**
+     * 整体替换若干世界的商店：写入给定的商店，删除这些世界中不在给定列表里的商店。
+     * 未出现在参数中的世界保持原样。
+     *
+     * @param shopsByWorld 世界名称到该世界全部商店的映射（列表可以为空）
+     * @throws IOException 写入失败时抛出
+     */
+    void saveWorlds(Map<String, List<ShopData>> shopsByWorld) throws IOException;
+
+    /**
+     * 插入或更新商店
+     *
+     * @param shops 商店数据（没有世界的商店会被忽略）
+     * @throws IOException 写入失败时抛出
+     */
+    void upsert(Collection<ShopData> shops) throws IOException;
+
+    /**
+     * 删除商店
+     *
+     * @param shopIds 商店ID
+     * @throws IOException 写入失败时抛出
+     */
+    void delete(Collection<UUID> shopIds) throws IOException;
+
+    /**
+     * 更新商店的库存、库存确认标志与扫描时间
+     *
+     * @param shops 库存已变化的商店
+     * @throws IOException 写入失败时抛出
+     */
+    void updateStocks(Collection<ShopData> shops) throws IOException;
+
+    /**
+     * 按物品ID查询：先精确匹配，没有结果时按包含关系模糊匹配
+     *
+     * @param normalizedItemId 小写并去除首尾空格的物品ID
+     * @return 商店数据列表
+     * @throws IOException 读取失败时抛出
+     */
+    List<ShopData> findByItem(String normalizedItemId) throws IOException;
+
+    /**
+     * 按店主UUID查询
+     *
+     * @param ownerId       店主UUID
+     * @return 商店数据列表
+     * @throws IOException 读取失败时抛出
+     */
+    List<ShopData> findByOwner(UUID ownerId) throws IOException;
+
+    /**
+     * 查询水平矩形区域内的商店（边界包含在内）
+     *
+     * @param worldName     世界名称
+     * @param minX          最小 X
+     * @param minZ          最小 Z
+     * @param maxX          最大 X
+     * @param maxZ          最大 Z
+     * @return 商店数据列表
+     * @throws IOException 读取失败时抛出
+     */
+    List<ShopData> findInRegion(String worldName, double minX, double minZ, double maxX, double maxZ)
+            throws IOException;
+
+    /**
+     * 关闭存储，释放文件句柄或数据库连接
+     */
+    void close();
+}
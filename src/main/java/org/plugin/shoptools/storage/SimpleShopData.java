@@ -0,0 +1,101 @@
+package org.plugin.shoptools.storage;
+
+import org.bukkit.World;
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.model.WorldKey;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * 简化的商店数据类，用于快照序列化
+ * <p>
+ * 只包含基础类型字段，不持有 {@link World} 引用，
+ * 供 JSON 与二进制快照编解码器共用。
+ *
+ * @author NSrank & Augment
+ */
+class SimpleShopData {
+    public String shopId;
+    public String itemId;
+    public String itemDisplayName;
+    public String worldName;
+    public double x, y, z;
+    public double price;
+    public String ownerId;
+    public String ownerName;
+    public String shopType;
+    public int stock;
+    public boolean isUnlimited;
+    public boolean stockKnown;
+    public long lastScanned;
+
+    public SimpleShopData() {
+        // 默认构造函数，用于反序列化
+    }
+
+    public SimpleShopData(ShopData shopData) {
+        this.shopId = shopData.getShopId().toString();
+        this.itemId = shopData.getItemId();
+        this.itemDisplayName = shopData.getItemDisplayName();
+
+        this.worldName = shopData.getWorldName();
+        this.x = shopData.getX();
+        this.y = shopData.getY();
+        this.z = shopData.getZ();
+
+        this.price = shopData.getPrice();
+        this.ownerId = shopData.getOwnerId().toString();
+        this.ownerName = shopData.getOwnerName();
+        this.shopType = shopData.getShopType().name();
+        this.stock = shopData.getStock();
+        this.isUnlimited = shopData.isUnlimited();
+        this.stockKnown = shopData.isStockKnown();
+        this.lastScanned = shopData.getLastScanned();
+    }
+
+    /**
+     * 创建惰性转换视图：遍历时才逐个构造 SimpleShopData，避免为写快照复制整份数据
+     *
+     * @param shops 商店数据
+     * @return 可重复遍历的简化数据视图
+     */
+    static Iterable<SimpleShopData> view(Collection<ShopData> shops) {
+        return () -> new Iterator<SimpleShopData>() {
+            private final Iterator<ShopData> source = shops.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public SimpleShopData next() {
+                return new SimpleShopData(source.next());
+            }
+        };
+    }
+
+    /**
+     * 将简化数据转换为 ShopData（不访问 Bukkit API，适合在异步线程调用）。
+     * 只记录世界名称，世界未加载的商店同样保留，世界在使用位置时按需解析。
+     *
+     * @return 完整的 ShopData 对象
+     */
+    public ShopData toShopData() {
+        UUID shopUUID = UUID.fromString(shopId);
+        UUID ownerUUID = UUID.fromString(ownerId);
+
+        ShopData.ShopType type = ShopData.ShopType.valueOf(shopType);
+
+        ShopData shopData = new ShopData(
+            shopUUID, itemId, itemDisplayName, WorldKey.of(worldName), x, y, z,
+            price, ownerUUID, ownerName, type, stock, isUnlimited, null
+        );
+        if (stockKnown) {
+            shopData.setStock(stock, lastScanned);
+        }
+        return shopData;
+    }
+}
@@ -0,0 +1,263 @@
+package org.plugin.shoptools.storage;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 快照文件的崩溃安全写入与多代备份
+ * <p>
+ * 写入流程：写入临时文件 → fsync → 轮换旧快照为 {@code .1 .. .N} 代 → 原子重命名为正式文件。
+ * 写入中途崩溃或被强制结束只会留下不完整的临时文件，正式文件与历代备份均不受影响。
+ * 二进制快照末尾附加 CRC32 校验尾，加载时可识别内容损坏的文件并回退到上一代。
+ * JSON 快照不附加校验尾（保持为合法 JSON），由完整解析来验证。
+ *
+ * <h3>校验尾（二进制快照）</h3>
+ * <pre>
+ * int   魔数 "STCK"
+ * long  此前全部字节的 CRC32
+ * </pre>
+ *
+ * @author NSrank & Augment
+ */
+public final class SnapshotFiles {
+
+    /** 校验尾魔数 "STCK"（ShopTools Checksum） */
+    static final int FOOTER_MAGIC = 0x5354434B;
+
+    /** 校验尾字节数 */
+    static final int FOOTER_SIZE = 4 + 8;
+
+    private final File dataFolder;
+    private final int generations;
+
+    /**
+     * 快照内容写出操作
+     */
+    @FunctionalInterface
+    interface ContentWriter {
+        /**
+         * 将快照内容写入输出流（无需关闭）
+         *
+         * @param out 输出流
+         * @throws IOException 写入失败时抛出
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 可加载的快照文件
+     *
+     * @param file       文件
+     * @param format     所属格式（按文件名判断）
+     * @param generation 代数，0 表示当前快照，1 表示上一代，以此类推
+     */
+    record Candidate(File file, SnapshotFormat format, int generation) {}
+
+    /**
+     * 构造快照文件管理器
+     *
+     * @param dataFolder  数据文件夹
+     * @param generations 保留的历史快照代数（0 表示不保留）
+     */
+    SnapshotFiles(File dataFolder, int generations) {
+        this.dataFolder = dataFolder;
+        this.generations = Math.max(0, generations);
+    }
+
+    /**
+     * 崩溃安全地写出快照
+     *
+     * @param baseName 不含扩展名的快照名称
+     * @param format   快照格式
+     * @param writer   内容写出操作
+     * @return 写入完成的正式文件
+     * @throws IOException 写入、同步或重命名失败时抛出（此时正式文件保持原样）
+     */
+    File write(String baseName, SnapshotFormat format, ContentWriter writer) throws IOException {
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        File target = new File(dataFolder, format.fileName(baseName));
+        File temp = new File(dataFolder, format.fileName(baseName) + ".tmp");
+
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            if (format == SnapshotFormat.BINARY) {
+                CRC32 crc = new CRC32();
+                CheckedOutputStream checked = new CheckedOutputStream(fileOut, crc);
+                writer.write(checked);
+                checked.flush();
+                DataOutputStream footer = new DataOutputStream(fileOut);
+                footer.writeInt(FOOTER_MAGIC);
+                footer.writeLong(crc.getValue());
+                footer.flush();
+            } else {
+                writer.write(fileOut);
+                fileOut.flush();
+            }
+            // 确认数据已落盘后才替换正式文件
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        rotateGenerations(target);
+        replace(temp, target);
+        return target;
+    }
+
+    /**
+     * 用已落盘的临时文件替换正式文件：优先原子重命名，文件系统不支持时退回普通替换，
+     * 完成后同步所在目录，使重命名本身也落盘
+     *
+     * @param temp   已写入并 fsync 的临时文件（与正式文件位于同一目录）
+     * @param target 正式文件
+     * @throws IOException 重命名失败时抛出（此时正式文件保持原样）
+     */
+    public static void replace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * 按加载优先级列出现有的快照文件：首选格式的当前快照及历代备份，然后是另一种格式
+     *
+     * @param baseName  不含扩展名的快照名称
+     * @param preferred 配置的快照格式
+     * @return 存在的候选文件，越靠前越新
+     */
+    List<Candidate> candidates(String baseName, SnapshotFormat preferred) {
+        List<Candidate> result = new ArrayList<>();
+        addCandidates(result, baseName, preferred);
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            if (format != preferred) {
+                addCandidates(result, baseName, format);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 列出目录中存在快照（当前快照或任一代备份）的名称
+     *
+     * @return 不含扩展名的快照名称
+     */
+    Set<String> baseNames() {
+        Set<String> names = new TreeSet<>();
+        String[] files = dataFolder.list();
+        if (files == null) {
+            return names;
+        }
+        for (String file : files) {
+            for (SnapshotFormat format : SnapshotFormat.values()) {
+                int index = file.lastIndexOf(format.getExtension());
+                if (index <= 0) {
+                    continue;
+                }
+                String suffix = file.substring(index + format.getExtension().length());
+                // 只接受 "名称.dat" 与 "名称.dat.N"，忽略 .tmp、.bak 等
+                if (suffix.isEmpty() || suffix.matches("\\.\\d+")) {
+                    names.add(file.substring(0, index));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 校验二进制快照的 CRC32 校验尾
+     * <p>
+     * 没有校验尾的文件（旧版本写出的快照、JSON 快照）视为无法校验，直接通过，由解析过程验证。
+     *
+     * @param file 快照文件
+     * @throws IOException 校验不一致或读取失败时抛出
+     */
+    static void verify(File file) throws IOException {
+        long length = file.length();
+        if (length < FOOTER_SIZE) {
+            return;
+        }
+        long contentLength = length - FOOTER_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(contentLength);
+            if (raf.readInt() != FOOTER_MAGIC) {
+                return;
+            }
+            long expected = raf.readLong();
+
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[64 * 1024];
+            raf.seek(0);
+            long remaining = contentLength;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("快照文件提前结束");
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            if (crc.getValue() != expected) {
+                throw new IOException("快照校验和不一致，文件已损坏");
+            }
+        }
+    }
+
+    private void addCandidates(List<Candidate> result, String baseName, SnapshotFormat format) {
+        for (int generation = 0; generation <= generations; generation++) {
+            File file = generationFile(format.fileName(baseName), generation);
+            if (file.isFile()) {
+                result.add(new Candidate(file, format, generation));
+            }
+        }
+    }
+
+    private File generationFile(String fileName, int generation) {
+        return new File(dataFolder, generation == 0 ? fileName : fileName + "." + generation);
+    }
+
+    /**
+     * 将当前快照依次后移一代，超出保留代数的最旧快照被删除
+     */
+    private void rotateGenerations(File target) throws IOException {
+        if (generations == 0 || !target.exists()) {
+            return;
+        }
+        String fileName = target.getName();
+        Files.deleteIfExists(generationFile(fileName, generations).toPath());
+        for (int generation = generations - 1; generation >= 1; generation--) {
+            File older = generationFile(fileName, generation);
+            if (older.exists()) {
+                Files.move(older.toPath(), generationFile(fileName, generation + 1).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(target.toPath(), generationFile(fileName, 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 同步目录项，使重命名本身也落盘（部分平台不支持，失败时忽略）
+     */
+    private static void syncDirectory(File folder) {
+        try (FileChannel directory = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // Windows 等平台无法打开目录，重命名仍然是原子的
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.util.CompressionUtil;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * 商店快照文件格式
+ * <p>
+ * 通过文件头的魔数自动识别格式，旧版 shops.json 无需任何标记即可被正确识别。
+ * GZIP 压缩的文件先解压文件头再识别，扩展名只表示内容格式。
+ *
+ * @author NSrank & Augment
+ */
+enum SnapshotFormat {
+
+    /** 旧版格式：Gson 输出的 JSON 数组 */
+    JSON(".json"),
+
+    /** 版本化二进制格式：字符串字典 + 定长记录，见 {@link BinarySnapshotCodec} */
+    BINARY(".dat");
+
+    private final String extension;
+
+    SnapshotFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * 获取该格式的文件扩展名
+     *
+     * @return 扩展名（含点号）
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * 获取该格式下的快照文件名
+     *
+     * @param baseName 不含扩展名的名称（如 shops、世界名称）
+     * @return 文件名
+     */
+    public String fileName(String baseName) {
+        return baseName + extension;
+    }
+
+    /**
+     * 从配置值解析格式，无法识别时回退为二进制格式
+     *
+     * @param value 配置值（json / binary）
+     * @return 快照格式
+     */
+    public static SnapshotFormat fromConfig(String value) {
+        if (value != null && value.trim().equalsIgnoreCase("json")) {
+            return JSON;
+        }
+        return BINARY;
+    }
+
+    /**
+     * 读取文件头判断快照格式（压缩文件按解压后的内容判断）
+     *
+     * @param file 快照文件
+     * @return 文件头为二进制魔数时返回 {@link #BINARY}，否则视为 {@link #JSON}
+     * @throws IOException 读取文件失败时抛出
+     */
+    public static SnapshotFormat detect(File file) throws IOException {
+        if (file.length() < 4) {
+            return JSON;
+        }
+        try (DataInputStream in = new DataInputStream(CompressionUtil.decompress(new FileInputStream(file)))) {
+            return in.readInt() == BinarySnapshotCodec.MAGIC ? BINARY : JSON;
+        } catch (EOFException e) {
+            return JSON;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package org.plugin.shoptools.storage;
+
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 基于嵌入式 SQLite 数据库的商店存储
+ * <p>
+ * 数据保存在插件目录下的单个数据库文件中，不需要外部数据库服务。
+ * 物品、店主和 (世界, x, z) 均建有索引，查询只读取命中的行，无需把全部商店加载到内存；
+ * 写入使用预编译语句分批提交，整体替换一个世界时只更新变化的行并删除已消失的商店。
+ * <p>
+ * 所有方法共用同一个连接并串行执行，可在任意线程调用。
+ * 运行时依赖服务端自带的 sqlite-jdbc 驱动（Paper / Spigot 均已内置）。
+ *
+ * @author NSrank & Augment
+ */
+final class SqliteShopStore implements ShopStore {
+
+    /** 数据库文件名 */
+    static final String FILE_NAME = "shops.db";
+
+    /** 每批提交的语句数 */
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String COLUMNS = "id, item_id, item_key, item_name, world, x, y, z, price, "
+            + "owner_id, owner_name, shop_type, stock, unlimited, stock_known, last_scanned";
+
+    private static final String UPSERT_SQL = "INSERT INTO shops (" + COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT(id) DO UPDATE SET item_id = excluded.item_id, item_key = excluded.item_key, "
+            + "item_name = excluded.item_name, world = excluded.world, x = excluded.x, y = excluded.y, "
+            + "z = excluded.z, price = excluded.price, owner_id = excluded.owner_id, "
+            + "owner_name = excluded.owner_name, shop_type = excluded.shop_type, stock = excluded.stock, "
+            + "unlimited = excluded.unlimited, stock_known = excluded.stock_known, "
+            + "last_scanned = excluded.last_scanned";
+
+    private final Connection connection;
+
+    private SqliteShopStore(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * 打开（必要时创建）数据库并初始化表结构
+     *
+     * @param dataFolder 插件数据文件夹
+     * @return 存储实例
+     * @throws IOException 驱动不可用或数据库无法打开时抛出
+     */
+    static SqliteShopStore open(File dataFolder) throws IOException {
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        File file = new File(dataFolder, FILE_NAME);
+        try {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                // WAL 模式下读写互不阻塞，NORMAL 同步级别在 WAL 下仍能保证崩溃后数据库一致
+                statement.execute("PRAGMA journal_mode = WAL");
+                statement.execute("PRAGMA synchronous = NORMAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS shops ("
+                        + "id TEXT PRIMARY KEY, item_id TEXT NOT NULL, item_key TEXT NOT NULL, item_name TEXT, "
+                        + "world TEXT NOT NULL, x REAL NOT NULL, y REAL NOT NULL, z REAL NOT NULL, "
+                        + "price REAL NOT NULL, owner_id TEXT NOT NULL, owner_name TEXT, shop_type TEXT NOT NULL, "
+                        + "stock INTEGER NOT NULL, unlimited INTEGER NOT NULL, "
+                        + "stock_known INTEGER NOT NULL DEFAULT 0, last_scanned INTEGER NOT NULL DEFAULT 0)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_shops_item ON shops (item_key)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_shops_owner ON shops (owner_id)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_shops_region ON shops (world, x, z)");
+            }
+            return new SqliteShopStore(connection);
+        } catch (SQLException e) {
+            throw new IOException("无法打开商店数据库 " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "SQLite 数据库";
+    }
+
+    @Override
+    public synchronized Set<String> worldNames() throws IOException {
+        Set<String> worlds = new TreeSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT DISTINCT world FROM shops")) {
+            while (rows.next()) {
+                worlds.add(rows.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("读取世界列表失败: " + e.getMessage(), e);
+        }
+        return worlds;
+    }
+
+    @Override
+    public List<ShopData> loadWorld(String worldName) throws IOException {
+        return query("SELECT " + COLUMNS + " FROM shops WHERE world = ?", worldName);
+    }
+
+    @Override
+    public synchronized void saveWorlds(Map<String, List<ShopData>> shopsByWorld) throws IOException {
+        inTransaction(() -> {
+            for (Map.Entry<String, List<ShopData>> entry : shopsByWorld.entrySet()) {
+                // 先取出该世界现有的商店ID，写入后删除本次不再出现的商店
+                Set<String> stale = new HashSet<>();
+                try (PreparedStatement select = connection.prepareStatement("SELECT id FROM shops WHERE world = ?")) {
+                    select.setString(1, entry.getKey());
+                    try (ResultSet rows = select.executeQuery()) {
+                        while (rows.next()) {
+                            stale.add(rows.getString(1));
+                        }
+                    }
+                }
+                List<SimpleShopData> records = toRecords(entry.getValue());
+                for (SimpleShopData record : records) {
+                    stale.remove(record.shopId);
+                }
+                upsertRecords(records);
+                deleteIds(stale);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void upsert(Collection<ShopData> shops) throws IOException {
+        List<SimpleShopData> records = toRecords(shops);
+        inTransaction(() -> upsertRecords(records));
+    }
+
+    /**
+     * 导入快照中的原始记录（不依赖世界是否已加载），用于从文件存储迁移
+     *
+     * @param records 快照记录（没有世界的记录会被忽略）
+     * @throws IOException 写入失败时抛出
+     */
+    synchronized void importRecords(Collection<SimpleShopData> records) throws IOException {
+        List<SimpleShopData> valid = new ArrayList<>();
+        for (SimpleShopData record : records) {
+            if (record.worldName != null) {
+                valid.add(record);
+            }
+        }
+        inTransaction(() -> upsertRecords(valid));
+    }
+
+    @Override
+    public synchronized void delete(Collection<UUID> shopIds) throws IOException {
+        List<String> ids = new ArrayList<>();
+        shopIds.forEach(id -> ids.add(id.toString()));
+        inTransaction(() -> deleteIds(ids));
+    }
+
+    @Override
+    public synchronized void updateStocks(Collection<ShopData> shops) throws IOException {
+        inTransaction(() -> {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE shops SET stock = ?, stock_known = ?, last_scanned = ? WHERE id = ?")) {
+                int batched = 0;
+                for (ShopData shop : shops) {
+                    update.setInt(1, shop.getStock());
+                    update.setInt(2, shop.isStockKnown() ? 1 : 0);
+                    update.setLong(3, shop.getLastScanned());
+                    update.setString(4, shop.getShopId().toString());
+                    update.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        update.executeBatch();
+                    }
+                }
+                update.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public List<ShopData> findByItem(String normalizedItemId) throws IOException {
+        List<ShopData> exact = query("SELECT " + COLUMNS + " FROM shops WHERE item_key = ?", normalizedItemId);
+        if (!exact.isEmpty()) {
+            return exact;
+        }
+        // 物品ID中常见下划线，需要转义 LIKE 通配符
+        String pattern = "%" + normalizedItemId.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return query("SELECT " + COLUMNS + " FROM shops WHERE item_key LIKE ? ESCAPE '\\'", pattern);
+    }
+
+    @Override
+    public List<ShopData> findByOwner(UUID ownerId) throws IOException {
+        return query("SELECT " + COLUMNS + " FROM shops WHERE owner_id = ?", ownerId.toString());
+    }
+
+    @Override
+    public List<ShopData> findInRegion(String worldName, double minX, double minZ, double maxX, double maxZ)
+            throws IOException {
+        return query("SELECT " + COLUMNS + " FROM shops WHERE world = ? AND x BETWEEN ? AND ? AND z BETWEEN ? AND ?",
+                worldName, minX, maxX, minZ, maxZ);
+    }
+
+    /**
+     * 检查数据库是否为空
+     *
+     * @return 没有任何商店时返回 {@code true}
+     * @throws IOException 读取失败时抛出
+     */
+    synchronized boolean isEmpty() throws IOException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT 1 FROM shops LIMIT 1")) {
+            return !rows.next();
+        } catch (SQLException e) {
+            throw new IOException("读取商店数据库失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // 关闭失败不影响已提交的数据
+        }
+    }
+
+    private synchronized List<ShopData> query(String sql, Object... parameters)
+            throws IOException {
+        List<ShopData> result = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    result.add(readRecord(rows).toShopData());
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("查询商店数据库失败: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    private void upsertRecords(Collection<SimpleShopData> records) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL)) {
+            int batched = 0;
+            for (SimpleShopData record : records) {
+                upsert.setString(1, record.shopId);
+                upsert.setString(2, record.itemId);
+                upsert.setString(3, record.itemId.toLowerCase());
+                upsert.setString(4, record.itemDisplayName);
+                upsert.setString(5, record.worldName);
+                upsert.setDouble(6, record.x);
+                upsert.setDouble(7, record.y);
+                upsert.setDouble(8, record.z);
+                upsert.setDouble(9, record.price);
+                upsert.setString(10, record.ownerId);
+                upsert.setString(11, record.ownerName);
+                upsert.setString(12, record.shopType);
+                upsert.setInt(13, record.stock);
+                upsert.setInt(14, record.isUnlimited ? 1 : 0);
+                upsert.setInt(15, record.stockKnown ? 1 : 0);
+                upsert.setLong(16, record.lastScanned);
+                upsert.addBatch();
+                if (++batched % BATCH_SIZE == 0) {
+                    upsert.executeBatch();
+                }
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    private void deleteIds(Collection<String> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM shops WHERE id = ?")) {
+            int batched = 0;
+            for (String id : ids) {
+                delete.setString(1, id);
+                delete.addBatch();
+                if (++batched % BATCH_SIZE == 0) {
+                    delete.executeBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private static SimpleShopData readRecord(ResultSet rows) throws SQLException {
+        SimpleShopData record = new SimpleShopData();
+        record.shopId = rows.getString("id");
+        record.itemId = rows.getString("item_id");
+        record.itemDisplayName = rows.getString("item_name");
+        record.worldName = rows.getString("world");
+        record.x = rows.getDouble("x");
+        record.y = rows.getDouble("y");
+        record.z = rows.getDouble("z");
+        record.price = rows.getDouble("price");
+        record.ownerId = rows.getString("owner_id");
+        record.ownerName = rows.getString("owner_name");
+        record.shopType = rows.getString("shop_type");
+        record.stock = rows.getInt("stock");
+        record.isUnlimited = rows.getInt("unlimited") != 0;
+        record.stockKnown = rows.getInt("stock_known") != 0;
+        record.lastScanned = rows.getLong("last_scanned");
+        return record;
+    }
+
+    private static List<SimpleShopData> toRecords(Collection<ShopData> shops) {
+        List<SimpleShopData> records = new ArrayList<>(shops.size());
+        for (ShopData shop : shops) {
+            if (shop.getWorldName() != null) {
+                records.add(new SimpleShopData(shop));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 在事务中执行写操作，失败时回滚
+     */
+    private void inTransaction(SqlWork work) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("写入商店数据库失败: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+}
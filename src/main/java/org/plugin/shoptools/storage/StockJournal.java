@@ -0,0 +1,213 @@
+package org.plugin.shoptools.storage;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * 只追加的库存变更日志
+ * <p>
+ * 库存扫描的每次结果以"位置键 + 库存 + 时间戳"的形式追加到日志文件末尾（库存未变化时同样追加，
+ * 时间戳即扫描时间），持久化开销与扫描数量成正比，不再为几个数字重写整份快照。
+ * 启动时在快照之上重放日志；快照重写（压实）成功后日志被清空。
+ * <p>
+ * 线程模型：{@link #append} 可在任意线程调用（只入队）；
+ * {@link #flush}、{@link #truncate}、{@link #close} 只能在写入线程调用；
+ * {@link #replay} 在加载阶段调用，早于任何写入。
+ *
+ * <h3>文件布局</h3>
+ * <pre>
+ * int    魔数 "STSJ"
+ * short  格式版本
+ * 记录:  UTF 位置键 "world:x:y:z", int 库存, long 时间戳（毫秒）
+ * </pre>
+ *
+ * @author NSrank & Augment
+ */
+final class StockJournal {
+
+    /** 文件魔数 "STSJ"（ShopTools Stock Journal） */
+    static final int MAGIC = 0x5354534A;
+
+    /** 当前写入的格式版本 */
+    static final short VERSION = 1;
+
+    /** 日志文件名 */
+    static final String FILE_NAME = "stocks.journal";
+
+    private final File file;
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    /** 日志文件输出流（仅写入线程访问） */
+    private DataOutputStream out;
+    /** 日志文件中的记录数，用于判断是否需要压实 */
+    private volatile int entryCount = 0;
+    /** 上次写入失败，文件末尾可能有不完整的记录，清空日志之前不再追加（仅写入线程访问） */
+    private boolean broken = false;
+
+    /**
+     * 构造库存日志
+     *
+     * @param dataFolder 数据文件夹
+     * @param logger     日志记录器
+     */
+    StockJournal(File dataFolder, Logger logger) {
+        this.file = new File(dataFolder, FILE_NAME);
+        this.logger = logger;
+    }
+
+    /**
+     * 记录一次库存变化（只入队，不做 I/O，可在主线程调用）
+     *
+     * @param locationKey 位置键 "world:x:y:z"
+     * @param stock       新库存
+     */
+    void append(String locationKey, int stock) {
+        pending.add(new Entry(locationKey, stock, System.currentTimeMillis()));
+    }
+
+    /**
+     * 标记已安排写入；返回 {@code true} 表示调用方需要提交一次 {@link #flush}
+     *
+     * @return 此前没有待执行的写入时返回 {@code true}
+     */
+    boolean markFlushScheduled() {
+        return flushScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * 将排队的变更追加到日志文件（仅在写入线程调用）
+     * <p>
+     * 写入失败后文件末尾可能留下不完整的记录，之后追加的记录在重放时无法读到，
+     * 因此在 {@link #truncate} 清空日志之前不再追加，排队的变更连同失败的这一批一起丢弃并抛出异常。
+     * 调用方需要安排一次完整快照：内存缓存中已有这些库存，快照写入成功后日志被清空并恢复追加。
+     *
+     * @return 写入后日志文件中的记录数
+     * @throws IOException 写入失败，或日志仍在等待上次失败后的压实
+     */
+    int flush() throws IOException {
+        flushScheduled.set(false);
+        if (broken) {
+            pending.clear();
+            throw new IOException("库存日志上次写入失败，等待快照压实");
+        }
+        if (pending.isEmpty()) {
+            return entryCount;
+        }
+        try {
+            if (out == null) {
+                boolean fresh = !file.exists() || file.length() == 0;
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+                if (fresh) {
+                    out.writeInt(MAGIC);
+                    out.writeShort(VERSION);
+                }
+            }
+            Entry entry;
+            int written = 0;
+            while ((entry = pending.poll()) != null) {
+                out.writeUTF(entry.locationKey());
+                out.writeInt(entry.stock());
+                out.writeLong(entry.timestamp());
+                written++;
+            }
+            out.flush();
+            entryCount += written;
+        } catch (IOException e) {
+            broken = true;
+            pending.clear();
+            closeQuietly();
+            throw e;
+        }
+        return entryCount;
+    }
+
+    /**
+     * 清空日志文件（快照写入成功后调用，仅在写入线程调用）
+     * <p>
+     * 日志中的记录在快照读取缓存之前已经入队，对应的库存已包含在新快照中；
+     * 仍在队列中的变更不受影响，会写入新的日志。此前写入失败的日志在清空后恢复追加。
+     */
+    void truncate() {
+        closeQuietly();
+        if (file.exists() && !file.delete()) {
+            logger.warning("无法清空库存日志: " + file.getName());
+            return;
+        }
+        entryCount = 0;
+        broken = false;
+    }
+
+    /**
+     * 读取日志中每个位置的最新库存
+     * <p>
+     * 文件末尾不完整的记录（写入中途崩溃）会被忽略。
+     *
+     * @return 位置键到最新记录的映射；日志不存在时返回空映射
+     * @throws IOException 文件头无效或读取失败时抛出
+     */
+    Map<String, Entry> replay() throws IOException {
+        Map<String, Entry> latest = new HashMap<>();
+        if (!file.exists() || file.length() == 0) {
+            entryCount = 0;
+            return latest;
+        }
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的库存日志文件");
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("不支持的库存日志版本: " + version);
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                Entry entry = new Entry(key, in.readInt(), in.readLong());
+                latest.put(key, entry);
+                count++;
+            }
+        } catch (EOFException e) {
+            logger.warning("库存日志末尾存在不完整的记录，已忽略（共读取 " + count + " 条）。");
+        }
+        entryCount = count;
+        return latest;
+    }
+
+    /**
+     * 关闭日志文件（仅在写入线程或写入线程结束后调用）
+     */
+    void close() {
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响后续重新打开
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * 一条库存变更记录
+     *
+     * @param locationKey 位置键 "world:x:y:z"
+     * @param stock       库存
+     * @param timestamp   记录时间（毫秒）
+     */
+    record Entry(String locationKey, int stock, long timestamp) {}
+}
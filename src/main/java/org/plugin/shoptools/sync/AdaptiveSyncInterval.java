@@ -0,0 +1,90 @@
+package org.plugin.shoptools.sync;
+
+/**
+ * 自适应全量同步间隔
+ * 根据每次同步发现的商店变化数调整下一次同步的间隔：有变化时缩短，连续无变化时逐步延长；
+ * 服务器 MSPT 过高时退避。间隔始终限制在配置的上下限之内。
+ *
+ * @author NSrank & Augment
+ */
+class AdaptiveSyncInterval {
+
+    /** 变化数达到该值时间隔直接缩短到四分之一，否则减半 */
+    static final int BURST_CHANGES = 50;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final double msptThreshold;
+    private long current;
+
+    /**
+     * 构造函数
+     *
+     * @param initial       初始间隔（毫秒）
+     * @param minInterval   最小间隔（毫秒）
+     * @param maxInterval   最大间隔（毫秒）
+     * @param msptThreshold MSPT 退避阈值（毫秒）
+     */
+    AdaptiveSyncInterval(long initial, long minInterval, long maxInterval, double msptThreshold) {
+        this.minInterval = Math.max(1L, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        this.msptThreshold = msptThreshold;
+        this.current = clamp(initial);
+    }
+
+    /**
+     * 获取当前间隔
+     *
+     * @return 间隔（毫秒）
+     */
+    long current() {
+        return current;
+    }
+
+    /**
+     * 根据一次同步的结果计算下一次同步的间隔
+     *
+     * @param changes 本次同步新增、移除和变化的商店总数
+     * @param mspt    当前服务器平均 tick 耗时（毫秒）
+     * @return 下一次同步的间隔（毫秒）
+     */
+    long update(int changes, double mspt) {
+        long next;
+        if (changes >= BURST_CHANGES) {
+            next = current / 4;
+        } else if (changes > 0) {
+            next = current / 2;
+        } else {
+            next = current + current / 2;
+        }
+        if (isOverloaded(mspt)) {
+            next = Math.max(next, current * 2);
+        }
+        current = clamp(next);
+        return current;
+    }
+
+    /**
+     * 服务器负载过高、跳过本次同步时加倍间隔
+     *
+     * @return 下一次同步的间隔（毫秒）
+     */
+    long backOff() {
+        current = clamp(current * 2);
+        return current;
+    }
+
+    /**
+     * 检查 MSPT 是否超过退避阈值
+     *
+     * @param mspt 服务器平均 tick 耗时（毫秒）
+     * @return 超过阈值返回 {@code true}
+     */
+    boolean isOverloaded(double mspt) {
+        return msptThreshold > 0 && mspt >= msptThreshold;
+    }
+
+    private long clamp(long interval) {
+        return Math.max(minInterval, Math.min(maxInterval, interval));
+    }
+}
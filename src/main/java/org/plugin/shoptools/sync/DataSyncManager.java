@@ -1,20 +1,31 @@
 package org.plugin.shoptools.sync;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 import org.plugin.shoptools.ShopTools;
 import org.plugin.shoptools.config.ConfigManager;
+import org.maxgamer.quickshop.api.shop.Shop;
 import org.plugin.shoptools.integration.QuickShopIntegration;
+import org.plugin.shoptools.integration.RawShop;
 import org.plugin.shoptools.model.ShopData;
 import org.plugin.shoptools.storage.ShopDataManager;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * 数据同步管理器
- * 负责定期从QuickShop同步商店数据
+ * 负责定期从QuickShop全量同步商店数据；启用事件同步时全量同步只作为校对，
+ * 日常变化由 {@link org.plugin.shoptools.listener.QuickShopEventListener} 逐个同步
  * 
  * @author NSrank & Augment
  */
@@ -27,6 +38,13 @@ public class DataSyncManager {
     private final ShopDataManager dataManager;
     
     private BukkitTask syncTask;
+    private SlicedSyncTask slicedTask;
+    /** 自适应同步间隔，未启用时为 null */
+    private AdaptiveSyncInterval adaptiveInterval;
+    /** 每次停止同步时递增，用于丢弃停止前发起、仍在后台转换的同步结果 */
+    private int syncGeneration = 0;
+    /** 同步进行中由商店事件处理过的位置（位置键 → 位置） */
+    private final Map<String, Location> eventLocations = new LinkedHashMap<>();
     private boolean isInitialSyncCompleted = false;
     private boolean isSyncing = false;
     
@@ -74,6 +92,13 @@ public class DataSyncManager {
             syncTask.cancel();
             syncTask = null;
         }
+        if (slicedTask != null) {
+            slicedTask.cancel();
+            slicedTask = null;
+        }
+        syncGeneration++;
+        isSyncing = false;
+        eventLocations.clear();
     }
     
     /**
@@ -90,9 +115,13 @@ public class DataSyncManager {
         // 在主线程执行同步操作
         Bukkit.getScheduler().runTask(plugin, () -> {
             try {
-                syncShopData(false); // 初始扫描已由 loadDataAsync 回调负责，此处不重复触发
-                isInitialSyncCompleted = true;
-                logger.info("初始数据同步完成。");
+                // 初始扫描已由 loadDataAsync 回调负责，此处不重复触发
+                syncShopData(false, changes -> {
+                    if (changes >= 0) {
+                        isInitialSyncCompleted = true;
+                        logger.info("初始数据同步完成。");
+                    }
+                });
             } catch (Exception e) {
                 logger.severe("初始数据同步失败: " + e.getMessage());
                 e.printStackTrace();
@@ -102,30 +131,95 @@ public class DataSyncManager {
 
     /**
      * 启动定期同步任务（每次同步完成后同时触发库存重新扫描）
+     * 启用事件同步时，日常变化由 QuickShop 商店事件逐个同步，定期全量同步只作为低频校对。
+     * 启用自适应间隔时，按每次同步发现的变化数缩短或延长下一次的间隔，服务器 MSPT 过高时退避。
      */
     private void startPeriodicSync() {
-        long interval = configManager.getSyncInterval() / 1000 * 20; // 转换为tick
+        boolean eventDriven = configManager.isEventSyncEnabled();
+        long baseInterval = eventDriven ? configManager.getReconcileInterval() : configManager.getSyncInterval();
 
-        logger.info("启动定期数据同步，间隔: " + (interval / 20) + " 秒");
+        if (configManager.isAdaptiveSyncEnabled()) {
+            adaptiveInterval = new AdaptiveSyncInterval(baseInterval, configManager.getAdaptiveMinInterval(),
+                    configManager.getAdaptiveMaxInterval(), configManager.getSyncMsptThreshold());
+            logger.info("启动自适应定期同步，初始间隔: " + (adaptiveInterval.current() / 1000) + " 秒，范围 "
+                    + (configManager.getAdaptiveMinInterval() / 1000) + "-"
+                    + (configManager.getAdaptiveMaxInterval() / 1000) + " 秒");
+            schedulePeriodicSync(adaptiveInterval.current());
+        } else {
+            adaptiveInterval = null;
+            logger.info((eventDriven ? "启动定期全量校对（商店事件即时同步），间隔: " : "启动定期数据同步，间隔: ")
+                    + (baseInterval / 1000) + " 秒");
+            schedulePeriodicSync(baseInterval);
+        }
+    }
 
+    /**
+     * 安排下一次定期同步
+     *
+     * @param intervalMillis 距下一次同步的间隔（毫秒）
+     */
+    private void schedulePeriodicSync(long intervalMillis) {
+        long ticks = Math.max(20L, intervalMillis / 1000 * 20); // 转换为tick
         syncTask = new BukkitRunnable() {
             @Override
             public void run() {
-                if (!isSyncing && quickShopIntegration.isQuickShopAvailable()) {
-                    try {
-                        syncShopData(true); // 周期同步完成后触发库存重新扫描
-                        if (configManager.isDebugEnabled()) {
-                            logger.info("定期数据同步完成。");
-                        }
-                    } catch (Exception e) {
-                        logger.warning("定期数据同步失败: " + e.getMessage());
-                        if (configManager.isDebugEnabled()) {
-                            e.printStackTrace();
-                        }
+                runPeriodicSync();
+            }
+        }.runTaskLater(plugin, ticks);
+    }
+
+    /**
+     * 执行一次定期同步，结束后按结果安排下一次
+     */
+    private void runPeriodicSync() {
+        long fixedInterval = configManager.isEventSyncEnabled()
+                ? configManager.getReconcileInterval() : configManager.getSyncInterval();
+        if (isSyncing || !quickShopIntegration.isQuickShopAvailable()) {
+            schedulePeriodicSync(adaptiveInterval != null ? adaptiveInterval.current() : fixedInterval);
+            return;
+        }
+
+        AdaptiveSyncInterval adaptive = adaptiveInterval;
+        if (adaptive != null && adaptive.isOverloaded(Bukkit.getAverageTickTime())) {
+            long next = adaptive.backOff();
+            if (configManager.isDebugEnabled()) {
+                logger.info("服务器 MSPT " + String.format("%.1f", Bukkit.getAverageTickTime())
+                        + "ms 过高，跳过本次定期同步，" + (next / 1000) + " 秒后重试。");
+            }
+            schedulePeriodicSync(next);
+            return;
+        }
+
+        boolean started;
+        try {
+            // 周期同步完成后触发库存重新扫描
+            started = syncShopData(true, changes -> {
+                if (syncTask == null) {
+                    return; // 同步已停止
+                }
+                long next = fixedInterval;
+                if (adaptive != null) {
+                    next = adaptive.update(Math.max(0, changes), Bukkit.getAverageTickTime());
+                    if (configManager.isDebugEnabled()) {
+                        logger.info("本次同步变化 " + Math.max(0, changes) + " 个商店，下次定期同步间隔 "
+                                + (next / 1000) + " 秒。");
                     }
                 }
+                if (changes >= 0 && configManager.isDebugEnabled()) {
+                    logger.info("定期数据同步完成。");
+                }
+                schedulePeriodicSync(next);
+            });
+        } catch (Exception e) {
+            logger.warning("定期数据同步失败: " + e.getMessage());
+            if (configManager.isDebugEnabled()) {
+                e.printStackTrace();
             }
-        }.runTaskTimer(plugin, interval, interval);
+            started = false;
+        }
+        if (!started) {
+            schedulePeriodicSync(adaptive != null ? adaptive.current() : fixedInterval);
+        }
     }
     
     /**
@@ -148,8 +242,12 @@ public class DataSyncManager {
 
         if (Bukkit.isPrimaryThread()) {
             try {
-                syncShopData(true); // 手动同步（含 reload）完成后触发库存重新扫描
-                logger.info("手动数据同步完成。");
+                // 手动同步（含 reload）完成后触发库存重新扫描
+                syncShopData(true, changes -> {
+                    if (changes >= 0) {
+                        logger.info("手动数据同步完成。");
+                    }
+                });
                 return true;
             } catch (Exception e) {
                 logger.severe("手动数据同步失败: " + e.getMessage());
@@ -159,8 +257,11 @@ public class DataSyncManager {
         } else {
             Bukkit.getScheduler().runTask(plugin, () -> {
                 try {
-                    syncShopData(true);
-                    logger.info("手动数据同步完成。");
+                    syncShopData(true, changes -> {
+                        if (changes >= 0) {
+                            logger.info("手动数据同步完成。");
+                        }
+                    });
                 } catch (Exception e) {
                     logger.severe("手动数据同步失败: " + e.getMessage());
                     e.printStackTrace();
@@ -172,40 +273,221 @@ public class DataSyncManager {
 
     /**
      * 执行商店数据同步。
+     * <p>
+     * 分三个阶段：主线程只读取商店的原始字段（启用分片同步时分摊到多个 tick）；
+     * 后台线程完成转换、去重和完整索引的构建；最后回到主线程一次性替换索引。
      *
      * @param triggerStockScan 同步成功后是否触发库存重新扫描
+     * @param onComplete       同步结束后在主线程调用，参数为新增、移除和变化的商店总数，失败时为 -1
+     * @return 同步已启动返回 {@code true}；正在同步或没有商店时返回 {@code false}，此时不会调用 onComplete
      */
-    private void syncShopData(boolean triggerStockScan) {
+    private boolean syncShopData(boolean triggerStockScan, IntConsumer onComplete) {
         if (isSyncing) {
-            return;
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        if ("database".equals(configManager.getSyncSource())) {
+            startDatabaseSync(startTime, triggerStockScan, onComplete);
+            return true;
         }
+        return startApiSync(startTime, triggerStockScan, onComplete);
+    }
 
+    /**
+     * 从 QuickShop 数据库读取：主线程只取世界快照，读取、转换和索引构建都在后台线程完成。
+     * 数据库不可用时回到主线程改用 API 读取
+     *
+     * @param startTime        同步开始时间
+     * @param triggerStockScan 是否触发库存重新扫描
+     * @param onComplete       同步结束后在主线程调用
+     */
+    private void startDatabaseSync(long startTime, boolean triggerStockScan, IntConsumer onComplete) {
+        Map<String, World> worlds = new HashMap<>();
+        for (World world : Bukkit.getWorlds()) {
+            worlds.put(world.getName(), world);
+        }
         isSyncing = true;
+        eventLocations.clear();
+        int generation = syncGeneration;
+        logger.info("开始从QuickShop数据库读取商店数据...");
+        prepareAsync(() -> quickShopIntegration.readShopsFromDatabase(worlds), generation, startTime,
+                triggerStockScan, onComplete, () -> {
+                    isSyncing = false;
+                    if (!startApiSync(startTime, triggerStockScan, onComplete)) {
+                        onComplete.accept(-1);
+                    }
+                });
+    }
 
-        try {
-            long startTime = System.currentTimeMillis();
+    /**
+     * 通过 QuickShop API 读取：主线程读取商店的原始字段，后台线程转换
+     *
+     * @param startTime        同步开始时间
+     * @param triggerStockScan 是否触发库存重新扫描
+     * @param onComplete       同步结束后在主线程调用
+     * @return 同步已启动返回 {@code true}
+     */
+    private boolean startApiSync(long startTime, boolean triggerStockScan, IntConsumer onComplete) {
+        List<Shop> shops = quickShopIntegration.getAllShopObjects();
+        if (shops.isEmpty()) {
+            logger.warning("未获取到任何商店数据。");
+            return false;
+        }
 
-            // 从QuickShop获取所有商店数据
-            List<ShopData> shopDataList = quickShopIntegration.getAllShops();
+        isSyncing = true;
+        eventLocations.clear();
+        int generation = syncGeneration;
 
-            if (shopDataList == null || shopDataList.isEmpty()) {
-                logger.warning("未获取到任何商店数据。");
-                return;
+        if (!configManager.isSlicedSyncEnabled()) {
+            List<RawShop> captured = new ArrayList<>(shops.size());
+            for (Shop shop : shops) {
+                RawShop raw = quickShopIntegration.capture(shop);
+                if (raw != null) {
+                    captured.add(raw);
+                }
+            }
+            logger.info("已读取 " + captured.size() + " 个商店，耗时 "
+                    + (System.currentTimeMillis() - startTime) + "ms，后台转换中...");
+            convertAsync(captured, generation, startTime, triggerStockScan, onComplete);
+            return true;
+        }
+
+        long budget = configManager.getSyncTickBudget();
+        logger.info("开始分片同步 " + shops.size() + " 个商店，每 tick 预算 " + budget + "ms...");
+        slicedTask = new SlicedSyncTask(quickShopIntegration, shops, budget, captured -> {
+            logger.info("已分 " + slicedTask.getSlices() + " 个 tick 读取 " + captured.size() + " 个商店，后台转换中...");
+            slicedTask = null;
+            convertAsync(captured, generation, startTime, triggerStockScan, onComplete);
+        });
+        slicedTask.runTaskTimer(plugin, 1L, 1L);
+        return true;
+    }
+
+    /**
+     * 在后台线程转换原始字段并构建索引，完成后回到主线程发布
+     *
+     * @param captured         主线程读取的原始字段
+     * @param generation       发起同步时的同步代数，停止同步后旧结果不再发布
+     * @param startTime        同步开始时间
+     * @param triggerStockScan 是否触发库存重新扫描
+     * @param onComplete       同步结束后在主线程调用，参数为变化的商店总数，失败时为 -1
+     */
+    private void convertAsync(List<RawShop> captured, int generation, long startTime, boolean triggerStockScan,
+                              IntConsumer onComplete) {
+        prepareAsync(() -> {
+            List<ShopData> shopDataList = new ArrayList<>(captured.size());
+            for (RawShop raw : captured) {
+                ShopData shopData = quickShopIntegration.convert(raw);
+                if (shopData != null) {
+                    shopDataList.add(shopData);
+                }
+            }
+            return shopDataList;
+        }, generation, startTime, triggerStockScan, onComplete, () -> onComplete.accept(-1));
+    }
+
+    /**
+     * 在后台线程取得商店数据并构建索引，完成后回到主线程发布
+     *
+     * @param loader           在后台线程取得商店数据，无法取得时返回 {@code null}
+     * @param generation       发起同步时的同步代数，停止同步后旧结果不再发布
+     * @param startTime        同步开始时间
+     * @param triggerStockScan 是否触发库存重新扫描
+     * @param onComplete       同步结束后在主线程调用，参数为变化的商店总数，失败时为 -1
+     * @param onUnavailable    loader 返回 {@code null} 时在主线程调用（此时 isSyncing 仍为 true）
+     */
+    private void prepareAsync(Supplier<List<ShopData>> loader, int generation, long startTime,
+                              boolean triggerStockScan, IntConsumer onComplete, Runnable onUnavailable) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            ShopDataManager.PreparedSync prepared = null;
+            boolean unavailable = false;
+            try {
+                List<ShopData> shopDataList = loader.get();
+                if (shopDataList == null) {
+                    unavailable = true;
+                } else {
+                    prepared = dataManager.prepareSync(shopDataList);
+                }
+            } catch (Exception e) {
+                logger.severe("后台转换商店数据失败: " + e.getMessage());
+                e.printStackTrace();
             }
 
-            // 更新数据管理器中的数据（内部会恢复已扫描库存快照）
-            dataManager.updateShopData(shopDataList);
+            ShopDataManager.PreparedSync result = prepared;
+            boolean fallback = unavailable;
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (generation != syncGeneration) {
+                    return;
+                }
+                if (fallback) {
+                    onUnavailable.run();
+                    return;
+                }
+                int changes = -1;
+                try {
+                    if (result != null) {
+                        changes = publish(result, startTime, triggerStockScan);
+                    }
+                } catch (Exception e) {
+                    logger.severe("数据同步失败: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    isSyncing = false;
+                    eventLocations.clear();
+                }
+                onComplete.accept(changes);
+            });
+        });
+    }
 
-            long duration = System.currentTimeMillis() - startTime;
-            logger.info("数据同步完成，耗时: " + duration + "ms，同步了 " + shopDataList.size() + " 个商店。");
+    /**
+     * 将准备好的同步结果一次性发布到数据管理器
+     *
+     * @param prepared         后台准备好的同步结果
+     * @param startTime        同步开始时间
+     * @param triggerStockScan 是否触发库存重新扫描
+     * @return 新增、移除和变化的商店总数
+     */
+    private int publish(ShopDataManager.PreparedSync prepared, long startTime, boolean triggerStockScan) {
+        // 替换数据管理器中的索引（内部会沿用已扫描库存）
+        int changes = dataManager.applyPreparedSync(prepared);
 
-            // 同步完成后触发库存重新扫描，确保库存信息及时更新
-            if (triggerStockScan) {
-                plugin.triggerStockScan();
+        // 同步期间由商店事件处理过的位置按当前状态重新应用，避免被同步开始时读取的旧数据覆盖
+        for (Location location : eventLocations.values()) {
+            Shop shop = quickShopIntegration.getShopAtLocation(location);
+            if (shop == null) {
+                dataManager.removeShopAt(location);
+            } else {
+                dataManager.applyShopUpdate(quickShopIntegration.convertShopToShopData(shop));
             }
+        }
+        dataManager.publishIndex();
+        dataManager.getChangeFeed().flush();
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("数据同步完成，耗时: " + duration + "ms，同步了 " + prepared.size() + " 个商店。");
 
-        } finally {
-            isSyncing = false;
+        // 同步完成后触发库存重新扫描，确保库存信息及时更新
+        if (triggerStockScan) {
+            plugin.triggerStockScan();
+        }
+        return changes;
+    }
+
+    /**
+     * 记录由商店事件处理过的位置。同步进行中时，发布后会按位置重新读取这些商店，
+     * 避免同步开始时的旧数据覆盖期间的变化
+     *
+     * @param location 商店位置
+     */
+    public void recordShopEvent(Location location) {
+        String key = ShopData.locationKey(location);
+        if (isSyncing && key != null) {
+            eventLocations.put(key, location.clone());
         }
     }
     
@@ -0,0 +1,74 @@
+package org.plugin.shoptools.sync;
+
+import org.bukkit.scheduler.BukkitRunnable;
+import org.maxgamer.quickshop.api.shop.Shop;
+import org.plugin.shoptools.integration.QuickShopIntegration;
+import org.plugin.shoptools.integration.RawShop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分片读取任务
+ * 将 QuickShop 商店集合的主线程读取分摊到多个 tick，每 tick 只在设定的时间预算内读取原始字段，
+ * 全部读取完成后交给回调，由后台线程完成转换和索引构建。
+ *
+ * @author NSrank & Augment
+ */
+class SlicedSyncTask extends BukkitRunnable {
+
+    private final QuickShopIntegration quickShopIntegration;
+    private final long budgetNanos;
+    private final Consumer<List<RawShop>> onComplete;
+
+    private final List<Shop> shops;
+    private final List<RawShop> captured;
+    private int cursor = 0;
+    private int slices = 0;
+
+    /**
+     * 构造函数
+     *
+     * @param quickShopIntegration QuickShop集成
+     * @param shops                同步开始时的商店集合快照
+     * @param budgetMillis         每 tick 的读取时间预算（毫秒）
+     * @param onComplete           读取完成后在主线程调用，参数为全部商店的原始字段
+     */
+    SlicedSyncTask(QuickShopIntegration quickShopIntegration, List<Shop> shops, long budgetMillis,
+                   Consumer<List<RawShop>> onComplete) {
+        this.quickShopIntegration = quickShopIntegration;
+        this.shops = shops;
+        this.budgetNanos = Math.max(1L, budgetMillis) * 1_000_000L;
+        this.onComplete = onComplete;
+        this.captured = new ArrayList<>(shops.size());
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + budgetNanos;
+        slices++;
+        // 每 tick 至少读取一个商店，保证在预算极小时也能推进
+        do {
+            RawShop raw = quickShopIntegration.capture(shops.get(cursor++));
+            if (raw != null) {
+                captured.add(raw);
+            }
+        } while (cursor < shops.size() && System.nanoTime() < deadline);
+
+        if (cursor < shops.size()) {
+            return;
+        }
+        cancel();
+        onComplete.accept(captured);
+    }
+
+    /**
+     * 获取已用的 tick 数
+     *
+     * @return tick 数
+     */
+    int getSlices() {
+        return slices;
+    }
+}
@@ -0,0 +1,112 @@
+package org.plugin.shoptools.util;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 数据文件压缩工具类
+ * 使用 JDK 自带的 GZIP 格式，压缩后的文件以 GZIP 魔数开头，读取时按文件头自动识别，
+ * 无需额外的标记或扩展名，压缩与未压缩的文件可以混合存在。
+ *
+ * @author NSrank & Augment
+ */
+public final class CompressionUtil {
+
+    /** 不压缩 */
+    public static final int NO_COMPRESSION = 0;
+
+    /** GZIP 魔数（前两个字节） */
+    private static final int GZIP_MAGIC = 0x8B1F;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressionUtil() {
+    }
+
+    /**
+     * 按压缩级别包装输出流
+     * <p>
+     * 写完后必须调用 {@link #finish(OutputStream)} 写出压缩尾；关闭返回的流会同时关闭底层流。
+     *
+     * @param out   底层输出流
+     * @param level 压缩级别 1-9（1 最快、9 最小）；{@link #NO_COMPRESSION} 时原样返回 {@code out}
+     * @return 输出流
+     * @throws IOException 写出 GZIP 头失败时抛出
+     */
+    public static OutputStream compress(OutputStream out, int level) throws IOException {
+        if (level <= NO_COMPRESSION) {
+            return out;
+        }
+        return new LevelGzipOutputStream(out, Math.min(9, level));
+    }
+
+    /**
+     * 结束压缩内容：写出压缩尾并释放压缩器，不关闭底层流，之后底层流仍可继续写入（如校验尾）
+     *
+     * @param out {@link #compress(OutputStream, int)} 返回的输出流
+     * @throws IOException 写出失败时抛出
+     */
+    public static void finish(OutputStream out) throws IOException {
+        if (out instanceof LevelGzipOutputStream) {
+            ((LevelGzipOutputStream) out).finishContent();
+        } else {
+            out.flush();
+        }
+    }
+
+    /**
+     * 包装输入流，压缩内容自动解压，未压缩内容原样读取
+     *
+     * @param in 底层输入流
+     * @return 输入流（已缓冲）
+     * @throws IOException 读取文件头失败时抛出
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        buffered.reset();
+        if (b1 >= 0 && b2 >= 0 && ((b2 << 8) | b1) == GZIP_MAGIC) {
+            return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    /**
+     * 检查文件是否为压缩文件
+     *
+     * @param file 文件
+     * @return 文件以 GZIP 魔数开头时返回 {@code true}
+     * @throws IOException 读取文件失败时抛出
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        if (file.length() < 2) {
+            return false;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            int b1 = in.read();
+            int b2 = in.read();
+            return ((b2 << 8) | b1) == GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * 可设置压缩级别的 GZIP 输出流
+     */
+    private static final class LevelGzipOutputStream extends GZIPOutputStream {
+
+        LevelGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+
+        void finishContent() throws IOException {
+            finish();
+            flush();
+            // finish() 不会释放本地内存，这里提前释放，不必等到关闭或 GC
+            def.end();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.plugin.shoptools;
+
+import org.bukkit.World;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * 测试用的世界：只实现 getName、hashCode 和 equals 的 {@link World} 代理，其余方法返回 {@code null}
+ *
+ * @author NSrank & Augment
+ */
+public final class TestWorlds {
+
+    private TestWorlds() {
+    }
+
+    /**
+     * 创建指定名称的世界（每次调用得到不同的实例）
+     *
+     * @param name 世界名称
+     * @return 世界
+     */
+    public static World world(String name) {
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName":
+                            return name;
+                        case "hashCode":
+                            return name.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,116 @@
+package org.plugin.shoptools.feed;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+import org.plugin.shoptools.TestWorlds;
+import org.plugin.shoptools.model.ShopData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商店变化推送测试
+ *
+ * @author NSrank & Augment
+ */
+public class ShopChangeFeedTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+    private static final World WORLD = TestWorlds.world("world");
+
+    /**
+     * 测试同一位置的多次变化在一批内合并
+     */
+    @Test
+    public void testCoalescing() {
+        List<ShopChangeBatch> events = new ArrayList<>();
+        ShopChangeFeed feed = new ShopChangeFeed(100, events::add, LOGGER);
+        List<ShopChangeBatch> received = new ArrayList<>();
+        feed.register(received::add);
+
+        // 新增后又移除：互相抵消
+        feed.added(shop(1, "STONE", 1.0));
+        feed.removed(shop(1, "STONE", 1.0));
+        // 连续改价：保留最初的旧价格
+        feed.changed(shop(2, "DIAMOND", 10.0), shop(2, "DIAMOND", 12.0), true);
+        feed.changed(shop(2, "DIAMOND", 12.0), shop(2, "DIAMOND", 15.0), true);
+        // 改价后又改回原价：抵消
+        feed.changed(shop(3, "APPLE", 2.0), shop(3, "APPLE", 3.0), true);
+        feed.changed(shop(3, "APPLE", 3.0), shop(3, "APPLE", 2.0), true);
+        // 移除后同一位置出现新商店：视为其他变化
+        feed.removed(shop(4, "DIRT", 0.5));
+        feed.added(shop(4, "SAND", 0.8));
+        // 库存变化：保留最初的旧库存
+        ShopData stocked = shop(5, "IRON_INGOT", 4.0);
+        stocked.setStock(10);
+        feed.stockChanged(stocked, 5);
+        stocked.setStock(20);
+        feed.stockChanged(stocked, 10);
+
+        ShopChangeBatch batch = feed.flush();
+        assertNotNull(batch);
+        assertFalse(batch.overflowed());
+        assertEquals(List.of(batch), received);
+        assertEquals(List.of(batch), events);
+        assertEquals(3, batch.changes().size());
+
+        ShopChange price = batch.changes().get(0);
+        assertEquals(ShopChange.Type.PRICE_CHANGED, price.type());
+        assertEquals(10.0, price.oldPrice());
+        assertEquals(15.0, price.shop().getPrice());
+
+        ShopChange replaced = batch.changes().get(1);
+        assertEquals(ShopChange.Type.UPDATED, replaced.type());
+        assertEquals("SAND", replaced.shop().getItemId());
+        assertEquals(0.5, replaced.oldPrice());
+
+        ShopChange stock = batch.changes().get(2);
+        assertEquals(ShopChange.Type.STOCK_CHANGED, stock.type());
+        assertEquals(5, stock.oldStock());
+        assertEquals(20, stock.shop().getStock());
+
+        // 没有新变化时不推送
+        assertNull(feed.flush());
+        assertEquals(1, events.size());
+    }
+
+    /**
+     * 测试缓冲区满时丢弃明细并标记溢出，监听器异常不影响其他消费方
+     */
+    @Test
+    public void testOverflow() {
+        List<ShopChangeBatch> events = new ArrayList<>();
+        ShopChangeFeed feed = new ShopChangeFeed(3, events::add, LOGGER);
+        feed.register(batch -> {
+            throw new IllegalStateException("broken listener");
+        });
+
+        for (int i = 0; i < 5; i++) {
+            feed.added(shop(i, "STONE", 1.0));
+        }
+        assertEquals(0, feed.pendingCount());
+
+        ShopChangeBatch batch = feed.flush();
+        assertNotNull(batch);
+        assertTrue(batch.overflowed());
+        assertTrue(batch.changes().isEmpty());
+        assertEquals(1, events.size());
+
+        // 溢出标记只随一批推送，之后恢复正常缓冲
+        feed.added(shop(9, "STONE", 1.0));
+        ShopChangeBatch next = feed.flush();
+        assertFalse(next.overflowed());
+        assertEquals(1, next.changes().size());
+    }
+
+    private static ShopData shop(int x, String itemId, double price) {
+        Location location = new Location(WORLD, x, 64, 0);
+        return new ShopData(ShopData.idFor(location), itemId, itemId.toLowerCase(), location, price,
+                UUID.randomUUID(), "TestPlayer", ShopData.ShopType.SELLING, -1, false, null);
+    }
+}
@@ -0,0 +1,77 @@
+package org.plugin.shoptools.integration;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 无限状态检测的性能对比测试（使用 -Pbenchmark 运行，默认测试不包含）
+ * 对比每个商店都反射查找并调用与缓存句柄调用的单次耗时，功能测试见 {@link CachedMethodTest}
+ *
+ * @author NSrank & Augment
+ */
+public class CachedMethodBenchmarkTest {
+
+    private static final int SHOP_COUNT = 200000;
+    private static final int ROUNDS = 5;
+
+    private static final CachedMethod UNLIMITED =
+            new CachedMethod(Object.class, new Class<?>[0], "isUnlimited", "isUnlimitedShop");
+
+    /**
+     * 对比反射查找调用与缓存句柄调用的单次耗时（结果输出到控制台）
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkUnlimitedProbe() throws Throwable {
+        Object[] shops = new Object[SHOP_COUNT];
+        for (int i = 0; i < SHOP_COUNT; i++) {
+            shops[i] = i % 2 == 0 ? new CachedMethodTest.UnlimitedShop() : new CachedMethodTest.LegacyShop();
+        }
+
+        long reflect = Long.MAX_VALUE, cached = Long.MAX_VALUE;
+        int reflectCount = 0, cachedCount = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            reflectCount = 0;
+            for (Object shop : shops) {
+                if (Boolean.TRUE.equals(probeByReflection(shop))) {
+                    reflectCount++;
+                }
+            }
+            reflect = Math.min(reflect, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            cachedCount = 0;
+            for (Object shop : shops) {
+                Object result = (Object) UNLIMITED.handle(shop.getClass()).invokeExact(shop);
+                if (Boolean.TRUE.equals(result)) {
+                    cachedCount++;
+                }
+            }
+            cached = Math.min(cached, System.nanoTime() - start);
+        }
+
+        System.out.printf("无限状态检测（%d 个商店，取 %d 轮最佳）%n", SHOP_COUNT, ROUNDS);
+        System.out.printf("  反射查找调用: %6.1f ns/商店%n", (double) reflect / SHOP_COUNT);
+        System.out.printf("  缓存方法句柄: %6.1f ns/商店%n", (double) cached / SHOP_COUNT);
+        assertEquals(reflectCount, cachedCount);
+    }
+
+    /**
+     * 旧实现：每个商店都按名称查找方法再反射调用
+     */
+    private static Object probeByReflection(Object shop) {
+        for (String name : new String[]{"isUnlimited", "isUnlimitedShop"}) {
+            try {
+                Method method = shop.getClass().getMethod(name);
+                return method.invoke(shop);
+            } catch (Exception ignored) {
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,90 @@
+package org.plugin.shoptools.integration;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按实现类缓存的方法句柄测试
+ *
+ * @author NSrank & Augment
+ */
+public class CachedMethodTest {
+
+    private static final CachedMethod UNLIMITED =
+            new CachedMethod(Object.class, new Class<?>[0], "isUnlimited", "isUnlimitedShop");
+
+    /**
+     * 测试按候选顺序解析方法，同一实现类重复获取得到缓存的同一句柄
+     */
+    @Test
+    public void testResolvePerClass() throws Throwable {
+        assertEquals("isUnlimited", UNLIMITED.name(UnlimitedShop.class));
+        assertEquals("isUnlimitedShop", UNLIMITED.name(LegacyShop.class));
+
+        MethodHandle handle = UNLIMITED.handle(LegacyShop.class);
+        assertSame(handle, UNLIMITED.handle(LegacyShop.class));
+        assertNotSame(handle, UNLIMITED.handle(UnlimitedShop.class));
+        assertEquals(Boolean.TRUE, (Object) handle.invokeExact((Object) new LegacyShop()));
+        assertEquals(Boolean.FALSE, (Object) UNLIMITED.handle(UnlimitedShop.class).invokeExact((Object) new UnlimitedShop()));
+
+        CachedMethod remove = new CachedMethod(void.class, new Class<?>[]{Object.class}, "remove");
+        Manager manager = new Manager();
+        remove.handle(Manager.class).invokeExact((Object) manager, (Object) "shop");
+        assertEquals("shop", manager.removed);
+    }
+
+    /**
+     * 测试缺少方法（或参数类型不符）的实现类解析为不支持
+     */
+    @Test
+    public void testMissingMethod() {
+        assertNull(UNLIMITED.handle(PlainShop.class));
+        assertNull(UNLIMITED.name(PlainShop.class));
+
+        CachedMethod removeByName = new CachedMethod(void.class, new Class<?>[]{String.class}, "remove");
+        assertNull(removeByName.handle(Manager.class));
+        assertNull(removeByName.name(Manager.class));
+    }
+
+    /**
+     * 测试非 public 实现类上的 public 方法同样可以调用
+     */
+    @Test
+    public void testNonPublicClass() throws Throwable {
+        assertEquals("isUnlimited", UNLIMITED.name(HiddenShop.class));
+        assertEquals(Boolean.TRUE, (Object) UNLIMITED.handle(HiddenShop.class).invokeExact((Object) new HiddenShop()));
+    }
+
+    public static class UnlimitedShop {
+        public boolean isUnlimited() {
+            return false;
+        }
+    }
+
+    public static class LegacyShop {
+        public Boolean isUnlimitedShop() {
+            return Boolean.TRUE;
+        }
+    }
+
+    public static class PlainShop {
+    }
+
+    private static class HiddenShop {
+        public boolean isUnlimited() {
+            return true;
+        }
+    }
+
+    public static class Manager {
+        String removed;
+
+        public boolean remove(Object shop) {
+            removed = String.valueOf(shop);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.plugin.shoptools.integration;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.maxgamer.quickshop.api.shop.ShopType;
+import org.plugin.shoptools.TestWorlds;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * QuickShop 商店表读取测试
+ * 在本地 SQLite 文件中按 QuickShop-Reremake 的表结构建表后读取
+ *
+ * @author NSrank & Augment
+ */
+public class QuickShopDatabaseReaderTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试读取各列、解析两种店主格式，并跳过未加载世界和无法解析的商店
+     */
+    @Test
+    public void testReadShopTable() throws SQLException {
+        UUID owner = UUID.randomUUID();
+        UUID legacyOwner = UUID.randomUUID();
+        String url = "jdbc:sqlite:" + tempDir.resolve("shops.db");
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE qs_shops (owner VARCHAR(255) NOT NULL, price double(32, 2) NOT NULL,"
+                        + " itemConfig TEXT CHARSET utf8 NOT NULL, x INT(32) NOT NULL, y INT(32) NOT NULL,"
+                        + " z INT(32) NOT NULL, world VARCHAR(32) NOT NULL, unlimited boolean, type boolean,"
+                        + " extra LONGTEXT, currency TEXT, disableDisplay int DEFAULT -1, taxAccount VARCHAR(255),"
+                        + " PRIMARY KEY (x, y, z, world))");
+                stmt.executeUpdate("CREATE TABLE qs_messages (owner VARCHAR(255), message TEXT, time BIGINT)");
+            }
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO qs_shops"
+                    + " (owner, price, itemConfig, x, y, z, world, unlimited, type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                insertShop(insert, owner.toString(), 12.5, "DIAMOND", 10, 64, -20, "world", false, 0);
+                insertShop(insert, "{\"owner\":\"" + legacyOwner + "\",\"staffs\":[]}", 1.0, "STONE",
+                        -300, 70, 5, "world_nether", true, 1);
+                insertShop(insert, owner.toString(), 2.0, "APPLE", 1, 2, 3, "unloaded_world", false, 0);
+                insertShop(insert, owner.toString(), 3.0, "NOT_A_MATERIAL", 4, 5, 6, "world", false, 0);
+                insertShop(insert, "not-a-uuid", 3.0, "STONE", 7, 8, 9, "world", false, 0);
+            }
+
+            Map<String, World> worlds = new HashMap<>();
+            worlds.put("world", TestWorlds.world("world"));
+            worlds.put("world_nether", TestWorlds.world("world_nether"));
+
+            QuickShopDatabaseReader reader = new QuickShopDatabaseReader(QuickShopDatabaseReaderTest::decode, LOGGER);
+            assertEquals("qs_shops", reader.findShopTable(conn));
+
+            List<RawShop> shops = new ArrayList<>();
+            assertEquals(2, reader.read(conn, worlds, shops::add));
+            shops.sort(Comparator.comparingDouble(RawShop::price));
+
+            RawShop stone = shops.get(0);
+            assertEquals(legacyOwner, stone.owner());
+            assertEquals(Material.STONE, stone.item().getType());
+            assertEquals(ShopType.BUYING, stone.shopType());
+            assertEquals(Boolean.TRUE, stone.unlimitedFlag());
+            assertEquals("world_nether", stone.location().getWorld().getName());
+            assertEquals(-300, stone.location().getBlockX());
+
+            RawShop diamond = shops.get(1);
+            assertEquals(owner, diamond.owner());
+            assertEquals(12.5, diamond.price());
+            assertEquals(ShopType.SELLING, diamond.shopType());
+            assertEquals(Boolean.FALSE, diamond.unlimitedFlag());
+            assertEquals(-20, diamond.location().getBlockZ());
+        }
+    }
+
+    private static void insertShop(PreparedStatement insert, String owner, double price, String item,
+                                   int x, int y, int z, String world, boolean unlimited, int type) throws SQLException {
+        insert.setString(1, owner);
+        insert.setDouble(2, price);
+        insert.setString(3, "item:\n  ==: org.bukkit.inventory.ItemStack\n  v: 3465\n  type: " + item + "\n");
+        insert.setInt(4, x);
+        insert.setInt(5, y);
+        insert.setInt(6, z);
+        insert.setString(7, world);
+        insert.setBoolean(8, unlimited);
+        insert.setInt(9, type);
+        insert.executeUpdate();
+    }
+
+    /**
+     * 测试用的商品解析：从 YAML 中取出 type（真实环境由 Bukkit 反序列化）
+     */
+    private static ItemStack decode(String itemConfig) {
+        for (String line : itemConfig.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("type:")) {
+                return new ItemStack(Material.valueOf(trimmed.substring(5).trim()));
+            }
+        }
+        return null;
+    }
+}
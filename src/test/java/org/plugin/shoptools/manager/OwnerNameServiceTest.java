@@ -0,0 +1,68 @@
+package org.plugin.shoptools.manager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 店主名称服务测试
+ *
+ * @author NSrank & Augment
+ */
+public class OwnerNameServiceTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试合并名称表与 usercache.json（以 usercache 为准），写入后重新加载
+     */
+    @Test
+    public void testLoadMergeAndPersist() throws IOException {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        UUID carol = UUID.randomUUID();
+        File dataFolder = tempDir.resolve("ShopTools").toFile();
+        dataFolder.mkdirs();
+        Files.write(new File(dataFolder, OwnerNameService.FILE_NAME).toPath(),
+                ("{\"" + alice + "\":\"Alice\",\"" + bob + "\":\"OldBob\",\"not-a-uuid\":\"X\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+        File userCache = tempDir.resolve("usercache.json").toFile();
+        Files.write(userCache.toPath(),
+                ("[{\"name\":\"Bob\",\"uuid\":\"" + bob + "\",\"expiresOn\":\"2026-11-01 00:00:00 +0000\"},"
+                        + "{\"name\":\"Carol\",\"uuid\":\"" + carol + "\",\"expiresOn\":\"2026-11-01 00:00:00 +0000\"}]")
+                        .getBytes(StandardCharsets.UTF_8));
+
+        OwnerNameService service = new OwnerNameService(dataFolder, userCache, LOGGER);
+        service.load();
+        assertEquals(3, service.size());
+        assertEquals("Alice", service.getName(alice));
+        assertEquals("Bob", service.getName(bob));
+        assertEquals("Carol", service.getName(carol));
+        assertNull(service.getName(UUID.randomUUID()));
+
+        // 进服更新名称，未变化时不标记
+        UUID dave = UUID.randomUUID();
+        assertTrue(service.update(dave, "Dave"));
+        assertFalse(service.update(dave, "Dave"));
+        service.save();
+
+        // 没有 usercache.json 时只从名称表恢复
+        OwnerNameService reloaded = new OwnerNameService(dataFolder, tempDir.resolve("missing.json").toFile(), LOGGER);
+        reloaded.load();
+        assertEquals(4, reloaded.size());
+        assertEquals("Bob", reloaded.getName(bob));
+        assertEquals("Dave", reloaded.getName(dave));
+    }
+}
@@ -0,0 +1,128 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.model.WorldKey;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 物品模糊搜索索引测试
+ *
+ * @author NSrank & Augment
+ */
+public class ItemSearchIndexTest {
+
+    /**
+     * 测试模糊匹配的结果与逐个 contains 一致，并按完全一致、前缀、单词开头、其他位置排序
+     */
+    @Test
+    public void testSearchRanking() {
+        List<ShopData> shops = Arrays.asList(
+                shop(0, "DEEPSLATE_DIAMOND_ORE", "DEEPSLATE_DIAMOND_ORE"),
+                shop(1, "DIAMOND_SWORD", "DIAMOND_SWORD"),
+                shop(2, "DIAMOND", "DIAMOND"),
+                shop(3, "DIAMOND_BLOCK", "DIAMOND_BLOCK"),
+                shop(4, "COBBLESTONE", "COBBLESTONE"),
+                shop(5, "STONE", "STONE"));
+        ShopIndex index = ShopIndex.build(shops);
+
+        assertEquals(Arrays.asList("DIAMOND", "DIAMOND_BLOCK", "DIAMOND_SWORD", "DEEPSLATE_DIAMOND_ORE"),
+                itemIds(index.searchItems("diamond")));
+        assertEquals(Arrays.asList("STONE", "COBBLESTONE"), itemIds(index.searchItems("stone")));
+        assertEquals(Collections.singletonList("DIAMOND_SWORD"), itemIds(index.searchItems("diamond sword")));
+        assertEquals(4, index.searchItems("iamond").size());
+        assertTrue(index.searchItems("emerald").isEmpty());
+        // 三元组都存在但不连续时不是匹配
+        assertTrue(index.searchItems("diamond stone").isEmpty());
+        // 不足三个字符时逐个检查词条
+        assertEquals(shops.size(), index.searchItems("o").size());
+    }
+
+    /**
+     * 测试按显示名称匹配（去除颜色代码），同一商店只出现一次
+     */
+    @Test
+    public void testDisplayNames() {
+        ShopData named = shop(0, "DIAMOND_SWORD", "§b钻石剑");
+        ShopData plain = shop(1, "DIAMOND_SWORD", "DIAMOND_SWORD");
+        ShopData pick = shop(2, "DIAMOND_PICKAXE", "§b钻石镐");
+        ShopIndex index = ShopIndex.build(Arrays.asList(named, plain, pick));
+
+        assertEquals(Collections.singletonList(named), index.searchItems("钻石剑"));
+        assertEquals(new HashSet<>(Arrays.asList(named, pick)), new HashSet<>(index.searchItems("钻石")));
+        // 显示名称与物品ID相同的商店不按名称单独命中
+        assertEquals(Collections.singletonList(pick), index.searchItems("钻石镐"));
+        List<ShopData> swords = index.searchItems("sword");
+        assertEquals(2, swords.size());
+        assertEquals(new HashSet<>(Arrays.asList(named, plain)), new HashSet<>(swords));
+    }
+
+    /**
+     * 测试词条集合不变时新快照沿用搜索索引，查询结果取自新快照的商店，原快照不受影响
+     */
+    @Test
+    public void testReuseWhenTermsUnchanged() {
+        ShopData sword = shop(0, "DIAMOND_SWORD", "DIAMOND_SWORD");
+        ShopData block = shop(1, "DIAMOND_BLOCK", "DIAMOND_BLOCK");
+        ShopData named = shop(2, "DIAMOND_BLOCK", "§b钻石块");
+        ShopIndex index = ShopIndex.build(Arrays.asList(sword, block, named));
+        index.buildItemSearch();
+
+        // 同一物品、同一名称的商店增减不改变词条
+        ShopData otherBlock = shop(3, "DIAMOND_BLOCK", "DIAMOND_BLOCK");
+        ShopData otherNamed = shop(4, "DIAMOND_BLOCK", "§b钻石块");
+        ShopIndex next = index.toBuilder().remove(block).add(otherBlock).add(otherNamed).build();
+        assertFalse(next.needsItemSearch());
+        assertEquals(new HashSet<>(Arrays.asList(sword, named, otherBlock, otherNamed)),
+                new HashSet<>(next.searchItems("diamond")));
+        assertEquals(new HashSet<>(Arrays.asList(named, otherNamed)), new HashSet<>(next.searchItems("钻石块")));
+        assertEquals(new HashSet<>(Arrays.asList(sword, block, named)), new HashSet<>(index.searchItems("diamond")));
+
+        // 移除同名商店中的一家，名称仍然存在
+        next = next.toBuilder().remove(named).build();
+        assertFalse(next.needsItemSearch());
+        assertEquals(Collections.singletonList(otherNamed), next.searchItems("钻石块"));
+    }
+
+    /**
+     * 测试新增或移除词条后需要重建，重建前沿用旧索引，重建后查询到新词条
+     */
+    @Test
+    public void testRebuildWhenTermsChange() {
+        ShopData sword = shop(0, "DIAMOND_SWORD", "DIAMOND_SWORD");
+        ShopData block = shop(1, "DIAMOND_BLOCK", "DIAMOND_BLOCK");
+        ShopIndex index = ShopIndex.build(Arrays.asList(sword, block));
+        index.buildItemSearch();
+
+        ShopIndex removed = index.toBuilder().remove(block).build();
+        assertTrue(removed.needsItemSearch());
+        assertEquals(Collections.singletonList(sword), removed.searchItems("diamond"));
+
+        ShopData ore = shop(2, "DIAMOND_ORE", "DIAMOND_ORE");
+        ShopIndex added = index.toBuilder().add(ore).build();
+        assertTrue(added.needsItemSearch());
+        assertTrue(added.searchItems("ore").isEmpty());
+        added.buildItemSearch();
+        assertFalse(added.needsItemSearch());
+        assertEquals(Collections.singletonList(ore), added.searchItems("ore"));
+
+        ShopData renamed = shop(3, "DIAMOND_SWORD", "§c屠龙刀");
+        ShopIndex named = added.toBuilder().add(renamed).build();
+        assertTrue(named.needsItemSearch());
+        named.buildItemSearch();
+        assertEquals(Collections.singletonList(renamed), named.searchItems("屠龙"));
+    }
+
+    private static List<String> itemIds(List<ShopData> shops) {
+        return shops.stream().map(ShopData::getItemId).collect(Collectors.toList());
+    }
+
+    private static ShopData shop(int x, String itemId, String displayName) {
+        return new ShopData(UUID.randomUUID(), itemId, displayName, WorldKey.of("world"), x, 64, 0, 1.0,
+                UUID.randomUUID(), "TestPlayer", ShopData.ShopType.SELLING, -1, false, null);
+    }
+}
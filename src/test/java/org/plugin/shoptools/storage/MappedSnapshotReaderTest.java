@@ -0,0 +1,132 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存映射惰性读取器测试
+ *
+ * @author NSrank & Augment
+ */
+public class MappedSnapshotReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试索引查询结果与原始数据一致，且同一记录始终返回同一对象
+     */
+    @Test
+    public void testIndexedQueries() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(5000);
+        MappedSnapshotReader reader = MappedSnapshotReader.open(writeSnapshot(shops));
+        assertEquals(shops.size(), reader.size());
+
+        // 精确匹配
+        long expectedItem = shops.stream().filter(shop -> shop.itemId.equals("ITEM_7")).count();
+        List<ShopData> byItem = reader.getByItemExact("item_7");
+        assertEquals(expectedItem, byItem.size());
+        assertTrue(byItem.stream().allMatch(shop -> shop.getItemId().equals("ITEM_7")));
+
+        // 模糊匹配
+        long expectedFuzzy = shops.stream().filter(shop -> shop.itemId.toLowerCase().contains("m_14")).count();
+        assertNull(reader.getByItemExact("m_14"));
+        assertEquals(expectedFuzzy, reader.getByItemContaining("m_14").size());
+
+        UUID owner = UUID.fromString(shops.get(0).ownerId);
+        long expectedOwner = shops.stream().filter(shop -> shop.ownerId.equals(owner.toString())).count();
+        assertEquals(expectedOwner, reader.getByOwner(owner).size());
+
+        SimpleShopData first = shops.get(0);
+        ShopData byLocation = reader.get(0);
+        assertEquals(first.shopId, byLocation.getShopId().toString());
+        assertSame(byLocation, reader.get(0));
+
+        // 范围查询与暴力计算一致，并按距离排序
+        List<String> expectedNearby = shops.stream()
+                .filter(shop -> shop.worldName.equals(first.worldName))
+                .filter(shop -> distanceSquared(shop, first) <= 2000.0 * 2000.0)
+                .map(shop -> shop.shopId)
+                .sorted()
+                .collect(Collectors.toList());
+        List<ShopData> nearby = reader.findNearby(first.worldName, first.x, first.y, first.z, 2000.0);
+        assertEquals(expectedNearby, nearby.stream().map(shop -> shop.getShopId().toString()).sorted()
+                .collect(Collectors.toList()));
+        assertSame(byLocation, nearby.get(0));
+
+        // 完整解码复用已解码的对象
+        List<ShopData> all = reader.materializeAll(2);
+        assertEquals(shops.size(), all.size());
+        assertSame(byLocation, all.get(0));
+        for (int i = 0; i < shops.size(); i++) {
+            assertEquals(shops.get(i).shopId, all.get(i).getShopId().toString());
+        }
+    }
+
+    /**
+     * 测试惰性读取与完整分段加载得到相同的商店
+     */
+    @Test
+    public void testMatchesFullLoad() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(3000);
+        File file = writeSnapshot(shops);
+        MappedSnapshotReader reader = MappedSnapshotReader.open(file);
+        List<ShopData> loaded = SegmentedSnapshotLoader.load(file, 2, Logger.getLogger("test"));
+
+        List<ShopData> materialized = reader.materializeAll(2);
+        assertEquals(loaded.size(), materialized.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            ShopData expected = loaded.get(i);
+            ShopData actual = materialized.get(i);
+            assertEquals(expected.getShopId(), actual.getShopId());
+            assertEquals(expected.getItemId(), actual.getItemId());
+            assertEquals(expected.getOwnerId(), actual.getOwnerId());
+            assertEquals(expected.getStock(), actual.getStock());
+        }
+    }
+
+    /**
+     * 对比惰性打开与完整分段加载的耗时（结果输出到控制台，使用 -Pbenchmark 运行）
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkOpenVersusFullLoad() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(60000);
+        File file = writeSnapshot(shops);
+        long open = Long.MAX_VALUE, full = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            MappedSnapshotReader reader = MappedSnapshotReader.open(file);
+            reader.getByItemExact("item_1");
+            open = Math.min(open, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            SegmentedSnapshotLoader.load(file, 2, Logger.getLogger("test"));
+            full = Math.min(full, System.nanoTime() - start);
+        }
+        System.out.printf("惰性打开并首次查询: %d ms，完整加载: %d ms（60000 个商店，取 5 轮最佳）%n",
+                open / 1_000_000, full / 1_000_000);
+    }
+
+    private File writeSnapshot(List<SimpleShopData> shops) throws IOException {
+        return new SnapshotFiles(tempDir.toFile(), 0).write("shops", SnapshotFormat.BINARY,
+                out -> BinarySnapshotCodec.write(shops, shops.size(), out));
+    }
+
+    private static double distanceSquared(SimpleShopData a, SimpleShopData b) {
+        double dx = a.x - b.x, dy = a.y - b.y, dz = a.z - b.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,100 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 价格历史时间序列测试
+ *
+ * @author NSrank & Augment
+ */
+public class PriceHistoryTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+    private static final long DAY = PriceHistory.BUCKET_MILLIS;
+    private static final long START = LocalDate.of(2026, 10, 1).toEpochDay() * DAY;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试按日期分段写入，查询只返回时间范围内指定物品的记录，重新打开后继续追加
+     */
+    @Test
+    public void testRecordAndQuery() throws IOException {
+        PriceHistory history = new PriceHistory(tempDir.toFile(), () -> 0, LOGGER);
+        history.record(change(START + 1000, "DIAMOND", "world:1:64:1", 10.0, 12.5));
+        history.record(change(START + 2000, "STONE", "world:2:64:2", 1.0, 0.5));
+        history.record(change(START + DAY + 500, "DIAMOND", "world:1:64:1", 12.5, 11.25));
+        assertEquals(3, history.flush());
+        history.close();
+
+        // 重新打开后追加到同一段，沿用段内字典
+        PriceHistory reopened = new PriceHistory(tempDir.toFile(), () -> 0, LOGGER);
+        reopened.record(change(START + DAY + 900, "DIAMOND", "world:3:70:3", 9.9999, 10.0));
+        reopened.flush();
+
+        List<PriceHistory.PriceChange> all = reopened.query("diamond", START, START + 2 * DAY);
+        assertEquals(3, all.size());
+        assertEquals(12.5, all.get(0).newPrice());
+        assertEquals(11.25, all.get(1).newPrice());
+        assertEquals("world:3:70:3", all.get(2).locationKey());
+        assertEquals(9.9999, all.get(2).oldPrice(), 1e-9);
+
+        List<PriceHistory.PriceChange> secondDay = reopened.query("DIAMOND", START + DAY, START + 2 * DAY);
+        assertEquals(2, secondDay.size());
+        assertTrue(reopened.query("stone", START + DAY, START + 2 * DAY).isEmpty());
+        reopened.close();
+
+        // 第二段共两条记录：一条新字典项 + 一条引用，每条只有十几个字节
+        File segment = new File(new File(tempDir.toFile(), PriceHistory.FOLDER), LocalDate.ofEpochDay(START / DAY + 1) + ".seg");
+        assertTrue(segment.length() < 14 + 2 * 48);
+    }
+
+    /**
+     * 测试末尾不完整的记录在查询时被忽略、追加前被截断，且过期段被删除
+     */
+    @Test
+    public void testTornTailAndRetention() throws IOException {
+        PriceHistory history = new PriceHistory(tempDir.toFile(), () -> 3, LOGGER);
+        history.record(change(START, "DIAMOND", "world:1:64:1", 10.0, 12.0));
+        history.record(change(START + 10, "DIAMOND", "world:1:64:1", 12.0, 13.0));
+        history.flush();
+        history.close();
+
+        File folder = new File(tempDir.toFile(), PriceHistory.FOLDER);
+        File segment = new File(folder, LocalDate.ofEpochDay(START / DAY) + ".seg");
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertEquals(1, history.query("DIAMOND", START, START + DAY).size());
+
+        history.record(change(START + 20, "DIAMOND", "world:1:64:1", 12.0, 14.0));
+        history.flush();
+        List<PriceHistory.PriceChange> changes = history.query("DIAMOND", START, START + DAY);
+        assertEquals(2, changes.size());
+        assertEquals(14.0, changes.get(1).newPrice());
+
+        // 保留 3 天：写入第 4 天后第 1 天的段被删除
+        history.record(change(START + 3 * DAY, "DIAMOND", "world:1:64:1", 14.0, 15.0));
+        history.flush();
+        history.close();
+        assertFalse(segment.exists());
+        assertEquals(1, history.query("DIAMOND", START, START + 4 * DAY).size());
+    }
+
+    private static PriceHistory.PriceChange change(long timestamp, String item, String location,
+                                                   double oldPrice, double newPrice) {
+        return new PriceHistory.PriceChange(timestamp, item, location, oldPrice, newPrice);
+    }
+}
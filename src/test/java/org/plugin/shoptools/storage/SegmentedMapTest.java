@@ -0,0 +1,67 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分段共享映射测试
+ *
+ * @author NSrank & Augment
+ */
+public class SegmentedMapTest {
+
+    /**
+     * 测试修改后的新映射与逐个操作 HashMap 的结果一致，原映射不受影响
+     */
+    @Test
+    public void testEditMatchesHashMap() {
+        Map<Integer, String> expected = new HashMap<>();
+        SegmentedMap.Editor<Integer, String> editor = SegmentedMap.<Integer, String>empty().edit();
+        for (int i = 0; i < 5000; i++) {
+            expected.put(i, "v" + i);
+            editor.put(i, "v" + i);
+        }
+        SegmentedMap<Integer, String> map = editor.build();
+        assertEquals(expected, map);
+
+        SegmentedMap.Editor<Integer, String> next = map.edit();
+        for (int i = 0; i < 5000; i += 3) {
+            next.remove(i);
+        }
+        next.put(7, "changed");
+        next.put(10000, "added");
+        SegmentedMap<Integer, String> edited = next.build();
+
+        Map<Integer, String> expectedEdited = new HashMap<>(expected);
+        for (int i = 0; i < 5000; i += 3) {
+            expectedEdited.remove(i);
+        }
+        expectedEdited.put(7, "changed");
+        expectedEdited.put(10000, "added");
+        assertEquals(expectedEdited, edited);
+        assertEquals(expectedEdited.size(), edited.size());
+        assertFalse(edited.containsKey(3));
+
+        // 原映射保持原样
+        assertEquals(expected, map);
+        assertEquals("v7", map.get(7));
+        assertThrows(UnsupportedOperationException.class, () -> map.put(1, "x"));
+    }
+
+    /**
+     * 测试按对象身份移除：键映射到其他对象时不移除
+     */
+    @Test
+    public void testRemoveByIdentity() {
+        String value = new String("shop");
+        SegmentedMap.Editor<String, String> editor = SegmentedMap.<String, String>empty().edit();
+        editor.put("key", value);
+        assertFalse(editor.remove("key", new String("shop")));
+        assertTrue(editor.remove("key", value));
+        assertTrue(editor.build().isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按世界分片的快照存储测试
+ *
+ * @author NSrank & Augment
+ */
+public class ShardedSnapshotStoreTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试旧版单文件快照按记录中的世界名称拆分，且不依赖世界是否已加载
+     */
+    @Test
+    public void testMigrateLegacySplitsByWorld() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(2000);
+        new SnapshotFiles(tempDir.toFile(), 0).write(ShardedSnapshotStore.LEGACY_NAME, SnapshotFormat.BINARY,
+                out -> BinarySnapshotCodec.write(shops, shops.size(), out));
+
+        ShardedSnapshotStore store = new ShardedSnapshotStore(tempDir.toFile(), 2, () -> SnapshotFormat.BINARY, () -> 0, LOGGER);
+        assertTrue(store.migrateLegacy(2));
+
+        Map<String, Long> expected = shops.stream()
+                .collect(Collectors.groupingBy(shop -> shop.worldName, Collectors.counting()));
+        assertEquals(expected.keySet(), store.shardNames());
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            File shard = store.candidates(entry.getKey(), SnapshotFormat.BINARY).get(0).file();
+            SnapshotFiles.verify(shard);
+            assertEquals(entry.getValue().intValue(), ShardedSnapshotStore.read(shard, record -> { }));
+        }
+        assertFalse(tempDir.resolve("shops.dat").toFile().exists());
+        assertTrue(tempDir.resolve("shops.dat.bak").toFile().exists());
+
+        // 分片已存在时不再拆分
+        assertFalse(store.migrateLegacy(2));
+    }
+
+    /**
+     * 测试保存只覆盖传入的世界，未传入世界的分片保持原样
+     */
+    @Test
+    public void testSaveKeepsUnloadedShards() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(2000);
+        new SnapshotFiles(tempDir.toFile(), 0).write(ShardedSnapshotStore.LEGACY_NAME, SnapshotFormat.BINARY,
+                out -> BinarySnapshotCodec.write(shops, shops.size(), out));
+        ShardedSnapshotStore store = new ShardedSnapshotStore(tempDir.toFile(), 2, () -> SnapshotFormat.BINARY, () -> 0, LOGGER);
+        store.migrateLegacy(2);
+
+        File unloaded = store.candidates("resource", SnapshotFormat.BINARY).get(0).file();
+        byte[] before = Files.readAllBytes(unloaded.toPath());
+
+        // 缓存中只有 world 的 10 个商店，resource 分片不在本次写出范围内
+        List<ShopData> cached = shops.stream()
+                .filter(shop -> shop.worldName.equals("world"))
+                .limit(10)
+                .map(SimpleShopData::toShopData)
+                .collect(Collectors.toList());
+        Map<String, List<ShopData>> shopsByWorld = new HashMap<>();
+        shopsByWorld.put("world", cached);
+        shopsByWorld.put("world_nether", new ArrayList<>());
+        store.saveWorlds(shopsByWorld);
+
+        assertEquals(10, ShardedSnapshotStore.read(
+                store.candidates("world", SnapshotFormat.BINARY).get(0).file(), record -> { }));
+        // 已加载但没有商店的分片写出为空分片
+        assertEquals(0, ShardedSnapshotStore.read(
+                store.candidates("world_nether", SnapshotFormat.BINARY).get(0).file(), record -> { }));
+        assertArrayEquals(before, Files.readAllBytes(unloaded.toPath()));
+        assertEquals(1, store.candidates("resource", SnapshotFormat.BINARY).size());
+    }
+
+    /**
+     * 测试单个商店的库存更新与删除只改写所在分片
+     */
+    @Test
+    public void testUpdateStocksAndDelete() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(200);
+        new SnapshotFiles(tempDir.toFile(), 0).write(ShardedSnapshotStore.LEGACY_NAME, SnapshotFormat.BINARY,
+                out -> BinarySnapshotCodec.write(shops, shops.size(), out));
+        ShardedSnapshotStore store = new ShardedSnapshotStore(tempDir.toFile(), 2, () -> SnapshotFormat.BINARY, () -> 0, LOGGER);
+        store.migrateLegacy(2);
+
+        List<ShopData> loaded = store.loadWorld("world");
+        ShopData changed = loaded.get(0);
+        changed.setStock(42, 1234L);
+        store.updateStocks(Collections.singletonList(changed));
+        store.delete(Collections.singletonList(loaded.get(1).getShopId()));
+
+        List<ShopData> reloaded = store.loadWorld("world");
+        assertEquals(loaded.size() - 1, reloaded.size());
+        ShopData stored = reloaded.stream()
+                .filter(shop -> shop.getShopId().equals(changed.getShopId()))
+                .findFirst().orElseThrow();
+        assertEquals(42, stored.getStock());
+        assertEquals(1234L, stored.getLastScanned());
+        assertTrue(stored.isStockKnown());
+    }
+}
@@ -0,0 +1,151 @@
+package org.plugin.shoptools.storage;
+
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+import org.plugin.shoptools.TestWorlds;
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.model.WorldKey;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商店索引测试
+ *
+ * @author NSrank & Augment
+ */
+public class ShopIndexTest {
+
+    private static final String[] WORLDS = {"world", "world_nether", "world_the_end", "resource"};
+
+    /**
+     * 测试整体构建的索引与移除后的新快照各索引保持一致，空分组被清理，原快照不受影响
+     */
+    @Test
+    public void testBuildAndRemove() {
+        List<ShopData> shops = loadedShops(500);
+
+        ShopIndex index = ShopIndex.build(shops);
+        assertEquals(shops.size(), index.shops.size());
+        assertEquals(shops.size(), index.byLocation.size());
+        assertEquals(shops.size(), index.byItem.values().stream().mapToInt(List::size).sum());
+        assertEquals(shops.size(), index.byOwner.values().stream().mapToInt(List::size).sum());
+        assertEquals(shops.size(), nearbyCount(index));
+
+        // 移除某个物品的全部商店后，该物品的分组也被移除
+        String itemKey = shops.get(0).getItemId().toLowerCase();
+        List<ShopData> removed = new ArrayList<>(index.byItem.get(itemKey));
+        ShopIndex.Builder builder = index.toBuilder();
+        removed.forEach(builder::remove);
+        ShopIndex next = builder.build();
+
+        int remaining = shops.size() - removed.size();
+        assertFalse(next.byItem.containsKey(itemKey));
+        assertEquals(remaining, next.shops.size());
+        assertEquals(remaining, next.byLocation.size());
+        assertEquals(remaining, next.byOwner.values().stream().mapToInt(List::size).sum());
+        assertEquals(remaining, nearbyCount(next));
+        assertTrue(next.byOwner.values().stream().noneMatch(List::isEmpty));
+
+        // 原快照保持完整，未修改的分组在两份快照之间共享
+        assertEquals(shops.size(), index.shops.size());
+        assertEquals(removed.size(), index.byItem.get(itemKey).size());
+        assertEquals(shops.size(), nearbyCount(index));
+        String otherItem = shops.stream().map(shop -> shop.getItemId().toLowerCase())
+                .filter(item -> !item.equals(itemKey)).findFirst().orElseThrow();
+        assertSame(index.byItem.get(otherItem), next.byItem.get(otherItem));
+        assertThrows(UnsupportedOperationException.class, () -> next.byItem.get(otherItem).clear());
+    }
+
+    /**
+     * 测试区块空间索引的半径查询与逐个按距离过滤的结果一致
+     */
+    @Test
+    public void testFindNearby() {
+        List<ShopData> shops = loadedShops(2000);
+        ShopIndex index = ShopIndex.build(shops);
+        ShopData center = shops.get(0);
+        for (double radius : new double[]{0, 50, 500, 5000}) {
+            List<ShopData> expected = shops.stream()
+                    .filter(shop -> center.getWorldName().equals(shop.getWorldName()))
+                    .filter(shop -> distance(shop, center) <= radius)
+                    .collect(Collectors.toList());
+            List<ShopData> found = index.findNearby(center.getWorldName(),
+                    center.getX(), center.getY(), center.getZ(), radius);
+            assertEquals(new HashSet<>(expected), new HashSet<>(found));
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(distance(found.get(i - 1), center) <= distance(found.get(i), center));
+            }
+        }
+        assertTrue(index.findNearby("missing", 0, 64, 0, 100).isEmpty());
+    }
+
+    /**
+     * 测试世界卸载后只释放该世界的空间索引，商店仍可按坐标查询，重新加载后恢复
+     */
+    @Test
+    public void testReleaseAndBindWorld() {
+        List<ShopData> shops = loadedShops(500);
+        ShopIndex loaded = ShopIndex.build(shops);
+        long resourceShops = shops.stream().filter(shop -> "resource".equals(shop.getWorldName())).count();
+        assertTrue(resourceShops > 0);
+
+        World resource = TestWorlds.world("resource");
+        WorldKey.bind(resource);
+        ShopIndex.Builder release = loaded.toBuilder();
+        assertEquals(resourceShops, release.releaseWorld("resource"));
+        WorldKey.release(resource);
+        ShopIndex index = release.build();
+        assertEquals(shops.size() - resourceShops, nearbyCount(index));
+        assertEquals(0, nearbyCount(index, "resource"));
+
+        ShopData unloaded = shops.stream().filter(shop -> "resource".equals(shop.getWorldName())).findFirst().orElseThrow();
+        assertFalse(unloaded.isWorldLoaded());
+        assertNull(unloaded.getLocation());
+        assertSame(unloaded, index.byLocation.get(unloaded.getLocationKey()));
+
+        // 卸载期间新增的商店不进入空间索引，世界重新加载后一并加入
+        index = index.toBuilder().remove(unloaded).add(unloaded).build();
+        assertEquals(0, nearbyCount(index, "resource"));
+        WorldKey.bind(TestWorlds.world("resource"));
+        ShopIndex.Builder bind = index.toBuilder();
+        assertEquals(resourceShops, bind.bindWorld("resource"));
+        assertEquals(shops.size(), nearbyCount(bind.build()));
+        assertNotNull(unloaded.getLocation());
+    }
+
+    /**
+     * 通过范围查询统计空间索引中的商店数量（半径覆盖全部坐标）
+     */
+    private static int nearbyCount(ShopIndex index, String... worlds) {
+        if (worlds.length == 0) {
+            worlds = WORLDS;
+        }
+        int count = 0;
+        for (String world : worlds) {
+            count += index.findNearby(world, 0, 64, 0, 100000).size();
+        }
+        return count;
+    }
+
+    private static double distance(ShopData a, ShopData b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        double dz = a.getZ() - b.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * 生成商店并绑定它们所在的全部世界
+     */
+    private static List<ShopData> loadedShops(int count) {
+        for (String name : WORLDS) {
+            WorldKey.bind(TestWorlds.world(name));
+        }
+        return SnapshotBenchmarkTest.createShops(count).stream()
+                .map(SimpleShopData::toShopData)
+                .collect(Collectors.toList());
+    }
+}
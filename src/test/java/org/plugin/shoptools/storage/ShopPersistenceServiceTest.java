@@ -0,0 +1,62 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 后台快照写入服务测试
+ *
+ * @author NSrank & Augment
+ */
+public class ShopPersistenceServiceTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    /**
+     * 测试合并窗口内的多次请求只写入一次
+     */
+    @Test
+    public void testRequestsCoalesced() throws InterruptedException {
+        AtomicInteger writes = new AtomicInteger();
+        ShopPersistenceService service = new ShopPersistenceService(() -> {
+            writes.incrementAndGet();
+            return true;
+        }, 200L, LOGGER);
+
+        for (int i = 0; i < 100; i++) {
+            service.markAllDirty();
+            service.requestSave();
+        }
+        Thread.sleep(600L);
+        assertEquals(1, writes.get());
+
+        // 没有新变更时不写盘
+        service.requestSave();
+        Thread.sleep(400L);
+        assertEquals(1, writes.get());
+        service.shutdown(1000L);
+    }
+
+    /**
+     * 测试关闭时立即写入尚未到期的变更
+     */
+    @Test
+    public void testShutdownFlushesPending() {
+        AtomicInteger writes = new AtomicInteger();
+        ShopPersistenceService service = new ShopPersistenceService(() -> {
+            writes.incrementAndGet();
+            return true;
+        }, 60000L, LOGGER);
+
+        service.markAllDirty();
+        service.requestSave();
+        assertEquals(0, writes.get());
+
+        service.shutdown(5000L);
+        assertEquals(1, writes.get());
+    }
+}
@@ -0,0 +1,367 @@
+package org.plugin.shoptools.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.plugin.shoptools.model.ShopData;
+import org.plugin.shoptools.util.CompressionUtil;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商店快照格式测试
+ * 验证各格式的读写往返与兼容性；标记为 benchmark 的对比测试（文件大小、保存和加载耗时）
+ * 默认不运行，使用 {@code mvn test -Pbenchmark} 运行
+ *
+ * @author NSrank & Augment
+ */
+public class SnapshotBenchmarkTest {
+
+    private static final int SHOP_COUNT = 60000;
+    private static final int ROUNDS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试二进制快照读写往返后数据一致
+     */
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        List<SimpleShopData> shops = createShops(500);
+        shops.get(0).worldName = null;
+        shops.get(1).itemDisplayName = null;
+        shops.get(2).ownerName = null;
+        shops.get(3).stockKnown = true;
+        shops.get(3).lastScanned = 1700000000000L;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinarySnapshotCodec.write(shops, shops.size(), out);
+        List<SimpleShopData> loaded = new ArrayList<>();
+        BinarySnapshotCodec.read(new ByteArrayInputStream(out.toByteArray()), loaded::add);
+
+        assertEquals(shops.size(), loaded.size());
+        for (int i = 0; i < shops.size(); i++) {
+            assertRecordEquals(shops.get(i), loaded.get(i));
+        }
+    }
+
+    /**
+     * 测试版本 1 快照（记录不含扫描时间）仍可读取，库存视为未确认
+     */
+    @Test
+    public void testReadVersion1() throws IOException {
+        List<SimpleShopData> shops = createShops(100);
+        shops.forEach(shop -> shop.stockKnown = true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinarySnapshotCodec.write(shops, shops.size(), out);
+        byte[] current = out.toByteArray();
+
+        // 改写为版本 1：版本号改为 1，去掉每条记录末尾的时间戳和已确认标志
+        long offset = BinarySnapshotCodec.readHeader(new ByteArrayInputStream(current)).recordsOffset();
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        legacy.write(current, 0, (int) offset);
+        for (int i = 0; i < shops.size(); i++) {
+            int base = (int) offset + i * BinarySnapshotCodec.RECORD_SIZE;
+            legacy.write(current, base, BinarySnapshotCodec.RECORD_SIZE_V1 - 1);
+            legacy.write(current[base + BinarySnapshotCodec.RECORD_SIZE_V1 - 1] & 1);
+        }
+        byte[] version1 = legacy.toByteArray();
+        version1[4] = 0;
+        version1[5] = 1;
+
+        List<SimpleShopData> loaded = new ArrayList<>();
+        BinarySnapshotCodec.read(new ByteArrayInputStream(version1), loaded::add);
+        assertEquals(shops.size(), loaded.size());
+        for (int i = 0; i < shops.size(); i++) {
+            shops.get(i).stockKnown = false;
+            assertRecordEquals(shops.get(i), loaded.get(i));
+        }
+    }
+
+    /**
+     * 测试分段并行加载与顺序读取结果一致且保持文件顺序
+     */
+    @Test
+    public void testSegmentedLoad() throws IOException {
+        List<SimpleShopData> shops = createShops(20000);
+        shops.get(0).worldName = null;
+        File binaryFile = tempDir.resolve("shops.dat").toFile();
+        try (OutputStream out = new FileOutputStream(binaryFile)) {
+            BinarySnapshotCodec.write(shops, shops.size(), out);
+        }
+
+        List<ShopData> loaded = SegmentedSnapshotLoader.load(binaryFile, 4,
+                Logger.getLogger("test"));
+        assertEquals(shops.size(), loaded.size());
+        for (int i = 0; i < shops.size(); i++) {
+            SimpleShopData expected = shops.get(i);
+            ShopData actual = loaded.get(i);
+            assertEquals(expected.shopId, actual.getShopId().toString());
+            assertEquals(expected.itemId, actual.getItemId());
+            assertEquals(expected.ownerId, actual.getOwnerId().toString());
+            assertEquals(expected.price, actual.getPrice());
+            assertEquals(expected.stock, actual.getStock());
+            assertEquals(expected.isUnlimited, actual.isUnlimited());
+        }
+
+        // 文件被截断时报错而不是静默少读
+        try (RandomAccessFile file = new RandomAccessFile(binaryFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        assertThrows(IOException.class, () -> SegmentedSnapshotLoader.load(binaryFile, 4,
+                Logger.getLogger("test")));
+    }
+
+    /**
+     * 测试流式 JSON 编解码器与旧版 Gson 输出互相兼容
+     */
+    @Test
+    public void testStreamingJsonCompatibility() throws IOException {
+        List<SimpleShopData> shops = createShops(500);
+        shops.get(0).worldName = null;
+        shops.get(1).itemDisplayName = null;
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+        // 旧版 Gson 写出的文件可被流式读取
+        List<SimpleShopData> loaded = new ArrayList<>();
+        JsonSnapshotCodec.read(new StringReader(gson.toJson(shops)), loaded::add);
+        assertEquals(shops.size(), loaded.size());
+        for (int i = 0; i < shops.size(); i++) {
+            assertRecordEquals(shops.get(i), loaded.get(i));
+        }
+
+        // 流式写出的内容与旧版 Gson 输出一致
+        StringWriter writer = new StringWriter();
+        JsonSnapshotCodec.write(shops, writer);
+        assertEquals(gson.toJson(shops), writer.toString());
+
+        // 空文件视为没有记录
+        assertEquals(0, JsonSnapshotCodec.read(new StringReader(""), record -> fail()));
+    }
+
+    /**
+     * 测试格式自动识别
+     */
+    @Test
+    public void testFormatDetection() throws IOException {
+        List<SimpleShopData> shops = createShops(10);
+
+        File binaryFile = tempDir.resolve("shops.dat").toFile();
+        try (OutputStream out = new FileOutputStream(binaryFile)) {
+            BinarySnapshotCodec.write(shops, shops.size(), out);
+        }
+        File jsonFile = tempDir.resolve("shops.json").toFile();
+        try (Writer writer = new FileWriter(jsonFile)) {
+            new Gson().toJson(shops, writer);
+        }
+
+        assertEquals(SnapshotFormat.BINARY, SnapshotFormat.detect(binaryFile));
+        assertEquals(SnapshotFormat.JSON, SnapshotFormat.detect(jsonFile));
+    }
+
+    /**
+     * 测试压缩快照经校验尾写出后可被自动识别并读回，压缩与未压缩文件混合存在时互不影响
+     */
+    @Test
+    public void testCompressedSnapshots() throws IOException {
+        List<SimpleShopData> shops = createShops(300);
+        SnapshotFiles files = new SnapshotFiles(tempDir.toFile(), 0);
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            File plain = files.write("plain", format, out -> ShardedSnapshotStore.encode(format, 0, shops, shops.size(), out));
+            File packed = files.write("packed", format, out -> ShardedSnapshotStore.encode(format, 6, shops, shops.size(), out));
+
+            assertFalse(CompressionUtil.isCompressed(plain));
+            assertTrue(CompressionUtil.isCompressed(packed));
+            assertTrue(packed.length() < plain.length());
+            assertEquals(format, SnapshotFormat.detect(packed));
+            SnapshotFiles.verify(packed);
+
+            List<SimpleShopData> loaded = new ArrayList<>();
+            assertEquals(shops.size(), ShardedSnapshotStore.read(packed, loaded::add));
+            for (int i = 0; i < shops.size(); i++) {
+                assertRecordEquals(shops.get(i), loaded.get(i));
+            }
+        }
+    }
+
+    /**
+     * 对比 Gson、流式 JSON 与二进制快照的大小和耗时（结果输出到控制台）
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkJsonVersusBinary() throws IOException {
+        List<SimpleShopData> shops = createShops(SHOP_COUNT);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Type listType = new TypeToken<List<SimpleShopData>>(){}.getType();
+
+        File jsonFile = tempDir.resolve("shops.json").toFile();
+        File binaryFile = tempDir.resolve("shops.dat").toFile();
+
+        long jsonSave = Long.MAX_VALUE, jsonLoad = Long.MAX_VALUE;
+        long streamSave = Long.MAX_VALUE, streamLoad = Long.MAX_VALUE;
+        long binarySave = Long.MAX_VALUE, binaryLoad = Long.MAX_VALUE;
+        long segmentedLoad = Long.MAX_VALUE;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+        Logger logger = Logger.getLogger("benchmark");
+        List<SimpleShopData> jsonLoaded = null;
+        int streamLoaded = 0;
+        int binaryLoaded = 0;
+        int segmentedLoaded = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            try (Writer writer = new FileWriter(jsonFile)) {
+                gson.toJson(shops, writer);
+            }
+            jsonSave = Math.min(jsonSave, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (Reader reader = new FileReader(jsonFile)) {
+                jsonLoaded = gson.fromJson(reader, listType);
+            }
+            jsonLoad = Math.min(jsonLoad, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (Writer writer = new BufferedWriter(new FileWriter(jsonFile))) {
+                JsonSnapshotCodec.write(shops, writer);
+            }
+            streamSave = Math.min(streamSave, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (Reader reader = new BufferedReader(new FileReader(jsonFile))) {
+                streamLoaded = JsonSnapshotCodec.read(reader, record -> { });
+            }
+            streamLoad = Math.min(streamLoad, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (OutputStream out = new FileOutputStream(binaryFile)) {
+                BinarySnapshotCodec.write(shops, shops.size(), out);
+            }
+            binarySave = Math.min(binarySave, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (InputStream in = new FileInputStream(binaryFile)) {
+                binaryLoaded = BinarySnapshotCodec.read(in, record -> { });
+            }
+            binaryLoad = Math.min(binaryLoad, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            segmentedLoaded = SegmentedSnapshotLoader.load(binaryFile, threads, logger).size();
+            segmentedLoad = Math.min(segmentedLoad, System.nanoTime() - start);
+        }
+
+        System.out.printf("快照格式对比（%d 个商店，取 %d 轮最佳）%n", SHOP_COUNT, ROUNDS);
+        System.out.printf("  JSON   : %,12d 字节  保存 %6d ms  加载 %6d ms%n",
+                jsonFile.length(), jsonSave / 1_000_000, jsonLoad / 1_000_000);
+        System.out.printf("  流式JSON: %,12d 字节  保存 %6d ms  加载 %6d ms%n",
+                jsonFile.length(), streamSave / 1_000_000, streamLoad / 1_000_000);
+        System.out.printf("  二进制 : %,12d 字节  保存 %6d ms  加载 %6d ms%n",
+                binaryFile.length(), binarySave / 1_000_000, binaryLoad / 1_000_000);
+        System.out.printf("  二进制分段加载（%d 线程，含转换）: %6d ms%n", threads, segmentedLoad / 1_000_000);
+
+        assertEquals(SHOP_COUNT, jsonLoaded.size());
+        assertEquals(SHOP_COUNT, streamLoaded);
+        assertEquals(SHOP_COUNT, binaryLoaded);
+        assertEquals(SHOP_COUNT, segmentedLoaded);
+        assertTrue(binaryFile.length() < jsonFile.length());
+    }
+
+    /**
+     * 对比不同压缩级别下二进制与 JSON 快照的写出字节数和 CPU 耗时（结果输出到控制台）
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkCompressionLevels() throws IOException {
+        List<SimpleShopData> shops = createShops(SHOP_COUNT);
+        int[] levels = {0, 1, 3, 6, 9};
+
+        System.out.printf("压缩级别对比（%d 个商店，取 %d 轮最佳）%n", SHOP_COUNT, ROUNDS);
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            File file = tempDir.resolve("shops" + format.getExtension()).toFile();
+            for (int level : levels) {
+                long save = Long.MAX_VALUE, load = Long.MAX_VALUE;
+                int loaded = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+                        ShardedSnapshotStore.encode(format, level, shops, shops.size(), out);
+                    }
+                    save = Math.min(save, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    loaded = ShardedSnapshotStore.read(file, record -> { });
+                    load = Math.min(load, System.nanoTime() - start);
+                }
+                System.out.printf("  %-6s 级别 %d: %,12d 字节  保存 %6d ms  加载 %6d ms%n",
+                        format.name().toLowerCase(), level, file.length(), save / 1_000_000, load / 1_000_000);
+                assertEquals(SHOP_COUNT, loaded);
+            }
+        }
+    }
+
+    /**
+     * 创建测试商店数据：少量世界、数百个店主、上百种物品，接近真实服务器的重复度
+     */
+    static List<SimpleShopData> createShops(int count) {
+        Random random = new Random(42);
+        String[] worlds = {"world", "world_nether", "world_the_end", "resource"};
+        UUID[] owners = new UUID[400];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+
+        List<SimpleShopData> shops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SimpleShopData shop = new SimpleShopData();
+            int owner = random.nextInt(owners.length);
+            int item = random.nextInt(150);
+            shop.shopId = UUID.randomUUID().toString();
+            shop.itemId = "ITEM_" + item;
+            shop.itemDisplayName = "ITEM_" + item;
+            shop.worldName = worlds[random.nextInt(worlds.length)];
+            shop.x = random.nextInt(20000) - 10000;
+            shop.y = random.nextInt(256);
+            shop.z = random.nextInt(20000) - 10000;
+            shop.price = Math.round(random.nextDouble() * 10000) / 100.0;
+            shop.ownerId = owners[owner].toString();
+            shop.ownerName = owners[owner].toString();
+            shop.shopType = random.nextBoolean() ? "SELLING" : "BUYING";
+            shop.stock = random.nextInt(2000);
+            shop.isUnlimited = random.nextInt(50) == 0;
+            shops.add(shop);
+        }
+        return shops;
+    }
+
+    static void assertRecordEquals(SimpleShopData expected, SimpleShopData actual) {
+        assertEquals(expected.shopId, actual.shopId);
+        assertEquals(expected.itemId, actual.itemId);
+        assertEquals(expected.itemDisplayName, actual.itemDisplayName);
+        assertEquals(expected.worldName, actual.worldName);
+        assertEquals(expected.x, actual.x);
+        assertEquals(expected.y, actual.y);
+        assertEquals(expected.z, actual.z);
+        assertEquals(expected.price, actual.price);
+        assertEquals(expected.ownerId, actual.ownerId);
+        assertEquals(expected.ownerName, actual.ownerName);
+        assertEquals(expected.shopType, actual.shopType);
+        assertEquals(expected.stock, actual.stock);
+        assertEquals(expected.isUnlimited, actual.isUnlimited);
+        assertEquals(expected.stockKnown, actual.stockKnown);
+        assertEquals(expected.lastScanned, actual.lastScanned);
+    }
+}
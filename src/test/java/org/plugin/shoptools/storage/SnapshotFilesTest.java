@@ -0,0 +1,96 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 快照文件原子写入与多代备份测试
+ *
+ * @author NSrank & Augment
+ */
+public class SnapshotFilesTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试多次写入后按代轮换，且最多保留配置的代数
+     */
+    @Test
+    public void testGenerationsRotate() throws IOException {
+        SnapshotFiles files = new SnapshotFiles(tempDir.toFile(), 2);
+        for (int i = 1; i <= 4; i++) {
+            writeShops(files, i);
+        }
+
+        List<SnapshotFiles.Candidate> candidates = files.candidates("shops", SnapshotFormat.BINARY);
+        assertEquals(3, candidates.size());
+        for (int generation = 0; generation < candidates.size(); generation++) {
+            SnapshotFiles.Candidate candidate = candidates.get(generation);
+            assertEquals(generation, candidate.generation());
+            SnapshotFiles.verify(candidate.file());
+            assertEquals(4 - generation, countRecords(candidate.file()));
+        }
+        assertFalse(tempDir.resolve("shops.dat.3").toFile().exists());
+        assertFalse(tempDir.resolve("shops.dat.tmp").toFile().exists());
+    }
+
+    /**
+     * 测试内容损坏的快照无法通过校验，旧版无校验尾的快照直接通过
+     */
+    @Test
+    public void testChecksumDetectsCorruption() throws IOException {
+        SnapshotFiles files = new SnapshotFiles(tempDir.toFile(), 1);
+        File file = writeShops(files, 20);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        }
+        assertThrows(IOException.class, () -> SnapshotFiles.verify(file));
+
+        File legacy = tempDir.resolve("legacy.dat").toFile();
+        try (OutputStream out = new FileOutputStream(legacy)) {
+            List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(20);
+            BinarySnapshotCodec.write(shops, shops.size(), out);
+        }
+        SnapshotFiles.verify(legacy);
+    }
+
+    /**
+     * 测试写入失败时保留原有快照且不留下临时文件
+     */
+    @Test
+    public void testFailedWriteKeepsCurrent() throws IOException {
+        SnapshotFiles files = new SnapshotFiles(tempDir.toFile(), 2);
+        File current = writeShops(files, 5);
+
+        assertThrows(IOException.class, () -> files.write("shops", SnapshotFormat.BINARY, out -> {
+            out.write(new byte[]{1, 2, 3});
+            throw new IOException("模拟写入失败");
+        }));
+
+        assertEquals(5, countRecords(current));
+        assertEquals(1, files.candidates("shops", SnapshotFormat.BINARY).size());
+        assertFalse(tempDir.resolve("shops.dat.tmp").toFile().exists());
+    }
+
+    private static File writeShops(SnapshotFiles files, int count) throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(count);
+        return files.write("shops", SnapshotFormat.BINARY, out -> BinarySnapshotCodec.write(shops, shops.size(), out));
+    }
+
+    private static int countRecords(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return BinarySnapshotCodec.read(in, record -> { });
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.plugin.shoptools.model.ShopData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SQLite 商店存储测试
+ *
+ * @author NSrank & Augment
+ */
+public class SqliteShopStoreTest {
+
+    private static final Set<String> WORLD_NAMES =
+            new HashSet<>(Arrays.asList("world", "world_nether", "world_the_end", "resource"));
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试导入后按世界加载，以及按物品、店主、区域查询的结果与全量过滤一致
+     */
+    @Test
+    public void testQueries() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(2000);
+        SqliteShopStore store = SqliteShopStore.open(tempDir.toFile());
+        try {
+            store.importRecords(shops);
+
+            assertEquals(WORLD_NAMES, store.worldNames());
+            assertEquals(count(shops, shop -> shop.worldName.equals("world")), store.loadWorld("world").size());
+
+            assertEquals(count(shops, shop -> shop.itemId.equalsIgnoreCase("ITEM_7")),
+                    store.findByItem("item_7").size());
+            // 下划线按字面匹配，不作为通配符
+            assertEquals(count(shops, shop -> shop.itemId.toLowerCase().contains("m_1")),
+                    store.findByItem("m_1").size());
+            assertTrue(store.findByItem("item-1").isEmpty());
+
+            UUID owner = UUID.fromString(shops.get(0).ownerId);
+            assertEquals(count(shops, shop -> shop.ownerId.equals(owner.toString())),
+                    store.findByOwner(owner).size());
+
+            List<ShopData> region = store.findInRegion("world_nether", -2000, -3000, 4000, 1000);
+            assertEquals(count(shops, shop -> shop.worldName.equals("world_nether")
+                    && shop.x >= -2000 && shop.x <= 4000 && shop.z >= -3000 && shop.z <= 1000), region.size());
+            assertTrue(region.stream().allMatch(shop -> "world_nether".equals(shop.getWorldName())));
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * 测试整体替换世界时删除消失的商店、保留其他世界，且库存更新在重新打开后仍然存在
+     */
+    @Test
+    public void testSaveWorldsAndUpdateStocks() throws IOException {
+        List<SimpleShopData> shops = SnapshotBenchmarkTest.createShops(1000);
+        SqliteShopStore store = SqliteShopStore.open(tempDir.toFile());
+        List<ShopData> kept;
+        try {
+            store.importRecords(shops);
+            kept = store.loadWorld("world").subList(0, 10);
+            kept.get(0).setStock(99, 5678L);
+
+            Map<String, List<ShopData>> shopsByWorld = new HashMap<>();
+            shopsByWorld.put("world", kept);
+            shopsByWorld.put("world_the_end", new ArrayList<>());
+            store.saveWorlds(shopsByWorld);
+
+            ShopData stocked = kept.get(1);
+            stocked.setStock(7, 1000L);
+            store.updateStocks(Collections.singletonList(stocked));
+            store.delete(Collections.singletonList(kept.get(2).getShopId()));
+        } finally {
+            store.close();
+        }
+
+        SqliteShopStore reopened = SqliteShopStore.open(tempDir.toFile());
+        try {
+            Map<UUID, ShopData> world = reopened.loadWorld("world").stream()
+                    .collect(Collectors.toMap(ShopData::getShopId, shop -> shop));
+            assertEquals(9, world.size());
+            assertEquals(99, world.get(kept.get(0).getShopId()).getStock());
+            assertEquals(5678L, world.get(kept.get(0).getShopId()).getLastScanned());
+            assertEquals(7, world.get(kept.get(1).getShopId()).getStock());
+            assertTrue(world.get(kept.get(1).getShopId()).isStockKnown());
+
+            assertFalse(reopened.worldNames().contains("world_the_end"));
+            assertEquals(count(shops, shop -> shop.worldName.equals("resource")),
+                    reopened.loadWorld("resource").size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static long count(List<SimpleShopData> shops, Predicate<SimpleShopData> filter) {
+        return shops.stream().filter(filter).count();
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.plugin.shoptools.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 库存变更日志测试
+ *
+ * @author NSrank & Augment
+ */
+public class StockJournalTest {
+
+    private static final Logger LOGGER = Logger.getLogger("test");
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * 测试追加后重放得到每个位置的最新库存
+     */
+    @Test
+    public void testReplayKeepsLatestStock() throws IOException {
+        StockJournal journal = new StockJournal(tempDir.toFile(), LOGGER);
+        journal.append("world:1:64:1", 10);
+        journal.append("world:2:64:2", 5);
+        assertEquals(2, journal.flush());
+        journal.append("world:1:64:1", 0);
+        assertEquals(3, journal.flush());
+        journal.close();
+
+        Map<String, StockJournal.Entry> latest = new StockJournal(tempDir.toFile(), LOGGER).replay();
+        assertEquals(2, latest.size());
+        assertEquals(0, latest.get("world:1:64:1").stock());
+        assertEquals(5, latest.get("world:2:64:2").stock());
+    }
+
+    /**
+     * 测试末尾不完整的记录被忽略
+     */
+    @Test
+    public void testTruncatedTailIgnored() throws IOException {
+        StockJournal journal = new StockJournal(tempDir.toFile(), LOGGER);
+        journal.append("world:1:64:1", 10);
+        journal.append("world:2:64:2", 5);
+        journal.flush();
+        journal.close();
+
+        File file = tempDir.resolve(StockJournal.FILE_NAME).toFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        Map<String, StockJournal.Entry> latest = new StockJournal(tempDir.toFile(), LOGGER).replay();
+        assertEquals(1, latest.size());
+        assertEquals(10, latest.get("world:1:64:1").stock());
+    }
+
+    /**
+     * 测试压实后日志被清空，之后的变更写入新日志
+     */
+    @Test
+    public void testTruncate() throws IOException {
+        StockJournal journal = new StockJournal(tempDir.toFile(), LOGGER);
+        journal.append("world:1:64:1", 10);
+        journal.flush();
+        journal.truncate();
+        assertTrue(journal.replay().isEmpty());
+
+        journal.append("world:3:64:3", 7);
+        assertEquals(1, journal.flush());
+        journal.close();
+        assertEquals(7, journal.replay().get("world:3:64:3").stock());
+    }
+
+    /**
+     * 测试写入失败后抛出异常并停止追加，压实清空日志后恢复
+     */
+    @Test
+    public void testFlushFailureWaitsForCompaction() throws IOException {
+        // 日志文件位置被目录占用，打开输出流失败
+        File blocker = tempDir.resolve(StockJournal.FILE_NAME).toFile();
+        assertTrue(blocker.mkdir());
+        StockJournal journal = new StockJournal(tempDir.toFile(), LOGGER);
+        journal.append("world:1:64:1", 10);
+        assertThrows(IOException.class, journal::flush);
+
+        // 文件恢复可写后，仍需等待压实再追加
+        assertTrue(blocker.delete());
+        journal.append("world:2:64:2", 5);
+        assertThrows(IOException.class, journal::flush);
+
+        journal.truncate();
+        journal.append("world:3:64:3", 7);
+        assertEquals(1, journal.flush());
+        journal.close();
+        Map<String, StockJournal.Entry> latest = journal.replay();
+        assertEquals(1, latest.size());
+        assertEquals(7, latest.get("world:3:64:3").stock());
+    }
+}
@@ -0,0 +1,54 @@
+package org.plugin.shoptools.sync;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应同步间隔测试
+ *
+ * @author NSrank & Augment
+ */
+public class AdaptiveSyncIntervalTest {
+
+    private static final long MIN = 120000L;
+    private static final long MAX = 3600000L;
+
+    /**
+     * 测试有变化时缩短、无变化时延长，且始终在上下限之内
+     */
+    @Test
+    public void testChangeRate() {
+        AdaptiveSyncInterval interval = new AdaptiveSyncInterval(600000L, MIN, MAX, 45.0);
+        assertEquals(300000L, interval.update(3, 20.0));
+        assertEquals(MIN, interval.update(AdaptiveSyncInterval.BURST_CHANGES, 20.0));
+        assertEquals(MIN, interval.update(1, 20.0));
+
+        long previous = interval.current();
+        for (int i = 0; i < 20; i++) {
+            long next = interval.update(0, 20.0);
+            assertTrue(next >= previous);
+            previous = next;
+        }
+        assertEquals(MAX, previous);
+
+        // 初始值超出范围时被限制
+        assertEquals(MIN, new AdaptiveSyncInterval(1000L, MIN, MAX, 45.0).current());
+    }
+
+    /**
+     * 测试 MSPT 过高时即使有变化也不缩短，跳过同步时加倍间隔；阈值为 0 时不退避
+     */
+    @Test
+    public void testMsptBackOff() {
+        AdaptiveSyncInterval interval = new AdaptiveSyncInterval(600000L, MIN, MAX, 45.0);
+        assertTrue(interval.isOverloaded(50.0));
+        assertEquals(1200000L, interval.update(10, 50.0));
+        assertEquals(2400000L, interval.backOff());
+        assertEquals(MAX, interval.backOff());
+
+        AdaptiveSyncInterval noBackOff = new AdaptiveSyncInterval(600000L, MIN, MAX, 0);
+        assertFalse(noBackOff.isOverloaded(200.0));
+        assertEquals(300000L, noBackOff.update(10, 200.0));
+    }
+}